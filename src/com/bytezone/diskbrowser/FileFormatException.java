@@ -6,6 +6,7 @@ public class FileFormatException extends RuntimeException
 
   public FileFormatException (String string)
   {
+    super (string);
     this.message = string;
   }
 
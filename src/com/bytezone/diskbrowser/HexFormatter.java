@@ -1,5 +1,7 @@
 package com.bytezone.diskbrowser;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.math.BigDecimal;
 import java.math.MathContext;
 import java.util.GregorianCalendar;
@@ -10,6 +12,28 @@ public class HexFormatter
                                  "C", "D", "E", "F" };
   private static MathContext mathContext = new MathContext (9);
 
+  // two hex digits for each byte value, and the character shown for it in a dump
+  private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray ();
+  private static final char[] HEX_PAIRS = new char[512];
+  private static final char[] PRINTABLE = new char[256];
+
+  public static final int BYTES_PER_LINE = 16;
+  public static final int MAX_LINE_LENGTH = 8 + 3 + BYTES_PER_LINE * 4 + 2;
+
+  static
+  {
+    for (int c = 0; c < 256; c++)
+    {
+      HEX_PAIRS[c * 2] = HEX_DIGITS[c >>> 4];
+      HEX_PAIRS[c * 2 + 1] = HEX_DIGITS[c & 0x0F];
+
+      int value = c;
+      if (value > 127)
+        value -= value < 160 ? 64 : 128;
+      PRINTABLE[c] = value < 32 || value == 127 ? '.' : (char) value;   // non-printable
+    }
+  }
+
   public static String format (byte[] buffer)
   {
     return format (buffer, 0, buffer.length);
@@ -39,101 +63,134 @@ public class HexFormatter
   public static String format (byte[] buffer, int offset, int length, boolean header,
         int startingAddress)
   {
-    StringBuffer line = new StringBuffer ();
-    int[] freq = new int[256];
+    int lines = (length + BYTES_PER_LINE - 1) / BYTES_PER_LINE + 1;
+    StringBuilder text = new StringBuilder (lines * (MAX_LINE_LENGTH + 1));
+    format (buffer, offset, length, header, startingAddress, text);
+    return text.toString ();
+  }
+
+  public static void format (byte[] buffer, int offset, int length, boolean header,
+        int startingAddress, StringBuilder text)
+  {
+    char[] line = new char[MAX_LINE_LENGTH];
+    int digits = getAddressDigits (offset + length - 1 + startingAddress);
 
     if (header)
     {
-      line.append ("      ");
-      for (int i = 0; i < 16; i++)
-        line.append ("  " + hex[i]);
+      text.append (line, 0, formatHeader (line, digits));
       if (offset == 0)
-        line.append ("\n");
+        text.append ('\n');
     }
 
-    for (int i = offset; i < offset + length; i += 16)
+    for (int i = offset, max = offset + length; i < max; i += BYTES_PER_LINE)
     {
-      if (line.length () > 0 && i > 0)
-        line.append ("\n");
-
-      // print offset
-      for (int temp = i + startingAddress, max = 65536; max > 0; max /= 16)
-      {
-        if (temp >= max)
-        {
-          line.append (hex[temp / max]);
-          temp %= max;
-        }
-        else
-          line.append ("0");
-      }
-
-      // print hex values
-      line.append (" : ");
-      StringBuffer trans = new StringBuffer ();
-      StringBuffer hexLine = new StringBuffer ();
+      if ((header || i > offset) && i > 0)
+        text.append ('\n');
+      text.append (line, 0, formatLine (line, buffer, i, Math.min (BYTES_PER_LINE, max - i),
+                                        i + startingAddress, digits));
+    }
+  }
 
-      for (int j = i; (j < i + 16) && (j < offset + length); j++)
-      {
-        int c = buffer[j] & 0xFF;
-        freq[c]++;
-        hexLine.append (String.format ("%02X ", c));
-
-        if (c > 127)
-        {
-          if (c < 160)
-            c -= 64;
-          else
-            c -= 128;
-        }
-        if (c < 32 || c == 127) // non-printable
-          trans.append (".");
-        else
-          // standard ascii
-          trans.append ((char) c);
-      }
-      while (hexLine.length () < 48)
-        hexLine.append (" ");
+  // the same as above, but each line is written as soon as it has been formatted
+  public static void format (byte[] buffer, int offset, int length, boolean header,
+        int startingAddress, Writer writer) throws IOException
+  {
+    char[] line = new char[MAX_LINE_LENGTH];
+    int digits = getAddressDigits (offset + length - 1 + startingAddress);
 
-      line.append (hexLine.toString () + ": " + trans.toString ());
+    if (header)
+    {
+      writer.write (line, 0, formatHeader (line, digits));
+      if (offset == 0)
+        writer.write ('\n');
     }
 
-    if (false)
+    for (int i = offset, max = offset + length; i < max; i += BYTES_PER_LINE)
     {
-      line.append ("\n\n");
-      int totalBits = 0;
-      for (int i = 0; i < freq.length; i++)
-        if (freq[i] > 0)
-        {
-          totalBits += (Integer.bitCount (i) * freq[i]);
-          line.append (String.format ("%02X  %3d   %d%n", i, freq[i], Integer.bitCount (i)));
-        }
-      line.append (String.format ("%nTotal bits : %d%n", totalBits));
+      if ((header || i > offset) && i > 0)
+        writer.write ('\n');
+      writer.write (line, 0, formatLine (line, buffer, i, Math.min (BYTES_PER_LINE, max - i),
+                                         i + startingAddress, digits));
     }
-    return line.toString ();
   }
 
-  public static String sanitiseString (byte[] buffer, int offset, int length)
+  // the number of hex digits needed to show an address, but never less than five
+  public static int getAddressDigits (int lastAddress)
+  {
+    int digits = 5;
+    while (digits < 8 && lastAddress >= 1 << (digits * 4))
+      ++digits;
+    return digits;
+  }
+
+  // formats the column headings into the line, and returns the length used
+  public static int formatHeader (char[] line, int digits)
   {
-    StringBuilder trans = new StringBuilder ();
-    for (int j = offset; j < offset + length; j++)
+    int ptr = 0;
+    while (ptr <= digits)
+      line[ptr++] = ' ';
+    for (int i = 0; i < BYTES_PER_LINE; i++)
     {
-      int c = buffer[j] & 0xFF;
+      line[ptr++] = ' ';
+      line[ptr++] = ' ';
+      line[ptr++] = HEX_DIGITS[i];
+    }
+    return ptr;
+  }
 
-      if (c > 127)
+  /*
+   * Formats up to BYTES_PER_LINE bytes as one line of a hex dump - the address, the hex
+   * values and the characters - into the line, and returns the length used.
+   */
+  public static int formatLine (char[] line, byte[] buffer, int offset, int length,
+        int address, int digits)
+  {
+    int ptr = 0;
+    for (int shift = (digits - 1) * 4; shift >= 0; shift -= 4)
+      line[ptr++] = HEX_DIGITS[(address >>> shift) & 0x0F];
+
+    line[ptr++] = ' ';
+    line[ptr++] = ':';
+    line[ptr++] = ' ';
+
+    int charPtr = ptr + BYTES_PER_LINE * 3 + 2;
+    for (int i = 0; i < BYTES_PER_LINE; i++)
+    {
+      if (i < length)
       {
-        if (c < 160)
-          c -= 64;
-        else
-          c -= 128;
+        int c = buffer[offset + i] & 0xFF;
+        line[ptr++] = HEX_PAIRS[c * 2];
+        line[ptr++] = HEX_PAIRS[c * 2 + 1];
+        line[charPtr++] = PRINTABLE[c];
       }
-
-      if (c < 32 || c == 127) // non-printable
-        trans.append (".");
       else
-        trans.append ((char) c);    // standard ascii
+      {
+        line[ptr++] = ' ';
+        line[ptr++] = ' ';
+      }
+      line[ptr++] = ' ';
     }
-    return trans.toString ();
+
+    line[ptr++] = ':';
+    line[ptr++] = ' ';
+    return charPtr;
+  }
+
+  // appends the value in hex, using more than the minimum digits only if it needs them
+  public static void appendHex (StringBuilder text, int value, int digits)
+  {
+    while (digits < 8 && value >>> (digits * 4) != 0)
+      ++digits;
+    for (int shift = (digits - 1) * 4; shift >= 0; shift -= 4)
+      text.append (HEX_DIGITS[(value >>> shift) & 0x0F]);
+  }
+
+  public static String sanitiseString (byte[] buffer, int offset, int length)
+  {
+    char[] trans = new char[length];
+    for (int j = 0; j < length; j++)
+      trans[j] = PRINTABLE[buffer[offset + j] & 0xFF];
+    return new String (trans);
   }
 
   public static String getString (byte[] buffer)
@@ -211,7 +268,8 @@ public class HexFormatter
     StringBuilder hex = new StringBuilder ();
     for (int i = 0; i < length; i++)
     {
-      hex.append (String.format ("%02X", buffer[offset + i]));
+      int c = buffer[offset + i] & 0xFF;
+      hex.append (HEX_PAIRS, c * 2, 2);
       if (space)
         hex.append (' ');
     }
@@ -226,7 +284,8 @@ public class HexFormatter
     StringBuilder hex = new StringBuilder ();
     for (int i = length - 1; i >= 0; i--)
     {
-      hex.append (String.format ("%02X", buffer[offset + i]));
+      int c = buffer[offset + i] & 0xFF;
+      hex.append (HEX_PAIRS, c * 2, 2);
       if (space)
         hex.append (' ');
     }
@@ -1,36 +1,64 @@
 package com.bytezone.diskbrowser;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 
-class LZW
+abstract class LZW
 {
-  static protected final String[] st = new String[0x1000];
   static protected final int TRACK_LENGTH = 0x1000;
+  static protected final int TABLE_SIZE = 0x1000;     // 12-bit codes
 
-  protected final List<byte[]> chunks = new ArrayList<byte[]> ();
+  protected byte[] image;        // every track, in order
+  protected int totalTracks;
   protected int volume;
   protected byte runLengthChar;
   protected int crc;
   protected int crcBase;
 
-  private int buffer;            // one character buffer
+  // string table - each entry is an earlier entry (its prefix) followed by one more byte
+  private final int[] prefix = new int[TABLE_SIZE];
+  private final byte[] suffix = new byte[TABLE_SIZE];
+  private final int[] length = new int[TABLE_SIZE];
+  protected int nextEntry;
+  private int prevCode;          // code of the previous string, or -1 after a reset
+
+  private int buffer;            // bit reservoir, next bit in the low order position
   private int bitsLeft;          // unused bits left in buffer
 
   private int ptr;
   private int startPtr;
   protected byte[] bytes;
+  private final byte[] rleBuffer = new byte[TRACK_LENGTH];    // LZW output before RLE
+
+  LZW ()
+  {
+    initialiseTable ();
+  }
+
+  // a decoder with its own table for the same data, so that tracks can be expanded in parallel
+  LZW (LZW parent)
+  {
+    bytes = parent.bytes;
+    image = parent.image;
+    runLengthChar = parent.runLengthChar;
+    initialiseTable ();
+  }
 
-  static
+  private void initialiseTable ()
   {
     for (int i = 0; i < 256; i++)
-      st[i] = "" + (char) i;
+    {
+      prefix[i] = -1;
+      suffix[i] = (byte) i;
+      length[i] = 1;
+    }
+    resetTable ();
   }
 
   public void setBuffer (byte[] buffer, int ptr)
   {
     bytes = buffer;
     startPtr = this.ptr = ptr;
+    this.buffer = 0;
     bitsLeft = 0;
   }
 
@@ -39,40 +67,125 @@ class LZW
     return ptr - startPtr;
   }
 
-  private void fillBuffer ()
+  // codes are stored low order bit first, and only the bytes that are needed are read
+  protected int readInt (int width)
   {
-    buffer = bytes[ptr++] & 0xFF;
-    bitsLeft = 8;
+    if (width < 8 || width > 12)
+      throw new RuntimeException ("Illegal value of r = " + width);
+
+    while (bitsLeft < width)
+    {
+      buffer |= (bytes[ptr++] & 0xFF) << bitsLeft;
+      bitsLeft += 8;
+    }
+
+    int x = buffer & ((1 << width) - 1);
+    buffer >>>= width;
+    bitsLeft -= width;
+
+    return x;
   }
 
-  private boolean readBoolean ()
+  // expand the codes for one chunk, which must produce exactly rleLength bytes
+  protected abstract void undoLZW (byte[] outBuffer, int outPtr, int rleLength);
+
+  /*
+   * Expands the chunk at ptr into its track in the image, and returns the number of
+   * compressed bytes that were used.
+   */
+  protected int expandChunk (int ptr, int rleLength, boolean lzwPerformed, int track)
   {
-    if (bitsLeft == 0)
-      fillBuffer ();
+    int outPtr = track * TRACK_LENGTH;
+
+    if (lzwPerformed)
+    {
+      setBuffer (bytes, ptr);               // prepare to read n-bit integers
+      if (rleLength == TRACK_LENGTH)        // no run length encoding
+        undoLZW (image, outPtr, rleLength);
+      else
+      {
+        undoLZW (rleBuffer, 0, rleLength);
+        undoRLE (rleBuffer, 0, rleLength, outPtr);
+      }
+      return bytesRead ();                  // since the setBuffer()
+    }
 
-    bitsLeft--;
-    boolean bit = ((buffer << bitsLeft) & 0x80) == 0x80;
-    return bit;
+    if (rleLength == TRACK_LENGTH)          // no run length encoding
+      System.arraycopy (bytes, ptr, image, outPtr, TRACK_LENGTH);
+    else
+      undoRLE (bytes, ptr, rleLength, outPtr);
+
+    return rleLength;
   }
 
-  protected int readInt (int width)
+  protected void resetTable ()
   {
-    if (width < 8 || width > 12)
-      throw new RuntimeException ("Illegal value of r = " + width);
+    nextEntry = 0x100;
+    prevCode = -1;
+  }
+
+  /*
+   * Writes the string for codeWord into outBuffer, adds the previous string plus the
+   * first byte of this one to the table, and returns the position after the string.
+   */
+  protected int expand (int codeWord, byte[] outBuffer, int outPtr, int outMax)
+  {
+    boolean newEntry = codeWord == nextEntry;     // the entry this code is about to create
+    if (codeWord > nextEntry || (newEntry && prevCode < 0))
+      throw new FileFormatException ("Invalid LZW code : " + codeWord);
+
+    int code = newEntry ? prevCode : codeWord;
+    int stringLength = length[code];
+    int totalLength = newEntry ? stringLength + 1 : stringLength;
+    if (outPtr + totalLength > outMax)
+      throw new FileFormatException ("LZW data overflows the track");
+
+    // the table holds each string backwards, so fill it in from the end
+    for (int i = outPtr + stringLength - 1; i >= outPtr; i--)
+    {
+      outBuffer[i] = suffix[code];
+      code = prefix[code];
+    }
 
-    int x = 0;
-    for (int i = 0, weight = 1; i < width; i++, weight <<= 1)
-      if (readBoolean ())
-        x |= weight;
+    byte firstChar = outBuffer[outPtr];
+    if (newEntry)
+      outBuffer[outPtr + stringLength] = firstChar;
 
-    return x;
+    if (nextEntry < TABLE_SIZE)
+    {
+      prefix[nextEntry] = prevCode;
+      suffix[nextEntry] = firstChar;
+      length[nextEntry] = prevCode < 0 ? 1 : length[prevCode] + 1;
+      nextEntry++;
+    }
+    prevCode = codeWord;
+
+    return outPtr + totalLength;
+  }
+
+  // the same as expand () but only keeps track of the length of each string
+  protected int skip (int codeWord)
+  {
+    boolean newEntry = codeWord == nextEntry;
+    if (codeWord > nextEntry || (newEntry && prevCode < 0))
+      throw new FileFormatException ("Invalid LZW code : " + codeWord);
+
+    int stringLength = newEntry ? length[prevCode] + 1 : length[codeWord];
+
+    if (nextEntry < TABLE_SIZE)
+    {
+      length[nextEntry] = prevCode < 0 ? 1 : length[prevCode] + 1;
+      nextEntry++;
+    }
+    prevCode = codeWord;
+
+    return stringLength;
   }
 
-  protected byte[] undoRLE (byte[] inBuffer, int inPtr, int length)
+  protected void undoRLE (byte[] inBuffer, int inPtr, int length, int outPtr)
   {
-    byte[] outBuffer = new byte[TRACK_LENGTH];
-    int outPtr = 0;
     int max = inPtr + length;
+    int outMax = outPtr + TRACK_LENGTH;
 
     while (inPtr < max)
     {
@@ -80,25 +193,28 @@ class LZW
       if (b == runLengthChar)
       {
         b = inBuffer[inPtr++];
-        int rpt = inBuffer[inPtr++] & 0xFF;
-        while (rpt-- >= 0)
-          outBuffer[outPtr++] = b;
+        int rpt = (inBuffer[inPtr++] & 0xFF) + 1;
+        if (outPtr + rpt > outMax)
+          throw new FileFormatException ("RLE data overflows the track");
+        Arrays.fill (image, outPtr, outPtr + rpt, b);
+        outPtr += rpt;
       }
       else
-        outBuffer[outPtr++] = b;
+      {
+        if (outPtr == outMax)
+          throw new FileFormatException ("RLE data overflows the track");
+        image[outPtr++] = b;
+      }
     }
 
-    assert outPtr == TRACK_LENGTH;
-    return outBuffer;
+    assert outPtr == outMax;
   }
 
   public byte[] getData ()
   {
-    byte[] buffer = new byte[chunks.size () * TRACK_LENGTH];
-    int trackNumber = 0;
-
-    for (byte[] track : chunks)
-      System.arraycopy (track, 0, buffer, trackNumber++ * TRACK_LENGTH, TRACK_LENGTH);
+    byte[] buffer = image;
+    if (buffer.length != totalTracks * TRACK_LENGTH)
+      buffer = image = Arrays.copyOf (image, totalTracks * TRACK_LENGTH);
 
     if (crc != NuFX.getCRC (buffer, crcBase))
       System.out.println ("\n*** LZW CRC mismatch ***");
@@ -106,8 +222,9 @@ class LZW
     return buffer;
   }
 
+  // the table stops growing when it is full, so codes are never wider than 12 bits
   protected int width (int maximumValue)
   {
-    return 32 - Integer.numberOfLeadingZeros (maximumValue);
+    return Math.min (12, 32 - Integer.numberOfLeadingZeros (maximumValue));
   }
 }
\ No newline at end of file
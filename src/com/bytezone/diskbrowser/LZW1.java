@@ -1,14 +1,23 @@
 package com.bytezone.diskbrowser;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import com.bytezone.common.Utility;
 
 class LZW1 extends LZW
 {
+  private static final int TRACKS_PER_TASK = 4;
+
+  private final List<Integer> chunkPtrs;    // where each track's chunk starts
+
   public LZW1 (byte[] buffer)
   {
     bytes = Objects.requireNonNull (buffer);
+    chunkPtrs = new ArrayList<Integer> ();
 
     crc = Utility.getWord (buffer, 0);
     crcBase = 0;
@@ -17,61 +26,63 @@ class LZW1 extends LZW
     runLengthChar = (byte) (buffer[3] & 0xFF);
     int ptr = 4;
 
+    // Each chunk starts with a fresh table, so once the chunks have been found they can
+    // all be expanded at the same time. The compressed length of a chunk isn't stored,
+    // so finding the next one means reading the codes, but not expanding them.
     while (ptr < buffer.length - 1)          // what is in the last byte?
     {
       int rleLength = Utility.getWord (buffer, ptr);
       int lzwPerformed = buffer[ptr + 2] & 0xFF;
+      chunkPtrs.add (ptr);
       ptr += 3;
 
       if (lzwPerformed != 0)
       {
         setBuffer (buffer, ptr);            // prepare to read n-bit integers
-        byte[] lzwBuffer = undoLZW (rleLength);
-
-        if (rleLength == TRACK_LENGTH)      // no run length encoding
-          chunks.add (lzwBuffer);
-        else
-          chunks.add (undoRLE (lzwBuffer, 0, lzwBuffer.length));
-
+        skipLZW (rleLength);
         ptr += bytesRead ();                // since the setBuffer()
       }
       else
-      {
-        if (rleLength == TRACK_LENGTH)      // no run length encoding
-        {
-          byte[] originalBuffer = new byte[TRACK_LENGTH];
-          System.arraycopy (buffer, ptr, originalBuffer, 0, originalBuffer.length);
-          chunks.add (originalBuffer);
-        }
-        else
-          chunks.add (undoRLE (buffer, ptr, rleLength));
-
         ptr += rleLength;
-      }
     }
+
+    totalTracks = chunkPtrs.size ();
+    image = new byte[totalTracks * TRACK_LENGTH];
+    ForkJoinPool.commonPool ().invoke (new TrackExpander (0, totalTracks));
   }
 
-  protected byte[] undoLZW (int rleLength)
+  private LZW1 (LZW1 parent)
+  {
+    super (parent);
+    chunkPtrs = parent.chunkPtrs;
+  }
+
+  private void expandTrack (int track)
+  {
+    int ptr = chunkPtrs.get (track);
+    int rleLength = Utility.getWord (bytes, ptr);
+    boolean lzwPerformed = (bytes[ptr + 2] & 0xFF) != 0;
+
+    expandChunk (ptr + 3, rleLength, lzwPerformed, track);
+  }
+
+  private void skipLZW (int rleLength)
   {
-    byte[] lzwBuffer = new byte[rleLength];  // must fill this array from input
     int ptr = 0;
-    int nextEntry = 0x100;                // always start with a fresh table
-    String prev = "";
+    resetTable ();
 
     while (ptr < rleLength)
-    {
-      int codeWord = readInt (width (nextEntry + 1));
-      String s = (nextEntry == codeWord) ? prev + prev.charAt (0) : st[codeWord];
-
-      if (nextEntry < st.length)
-        st[nextEntry++] = prev + s.charAt (0);
+      ptr += skip (readInt (width (nextEntry + 1)));
+  }
 
-      for (int i = 0; i < s.length (); i++)
-        lzwBuffer[ptr++] = (byte) s.charAt (i);
+  @Override
+  protected void undoLZW (byte[] outBuffer, int outPtr, int rleLength)
+  {
+    int max = outPtr + rleLength;
+    resetTable ();                          // always start with a fresh table
 
-      prev = s;
-    }
-    return lzwBuffer;
+    while (outPtr < max)
+      outPtr = expand (readInt (width (nextEntry + 1)), outBuffer, outPtr, max);
   }
 
   @Override
@@ -85,4 +96,33 @@ class LZW1 extends LZW
 
     return text.toString ();
   }
+
+  // Splits the tracks into groups, and gives each group its own decoder and table
+  private class TrackExpander extends RecursiveAction
+  {
+    private final int firstTrack;
+    private final int lastTrack;      // exclusive
+
+    TrackExpander (int firstTrack, int lastTrack)
+    {
+      this.firstTrack = firstTrack;
+      this.lastTrack = lastTrack;
+    }
+
+    @Override
+    protected void compute ()
+    {
+      if (lastTrack - firstTrack <= TRACKS_PER_TASK)
+      {
+        LZW1 decoder = new LZW1 (LZW1.this);
+        for (int track = firstTrack; track < lastTrack; track++)
+          decoder.expandTrack (track);
+        return;
+      }
+
+      int middle = (firstTrack + lastTrack) >>> 1;
+      invokeAll (new TrackExpander (firstTrack, middle),
+          new TrackExpander (middle, lastTrack));
+    }
+  }
 }
\ No newline at end of file
@@ -1,25 +1,25 @@
 package com.bytezone.diskbrowser;
 
+import java.util.Arrays;
 import java.util.Objects;
 
 import com.bytezone.common.Utility;
 
 class LZW2 extends LZW
 {
-  private int nextEntry = 0x100;
-  private String prev = "";
-  private int codeWord;
-
   public LZW2 (byte[] buffer, int crc)
   {
     bytes = Objects.requireNonNull (buffer);
 
     this.crc = crc;
     crcBase = 0xFFFF;
-    codeWord = 0;
 
     volume = buffer[0] & 0xFF;
     runLengthChar = (byte) (buffer[1] & 0xFF);
+
+    // The table carries on from one chunk to the next, so the chunks must be expanded in
+    // order, but the chunk lengths are stored so the image can be allocated first.
+    image = new byte[countChunks () * TRACK_LENGTH];
     int ptr = 2;
 
     while (ptr < buffer.length - 1)         // what is in the last byte?
@@ -28,6 +28,9 @@ class LZW2 extends LZW
       boolean lzwPerformed = (rleLength & 0x8000) != 0;
       ptr += 2;
 
+      if (image.length < (totalTracks + 1) * TRACK_LENGTH)    // chunk lengths were wrong
+        image = Arrays.copyOf (image, (totalTracks + 1) * TRACK_LENGTH);
+
       if (lzwPerformed)
       {
         rleLength &= 0x0FFF;                // remove the LZW flag
@@ -37,66 +40,57 @@ class LZW2 extends LZW
         int chunkLength = Utility.getWord (buffer, ptr);
         ptr += 2;
 
-        setBuffer (buffer, ptr);            // prepare to read n-bit integers
-        byte[] lzwBuffer = undoLZW (rleLength);
-
-        assert (chunkLength - 4) == bytesRead ();
-
-        if (rleLength == TRACK_LENGTH)      // no run length encoding
-          chunks.add (lzwBuffer);
-        else
-          chunks.add (undoRLE (lzwBuffer, 0, lzwBuffer.length));
+        int bytesUsed = expandChunk (ptr, rleLength, true, totalTracks++);
+        assert (chunkLength - 4) == bytesUsed;
 
-        ptr += bytesRead ();                // since the setBuffer()
+        ptr += bytesUsed;
       }
       else
       {
-        nextEntry = 0x100;
+        resetTable ();
         if (rleLength == 0)
           rleLength = TRACK_LENGTH;
 
-        if (rleLength == TRACK_LENGTH)      // no run length encoding
-        {
-          byte[] originalBuffer = new byte[TRACK_LENGTH];
-          System.arraycopy (buffer, ptr, originalBuffer, 0, originalBuffer.length);
-          chunks.add (originalBuffer);
-        }
-        else
-          chunks.add (undoRLE (buffer, ptr, rleLength));
-
-        ptr += rleLength;
+        ptr += expandChunk (ptr, rleLength, false, totalTracks++);
       }
     }
   }
 
-  protected byte[] undoLZW (int rleLength)
+  private int countChunks ()
+  {
+    int ptr = 2;
+    int totalChunks = 0;
+
+    while (ptr < bytes.length - 1)
+    {
+      int rleLength = Utility.getWord (bytes, ptr);
+      if ((rleLength & 0x8000) != 0)                 // chunk length includes both lengths
+        ptr += Math.max (4, Utility.getWord (bytes, ptr + 2));
+      else
+        ptr += 2 + (rleLength == 0 ? TRACK_LENGTH : rleLength);
+      totalChunks++;
+    }
+
+    return totalChunks;
+  }
+
+  @Override
+  protected void undoLZW (byte[] outBuffer, int outPtr, int rleLength)
   {
-    byte[] lzwBuffer = new byte[rleLength];      // must fill this array from buffer
-    int ptr = 0;
+    int max = outPtr + rleLength;
 
-    while (ptr < rleLength)
+    while (outPtr < max)
     {
-      codeWord = readInt (width (nextEntry + 1));
+      int codeWord = readInt (width (nextEntry + 1));
 
       if (codeWord == 0x100)      // clear the table
       {
-        nextEntry = 0x100;
+        resetTable ();
         codeWord = readInt (9);
-        prev = "";
       }
 
-      String s = (nextEntry == codeWord) ? prev + prev.charAt (0) : st[codeWord];
-
-      if (nextEntry < st.length)
-        st[nextEntry++] = prev + s.charAt (0);
-
-      for (int i = 0; i < s.length (); i++)
-        lzwBuffer[ptr++] = (byte) s.charAt (i);
-
-      prev = s;
+      outPtr = expand (codeWord, outBuffer, outPtr, max);
     }
-
-    return lzwBuffer;
   }
 
   @Override
@@ -23,7 +23,12 @@ public class NuFX
 
   public NuFX (Path path) throws FileFormatException, IOException
   {
-    buffer = Files.readAllBytes (path);
+    this (Files.readAllBytes (path));
+  }
+
+  public NuFX (byte[] buffer) throws FileFormatException
+  {
+    this.buffer = buffer;
     header = new Header (buffer);
 
     int dataPtr = 48;
@@ -65,6 +65,13 @@ public abstract class AbstractFile implements DataSource
     return HexFormatter.format (buffer, 0, 99999);
   }
 
+  // the buffer that getHexDump () shows in full, or null if the dump is formatted
+  // differently. Subclasses that override getHexDump () should override this too.
+  public byte[] getHexDumpBuffer ()
+  {
+    return hexBlocks.size () > 0 ? null : buffer;
+  }
+
   @Override
   public BufferedImage getImage ()
   {
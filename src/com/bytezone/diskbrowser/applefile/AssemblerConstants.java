@@ -53,8 +53,31 @@ public interface AssemblerConstants
 			2, 2, 0, 0, 2, 2, 2, 0, 1, 2, 1, 0, 3, 3, 3, 0, // E0 - EF
 			2, 2, 2, 0, 0, 2, 2, 0, 1, 3, 1, 0, 0, 3, 3, 0 }; // F0 - FF
 
+	// addressing mode of each opcode, an index into mode[] (0 if it isn't an instruction)
+	byte[] modes2 = { 0, 11, 0, 0, 8, 8, 8, 0, 0, 2, 1, 0, 3, 3, 3, 0, // 00 - 0F
+			14, 12, 13, 0, 8, 9, 9, 0, 0, 5, 1, 0, 3, 4, 4, 0, // 10 - 1F
+			3, 11, 0, 0, 8, 8, 8, 0, 0, 2, 1, 0, 3, 3, 3, 0, // 20 - 2F
+			14, 12, 13, 0, 9, 9, 9, 0, 0, 5, 1, 0, 4, 4, 4, 0, // 30 - 3F
+			0, 11, 0, 0, 0, 8, 8, 0, 0, 2, 1, 0, 3, 3, 3, 0, // 40 - 4F
+			14, 12, 13, 0, 0, 9, 9, 0, 0, 5, 0, 0, 0, 4, 4, 0, // 50 - 5F
+			0, 11, 0, 0, 8, 8, 8, 0, 0, 2, 1, 0, 7, 3, 3, 0, // 60 - 6F
+			14, 12, 13, 0, 9, 9, 9, 0, 0, 5, 0, 0, 6, 4, 4, 0, // 70 - 7F
+			14, 11, 0, 0, 8, 8, 8, 0, 0, 2, 0, 0, 3, 3, 3, 0, // 80 - 8F
+			14, 12, 13, 0, 9, 9, 10, 0, 0, 5, 0, 0, 3, 4, 4, 0, // 90 - 9F
+			2, 11, 2, 0, 8, 8, 8, 0, 0, 2, 0, 0, 3, 3, 3, 0, // A0 - AF
+			14, 12, 13, 0, 9, 9, 10, 0, 0, 5, 0, 0, 4, 4, 5, 0, // B0 - BF
+			2, 11, 0, 0, 8, 8, 8, 0, 0, 2, 0, 0, 3, 3, 3, 0, // C0 - CF
+			14, 12, 13, 0, 0, 9, 9, 0, 0, 5, 0, 0, 0, 4, 4, 0, // D0 - DF
+			2, 11, 0, 0, 8, 8, 8, 0, 0, 2, 0, 0, 3, 3, 3, 0, // E0 - EF
+			14, 12, 13, 0, 0, 9, 9, 0, 0, 5, 0, 0, 0, 4, 4, 0 }; // F0 - FF
+
 	byte[] sizes = { 1, 1, 2, 3, 3, 3, 3, 3, 2, 2, 2, 2, 2, 2, 2 };
 
+	// the text either side of the operand in each mode
+	String[] modePrefix = { "", "", "#", "", "", "", "(", "(", "", "", "", "(", "(", "(", "" };
+	String[] modeSuffix =
+			{ "", "", "", "", ",X", ",Y", ",X)", ")", "", ",X", ",Y", ",X)", "),Y", ")", "" };
+
 	String[] mode =
 							{ "Implied", "Accumulator", "Immediate", "Absolute", "Absolute, X", "Absolute, Y",
 									"(Absolute, X)", "(Absolute)", "Zero page", "Zero page, X", "Zero page, Y",
@@ -0,0 +1,51 @@
+package com.bytezone.diskbrowser.applefile;
+
+/*
+ * Everything about an opcode that doesn't depend on its operand. There is one instance
+ * for each of the 256 values, built once from the AssemblerConstants tables, so that
+ * decoding an instruction is an array lookup.
+ */
+public final class AssemblerOpcode
+{
+  // the modes that give the statement a target address
+  public static final int ABSOLUTE = 3;
+  public static final int ZERO_PAGE = 8;
+  public static final int RELATIVE = 14;
+
+  private static final AssemblerOpcode[] opcodes = new AssemblerOpcode[256];
+
+  public final int value;
+  public final String mnemonic;
+  public final int size;          // 0 if the value isn't an instruction
+  public final int mode;
+  public final String prefix;     // before the operand, eg "(" or "#"
+  public final String suffix;     // after the operand, eg ",X)"
+
+  static
+  {
+    for (int i = 0; i < opcodes.length; i++)
+      opcodes[i] = new AssemblerOpcode (i);
+  }
+
+  private AssemblerOpcode (int value)
+  {
+    this.value = value;
+    mnemonic = AssemblerConstants.mnemonics[value];
+    size = AssemblerConstants.sizes2[value];
+    mode = AssemblerConstants.modes2[value];
+    prefix = AssemblerConstants.modePrefix[mode];
+    suffix = AssemblerConstants.modeSuffix[mode];
+  }
+
+  public static AssemblerOpcode get (int value)
+  {
+    return opcodes[value & 0xFF];
+  }
+
+  @Override
+  public String toString ()
+  {
+    return String.format ("%02X  %s  %d  %s", value, mnemonic, size,
+                          AssemblerConstants.mode[mode]);
+  }
+}
\ No newline at end of file
@@ -4,26 +4,34 @@ import java.io.BufferedReader;
 import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
+import com.bytezone.diskbrowser.HexFormatter;
 import com.bytezone.diskbrowser.gui.DiskBrowser;
 
 public class AssemblerProgram extends AbstractFile
 {
   private final int loadAddress;
   private int executeOffset;
-  private static Map<Integer, String> equates;
+  private static final String NEWLINE = String.format ("%n");
+  private static final int MIN_TEXT = 5;          // printable bytes to be shown as text
+  private static final int TEXT_PER_LINE = 32;
+  private static final int HEX_PER_LINE = 8;
+  // filled when the class is loaded, so every thread sees the complete maps
+  private static final Map<Integer, String> equates = getEquates ();
+  private static final Map<Integer, String> applesoftRoutines = getApplesoftRoutines ();
+
+  private boolean traceCode;
+  private BitSet codeMap;           // every byte of the statements reached from the entry
+  private BitSet codeStarts;        // the first byte of each of those statements
 
   public AssemblerProgram (String name, byte[] buffer, int address)
   {
     super (name, buffer);
     this.loadAddress = address;
-
-    if (equates == null)
-      getEquates ();
   }
 
   public AssemblerProgram (String name, byte[] buffer, int address, int executeOffset)
@@ -32,10 +40,16 @@ public class AssemblerProgram extends AbstractFile
     this.executeOffset = executeOffset;
   }
 
+  // list only the code that can be reached from the entry point, and the rest as data
+  public void setTraceCode (boolean traceCode)
+  {
+    this.traceCode = traceCode;
+  }
+
   @Override
   public String getText ()
   {
-    StringBuilder pgm = new StringBuilder ();
+    StringBuilder pgm = new StringBuilder (buffer.length * 20);
 
     pgm.append (String.format ("Name    : %s%n", name));
     pgm.append (String.format ("Length  : $%04X (%,d)%n", buffer.length, buffer.length));
@@ -45,189 +59,358 @@ public class AssemblerProgram extends AbstractFile
       pgm.append (String.format ("Entry   : $%04X%n", (loadAddress + executeOffset)));
     pgm.append (String.format ("%n"));
 
-    return pgm.append (getStringBuilder ()).toString ();
+    disassemble (pgm, traceCode);
+    return pgm.toString ();
   }
 
   public StringBuilder getStringBuilder ()
   {
-    if (true)
-      return getStringBuilder2 ();
+    StringBuilder pgm = new StringBuilder (buffer.length * 20);
+    disassemble (pgm, false);
+    return pgm;
+  }
 
-    StringBuilder pgm = new StringBuilder ();
+  private void disassemble (StringBuilder pgm, boolean followCode)
+  {
+    try
+    {
+      disassemble ((Appendable) pgm, followCode);
+    }
+    catch (IOException e)
+    {
+      e.printStackTrace ();     // a StringBuilder doesn't throw
+    }
+  }
 
-    int ptr = executeOffset;
-    int address = loadAddress + executeOffset;
+  /*
+   * Writes the listing a line at a time. The first pass only marks the statements that
+   * are jumped to, and the second decodes each statement again as it is written, so no
+   * objects are created for the statements. When following the code, the bytes that
+   * can't be reached from the entry point are listed as data.
+   */
+  public void disassemble (Appendable text) throws IOException
+  {
+    disassemble (text, false);
+  }
+
+  public void disassemble (Appendable text, boolean followCode) throws IOException
+  {
+    BitSet starts = followCode ? getCodeStarts () : null;
+    BitSet targets = getTargets (starts);
+    StringBuilder line = new StringBuilder (80);
+    String separator = null;
 
     // if the assembly doesn't start at the beginning, just dump the bytes that are skipped
     for (int i = 0; i < executeOffset; i++)
-      pgm.append (String.format ("%04X: %02X%n", (loadAddress + i), buffer[i]));
+    {
+      line.setLength (0);
+      if (separator != null)
+        line.append (separator);
+      line.append ("    ");
+      HexFormatter.appendHex (line, loadAddress + i, 4);
+      line.append (": ");
+      HexFormatter.appendHex (line, buffer[i] & 0xFF, 2);
+      text.append (line);
+      separator = NEWLINE;
+    }
 
+    int ptr = executeOffset;
     while (ptr < buffer.length)
     {
-      StringBuilder line = new StringBuilder ();
-
-      AssemblerStatement cmd = new AssemblerStatement (buffer[ptr]);
-
-      if (cmd.size == 2 && ptr < buffer.length - 1)
-        cmd.addData (buffer[ptr + 1]);
-      else if (cmd.size == 3 && ptr < buffer.length - 2)
-        cmd.addData (buffer[ptr + 1], buffer[ptr + 2]);
-      else
-        cmd.size = 1;
-
-      line.append (String.format ("%04X: ", address));
-      for (int i = 0; i < cmd.size; i++)
-        line.append (String.format ("%02X ", buffer[ptr + i]));
-      while (line.length () < 20)
-        line.append (" ");
-      line.append (cmd.mnemonic + " " + cmd.operand);
-      if (cmd.offset != 0)
+      if (starts != null && !starts.get (ptr))
+      {
+        int end = getNextStatement (starts, ptr);
+        while (ptr < end)
+        {
+          line.setLength (0);
+          if (separator != null)
+            line.append (separator);
+          ptr = formatData (line, ptr, end);
+          text.append (line);
+          separator = "\n";
+        }
+        continue;
+      }
+
+      int value = buffer[ptr] & 0xFF;
+      AssemblerOpcode opcode = AssemblerOpcode.get (value);
+      int address = loadAddress + ptr;
+      int size = getSize (ptr);
+      int target = getTarget (ptr, size);
+      int offset = getOffset (ptr, size);
+
+      line.setLength (0);
+      if (separator != null)
+        line.append (separator);
+      int start = line.length ();
+
+      line.append (getArrow (value, target, offset, targets.get (ptr)));
+      line.append (' ');
+      HexFormatter.appendHex (line, address, 4);
+      line.append (": ");
+      for (int i = 0; i < size; i++)
       {
-        int branch = address + cmd.offset + 2;
-        line.append (String.format ("$%04X", branch < 0 ? branch += 0xFFFF : branch));
+        HexFormatter.appendHex (line, buffer[ptr + i] & 0xFF, 2);
+        line.append (' ');
       }
 
-      if (cmd.target > 0
-            && (cmd.target < loadAddress - 1 || cmd.target > (loadAddress + buffer.length)))
+      while (line.length () - start < 23)
+        line.append (' ');
+
+      line.append (opcode.mnemonic);
+      line.append (' ');
+      if (size > 1 && opcode.mode != AssemblerOpcode.RELATIVE)
       {
-        while (line.length () < 40)
-          line.append (" ");
+        line.append (opcode.prefix);
+        line.append ('$');
+        if (size == 3)
+          HexFormatter.appendHex (line, buffer[ptr + 2] & 0xFF, 2);
+        HexFormatter.appendHex (line, buffer[ptr + 1] & 0xFF, 2);
+        line.append (opcode.suffix);
+      }
 
-        String text = equates.get (cmd.target);
-        if (text != null)
-          line.append ("; " + text);
-        else
-          for (int i = 0, max = ApplesoftConstants.tokenAddresses.length; i < max; i++)
-            if (cmd.target == ApplesoftConstants.tokenAddresses[i])
-            {
-              line.append ("; Applesoft - " + ApplesoftConstants.tokens[i]);
-              break;
-            }
+      if (offset != 0)
+      {
+        int branch = address + offset + 2;
+        line.append ('$');
+        HexFormatter.appendHex (line, branch < 0 ? branch + 0xFFFF : branch, 4);
       }
-      pgm.append (line.toString () + "\n");
-      address += cmd.size;
-      ptr += cmd.size;
-    }
 
-    if (pgm.length () > 0)
-      pgm.deleteCharAt (pgm.length () - 1);
+      if (target > 0
+            && (target < loadAddress - 1 || target > (loadAddress + buffer.length)))
+      {
+        while (line.length () - start < 40)
+          line.append (' ');
 
-    return pgm;
+        String comment = equates.get (target);
+        if (comment != null)
+          line.append ("; ").append (comment);
+        else
+        {
+          comment = applesoftRoutines.get (target);
+          if (comment != null)
+            line.append ("; Applesoft - ").append (comment);
+        }
+      }
+
+      text.append (line);
+      separator = "\n";
+      ptr += size;
+    }
   }
 
-  public StringBuilder getStringBuilder2 ()
+  // marks the statements that are the destination of a branch, JMP or JSR
+  private BitSet getTargets (BitSet starts)
   {
-    StringBuilder pgm = new StringBuilder ();
-    List<AssemblerStatement> lines = getLines ();
+    BitSet targets = new BitSet (buffer.length);
 
-    // if the assembly doesn't start at the beginning, just dump the bytes that are skipped
-    for (int i = 0; i < executeOffset; i++)
-      pgm.append (String.format ("    %04X: %02X%n", (loadAddress + i), buffer[i]));
-
-    for (AssemblerStatement cmd : lines)
+    int ptr = executeOffset;
+    while (ptr < buffer.length)
     {
-      StringBuilder line = new StringBuilder ();
+      if (starts != null && !starts.get (ptr))
+      {
+        ptr = getNextStatement (starts, ptr);
+        continue;
+      }
 
-      line.append (String.format ("%3.3s %04X: %02X ", getArrow (cmd), cmd.address, cmd.value));
+      int value = buffer[ptr] & 0xFF;
+      int size = getSize (ptr);
+      int target = getTarget (ptr, size);
+      int offset = getOffset (ptr, size);
 
-      if (cmd.size > 1)
-        line.append (String.format ("%02X ", cmd.operand1));
-      if (cmd.size > 2)
-        line.append (String.format ("%02X ", cmd.operand2));
+      if (target >= loadAddress && target < (loadAddress + buffer.length)
+            && (value == 0x4C || value == 0x6C || value == 0x20))
+        markTarget (targets, target);
+      if (offset != 0)
+        markTarget (targets, loadAddress + ptr + offset + 2);
 
-      while (line.length () < 23)
-        line.append (" ");
+      ptr += size;
+    }
 
-      line.append (cmd.mnemonic + " " + cmd.operand);
-      if (cmd.offset != 0)
-      {
-        int branch = cmd.address + cmd.offset + 2;
-        line.append (String.format ("$%04X", branch < 0 ? branch += 0xFFFF : branch));
-      }
+    return targets;
+  }
+
+  private int getNextStatement (BitSet starts, int ptr)
+  {
+    int next = starts.nextSetBit (ptr);
+    return next < 0 ? buffer.length : next;
+  }
+
+  /*
+   * Follows every path from the entry point through branches, JMPs and JSRs, until it
+   * reaches a statement that doesn't continue (RTS, RTI, BRK, JMP, BRA), one that has
+   * already been traced, or a byte that isn't an instruction. Each offset is queued
+   * at most once, so the work list can never be longer than the buffer.
+   */
+  private BitSet getCodeStarts ()
+  {
+    if (codeStarts != null)
+      return codeStarts;
+
+    codeMap = new BitSet (buffer.length);
+    codeStarts = new BitSet (buffer.length);
+    BitSet queued = new BitSet (buffer.length);
+    int[] pending = new int[64];
+    int totalPending = 0;
 
-      if (cmd.target > 0
-            && (cmd.target < loadAddress - 1 || cmd.target > (loadAddress + buffer.length)))
+    if (executeOffset < buffer.length)
+    {
+      pending[totalPending++] = executeOffset;
+      queued.set (executeOffset);
+    }
+
+    while (totalPending > 0)
+    {
+      int ptr = pending[--totalPending];
+
+      while (ptr < buffer.length && !codeStarts.get (ptr))
       {
-        while (line.length () < 40)
-          line.append (" ");
+        AssemblerOpcode opcode = AssemblerOpcode.get (buffer[ptr]);
+        int size = opcode.size;
+        if (size == 0 || ptr + size > buffer.length)
+          break;                                  // not an instruction
+        int overlap = codeMap.nextSetBit (ptr);
+        if (overlap >= 0 && overlap < ptr + size)
+          break;                                  // runs into a traced statement
+
+        codeMap.set (ptr, ptr + size);
+        codeStarts.set (ptr);
+
+        int target = -1;
+        if (opcode.mode == AssemblerOpcode.RELATIVE)
+          target = ptr + 2 + buffer[ptr + 1];
+        else if (opcode.value == 0x20 || opcode.value == 0x4C)      // JSR, JMP
+          target = HexFormatter.intValue (buffer[ptr + 1], buffer[ptr + 2]) - loadAddress;
+
+        if (target >= 0 && target < buffer.length && !queued.get (target))
+        {
+          if (totalPending == pending.length)
+            pending = Arrays.copyOf (pending, pending.length * 2);
+          pending[totalPending++] = target;
+          queued.set (target);
+        }
 
-        String text = equates.get (cmd.target);
-        if (text != null)
-          line.append ("; " + text);
-        else
-          for (int i = 0, max = ApplesoftConstants.tokenAddresses.length; i < max; i++)
-            if (cmd.target == ApplesoftConstants.tokenAddresses[i])
-            {
-              line.append ("; Applesoft - " + ApplesoftConstants.tokens[i]);
-              break;
-            }
+        switch (opcode.value)
+        {
+          case 0x00:    // BRK
+          case 0x40:    // RTI
+          case 0x4C:    // JMP
+          case 0x60:    // RTS
+          case 0x6C:    // JMP (indirect)
+          case 0x7C:    // JMP (indirect, X)
+          case 0x80:    // BRA
+            ptr = buffer.length;
+            break;
+          default:
+            ptr += size;
+        }
       }
-      pgm.append (line.toString () + "\n");
     }
 
-    if (pgm.length () > 0)
-      pgm.deleteCharAt (pgm.length () - 1);
-
-    return pgm;
+    return codeStarts;
   }
 
-  private List<AssemblerStatement> getLines ()
+  // the bytes of every statement reached from the entry point, for the layout panel
+  public BitSet getCodeMap ()
   {
-    List<AssemblerStatement> lines = new ArrayList<AssemblerStatement> ();
-    Map<Integer, AssemblerStatement> linesMap = new HashMap<Integer, AssemblerStatement> ();
-    List<Integer> targets = new ArrayList<Integer> ();
+    getCodeStarts ();
+    return codeMap;
+  }
 
-    int ptr = executeOffset;
-    int address = loadAddress + executeOffset;
+  /*
+   * Formats one line of the data between two traced areas, and returns the offset that
+   * follows it. A run of at least MIN_TEXT characters is shown as text, in double quotes
+   * if the high bits are set and single quotes if they're not, like Merlin's ASC.
+   */
+  private int formatData (StringBuilder line, int ptr, int end)
+  {
+    int start = line.length ();
+    line.append ("    ");
+    HexFormatter.appendHex (line, loadAddress + ptr, 4);
+    line.append (':');
+    while (line.length () - start < 23)
+      line.append (' ');
+
+    int textLength = getTextLength (ptr, end);
+    if (textLength >= MIN_TEXT)
+    {
+      char quote = (buffer[ptr] & 0x80) != 0 ? '"' : '\'';
+      line.append ("ASC ");
+      line.append (quote);
+      for (int i = 0; i < textLength; i++)
+        line.append ((char) (buffer[ptr + i] & 0x7F));
+      line.append (quote);
+      return ptr + textLength;
+    }
 
-    while (ptr < buffer.length)
+    line.append ("HEX ");
+    int first = ptr;
+    int max = Math.min (ptr + HEX_PER_LINE, end);
+    while (ptr < max)
     {
-      AssemblerStatement cmd = new AssemblerStatement (buffer[ptr]);
-      lines.add (cmd);
-      linesMap.put (address, cmd);
-      cmd.address = address;
-
-      if (cmd.size == 2 && ptr < buffer.length - 1)
-        cmd.addData (buffer[ptr + 1]);
-      else if (cmd.size == 3 && ptr < buffer.length - 2)
-        cmd.addData (buffer[ptr + 1], buffer[ptr + 2]);
-      else
-        cmd.size = 1;
-
-      if (cmd.target >= loadAddress && cmd.target < (loadAddress + buffer.length)
-            && (cmd.value == 0x4C || cmd.value == 0x6C || cmd.value == 0x20))
-        targets.add (cmd.target);
-      if (cmd.offset != 0)
-        targets.add (cmd.address + cmd.offset + 2);
-
-      address += cmd.size;
-      ptr += cmd.size;
+      if (ptr > first && getTextLength (ptr, end) >= MIN_TEXT)
+        break;                                    // leave it for the next line
+      HexFormatter.appendHex (line, buffer[ptr++] & 0xFF, 2);
     }
+    return ptr;
+  }
 
-    for (Integer target : targets)
+  // the number of printable characters at ptr (up to a line's worth) with the same high bit
+  private int getTextLength (int ptr, int end)
+  {
+    int highBit = buffer[ptr] & 0x80;
+    int max = Math.min (end - ptr, TEXT_PER_LINE);
+    int length = 0;
+    while (length < max)
     {
-      AssemblerStatement cmd = linesMap.get (target);
-      if (cmd != null)
-        cmd.isTarget = true;
+      int value = buffer[ptr + length] & 0xFF;
+      int c = value & 0x7F;
+      if ((value & 0x80) != highBit || c < 0x20 || c == 0x7F)
+        break;
+      ++length;
     }
+    return length;
+  }
+
+  private void markTarget (BitSet targets, int target)
+  {
+    int ptr = target - loadAddress;
+    if (ptr >= executeOffset && ptr < buffer.length)
+      targets.set (ptr);
+  }
+
+  // an instruction that is cut off by the end of the buffer is shown as a single byte
+  private int getSize (int ptr)
+  {
+    int size = AssemblerOpcode.get (buffer[ptr]).size;
+    return size > 1 && ptr + size <= buffer.length ? size : 1;
+  }
 
-    return lines;
+  private int getTarget (int ptr, int size)
+  {
+    int mode = AssemblerOpcode.get (buffer[ptr]).mode;
+    if (size == 3 && mode == AssemblerOpcode.ABSOLUTE)
+      return HexFormatter.intValue (buffer[ptr + 1], buffer[ptr + 2]);
+    if (size == 2 && (mode == AssemblerOpcode.ZERO_PAGE || mode == AssemblerOpcode.RELATIVE))
+      return buffer[ptr + 1] & 0xFF;
+    return 0;
   }
 
-  private String getArrow (AssemblerStatement cmd)
+  private int getOffset (int ptr, int size)
   {
-    String arrow = "";
-    if (cmd.value == 0x4C || cmd.value == 0x6C || cmd.value == 0x60 || cmd.offset != 0)
-      arrow = "<--";
-    if (cmd.value == 0x20 &&    // JSR
-          cmd.target >= loadAddress && cmd.target < (loadAddress + buffer.length))
-      arrow = "<--";
-    if (cmd.isTarget)
-      if (arrow.isEmpty ())
-        arrow = "-->";
-      else
-        arrow = "<->";
-    return arrow;
+    if (size == 2 && AssemblerOpcode.get (buffer[ptr]).mode == AssemblerOpcode.RELATIVE)
+      return buffer[ptr + 1];
+    return 0;
+  }
+
+  private String getArrow (int value, int target, int offset, boolean isTarget)
+  {
+    boolean isJump = value == 0x4C || value == 0x6C || value == 0x60 || offset != 0
+        || (value == 0x20 &&    // JSR
+            target >= loadAddress && target < (loadAddress + buffer.length));
+    if (isTarget)
+      return isJump ? "<->" : "-->";
+    return isJump ? "<--" : "   ";
   }
 
   @Override
@@ -236,9 +419,20 @@ public class AssemblerProgram extends AbstractFile
     return getStringBuilder ().toString ();
   }
 
-  private void getEquates ()
+  // address -> token
+  private static Map<Integer, String> getApplesoftRoutines ()
+  {
+    Map<Integer, String> applesoftRoutines = new HashMap<Integer, String> ();
+    for (int i = 0; i < ApplesoftConstants.tokenAddresses.length; i++)
+      if (!applesoftRoutines.containsKey (ApplesoftConstants.tokenAddresses[i]))
+        applesoftRoutines.put (ApplesoftConstants.tokenAddresses[i],
+                               ApplesoftConstants.tokens[i]);
+    return applesoftRoutines;
+  }
+
+  private static Map<Integer, String> getEquates ()
   {
-    equates = new HashMap<Integer, String> ();
+    Map<Integer, String> equates = new HashMap<Integer, String> ();
     DataInputStream inputEquates =
           new DataInputStream (DiskBrowser.class.getClassLoader ()
                 .getResourceAsStream ("com/bytezone/diskbrowser/applefile/equates.txt"));
@@ -264,5 +458,6 @@ public class AssemblerProgram extends AbstractFile
     {
       e.printStackTrace ();
     }
+    return equates;
   }
 }
\ No newline at end of file
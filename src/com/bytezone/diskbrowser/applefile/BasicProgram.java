@@ -4,6 +4,13 @@ import java.util.*;
 
 import com.bytezone.diskbrowser.HexFormatter;
 
+/*
+ * The program is split into lines and sublines once, when it is created. Each subline is
+ * just a pointer and a length into the buffer (kept in int arrays rather than objects),
+ * along with the position of its equals sign. The listing is formatted from these in a
+ * single pass the first time it is needed for each combination of the display options,
+ * and the text is kept so that switching back to those options doesn't format it again.
+ */
 public class BasicProgram extends AbstractFile
 {
   private static final byte ASCII_QUOTE = 0x22;
@@ -21,10 +28,25 @@ public class BasicProgram extends AbstractFile
   private static final byte TOKEN_THEN = (byte) 0xC4;
   private static final byte TOKEN_EQUALS = (byte) 0xD0;
 
-  private final List<SourceLine> sourceLines = new ArrayList<SourceLine> ();
+  private static final int MAX_LINE_NUMBER = 65535;
+
+  // lines - firstSubline has an extra entry so that a line's sublines end at the next one's
+  private int totalLines;
+  private int[] lineNumbers = new int[64];
+  private int[] firstSubline = new int[65];
+
+  // sublines
+  private int totalSublines;
+  private int[] sublinePtrs = new int[256];
+  private int[] sublineLengths = new int[256];
+  private int[] assignEqualPos = new int[256];      // used for aligning the equals sign
+
   private final int endPtr;
-  private final Set<Integer> gotoLines = new HashSet<Integer> ();
-  private final Set<Integer> gosubLines = new HashSet<Integer> ();
+  private final BitSet gotoLines = new BitSet ();
+  private final BitSet gosubLines = new BitSet ();
+
+  private final Map<Long, String> listings = new HashMap<Long, String> ();
+  private final StringBuilder expanded = new StringBuilder ();
 
   boolean splitRem = false; // should be a user preference
   boolean alignAssign = true; // should be a user preference
@@ -41,110 +63,284 @@ public class BasicProgram extends AbstractFile
     int ptr = 0;
     int prevOffset = 0;
 
-    int max = buffer.length - 4;    // need at least 4 bytes to make a SourceLine
+    int max = buffer.length - 4;    // need at least 4 bytes to make a line
     while (ptr < max)
     {
       int offset = HexFormatter.intValue (buffer[ptr], buffer[ptr + 1]);
       if (offset <= prevOffset)
         break;
 
-      SourceLine line = new SourceLine (ptr);
-      sourceLines.add (line);
-      ptr += line.length;
+      ptr = addLine (ptr);
       prevOffset = offset;
     }
     endPtr = ptr;
+    firstSubline[totalLines] = totalSublines;
+  }
+
+  // splits the line into sublines, and returns the start of the next line
+  private int addLine (int ptr)
+  {
+    if (totalLines == lineNumbers.length)
+    {
+      lineNumbers = Arrays.copyOf (lineNumbers, totalLines * 2);
+      firstSubline = Arrays.copyOf (firstSubline, totalLines * 2 + 1);
+    }
+
+    int lineNumber = HexFormatter.intValue (buffer[ptr + 2], buffer[ptr + 3]);
+    lineNumbers[totalLines] = lineNumber;
+    firstSubline[totalLines] = totalSublines;
+    ++totalLines;
+
+    int startPtr = ptr += 4;
+    boolean inString = false; // can toggle
+    boolean inRemark = false; // can only go false -> true
+    byte b;
+
+    while ((b = buffer[ptr++]) != 0)
+    {
+      switch (b)
+      {
+      // break IF statements into two sublines (allows for easier line indenting)
+        case TOKEN_IF:
+          if (!inString && !inRemark)
+          {
+            // skip to THEN or GOTO - if not found then it's an error
+            while (buffer[ptr] != TOKEN_THEN && buffer[ptr] != TOKEN_GOTO
+                  && buffer[ptr] != 0)
+              ptr++;
+
+            // keep THEN with the IF
+            if (buffer[ptr] == TOKEN_THEN)
+              ++ptr;
+
+            // create subline from the condition (and THEN if it exists)
+            addSubline (lineNumber, startPtr, ptr - startPtr);
+            startPtr = ptr;
+          }
+          break;
+
+        // end of subline, so add it, advance startPtr and continue
+        case ASCII_COLON:
+          if (!inString && !inRemark)
+          {
+            addSubline (lineNumber, startPtr, ptr - startPtr);
+            startPtr = ptr;
+          }
+          break;
+
+        case TOKEN_REM:
+          if (!inString && !inRemark)
+            inRemark = true;
+          break;
+
+        case ASCII_QUOTE:
+          if (!inRemark)
+            inString = !inString;
+          break;
+      }
+    }
+
+    // add whatever is left
+    addSubline (lineNumber, startPtr, ptr - startPtr);
+    return ptr;
+  }
+
+  private void addSubline (int lineNumber, int startPtr, int length)
+  {
+    if (totalSublines == sublinePtrs.length)
+    {
+      sublinePtrs = Arrays.copyOf (sublinePtrs, totalSublines * 2);
+      sublineLengths = Arrays.copyOf (sublineLengths, totalSublines * 2);
+      assignEqualPos = Arrays.copyOf (assignEqualPos, totalSublines * 2);
+    }
+
+    int subline = totalSublines++;
+    sublinePtrs[subline] = startPtr;
+    sublineLengths[subline] = length;
+
+    byte b = buffer[startPtr];
+    if ((b & 0x80) > 0) // token
+    {
+      switch (b)
+      {
+        case TOKEN_LET:
+          recordEqualsPosition (subline);
+          break;
+
+        case TOKEN_GOTO:
+          String target = new String (buffer, startPtr + 1, length - 2);
+          try
+          {
+            addTarget (gotoLines, Integer.parseInt (target));
+          }
+          catch (NumberFormatException e)
+          {
+            System.out.println ("Error parsing : GOTO " + target + " in " + lineNumber);
+          }
+          break;
+
+        case TOKEN_GOSUB:
+          String target2 = new String (buffer, startPtr + 1, length - 2);
+          try
+          {
+            addTarget (gosubLines, Integer.parseInt (target2));
+          }
+          catch (NumberFormatException e)
+          {
+            System.out.println ("Error parsing : GOSUB " + target2 + " in " + lineNumber);
+          }
+          break;
+      }
+    }
+    else
+    {
+      if (b >= 48 && b <= 57)       // numeric, so must be a line number
+      {
+        String target = new String (buffer, startPtr, length - 1);
+        try
+        {
+          addTarget (gotoLines, Integer.parseInt (target));
+        }
+        catch (NumberFormatException e)
+        {
+          System.out.println (target);
+          System.out.println (HexFormatter.format (buffer, startPtr, length - 1));
+          System.out.println (e.toString ());
+        }
+      }
+      else
+        recordEqualsPosition (subline);
+    }
+  }
+
+  // targets that can't be line numbers are never shown, so they aren't kept
+  private void addTarget (BitSet targets, int lineNumber)
+  {
+    if (lineNumber >= 0 && lineNumber <= MAX_LINE_NUMBER)
+      targets.set (lineNumber);
+  }
+
+  // Record the position of the equals sign so it can be aligned with adjacent lines.
+  private void recordEqualsPosition (int subline)
+  {
+    int p = sublinePtrs[subline] + 1;
+    int max = sublinePtrs[subline] + sublineLengths[subline];
+    while (p < max && buffer[p] != TOKEN_EQUALS)
+      p++;
+    if (p < buffer.length && buffer[p] == TOKEN_EQUALS)
+    {
+      expanded.setLength (0);
+      expandSubline (subline, expanded);
+      assignEqualPos[subline] = expanded.indexOf ("="); // use expanded line
+    }
   }
 
   @Override
   public String getText ()
   {
-    StringBuilder fullText = new StringBuilder ();
-    Stack<String> loopVariables = new Stack<String> ();
+    Long key = getOptions ();
+    String text = listings.get (key);
+    if (text == null)
+    {
+      text = formatProgram ();
+      listings.put (key, text);
+    }
+    return text;
+  }
+
+  // each combination of the display options has its own listing
+  private long getOptions ()
+  {
+    long options = wrapPrintAt & 0xFFFFFFFFL;
+    options = options << 1 | (splitRem ? 1 : 0);
+    options = options << 1 | (alignAssign ? 1 : 0);
+    options = options << 1 | (showTargets ? 1 : 0);
+    options = options << 1 | (showHeader ? 1 : 0);
+    options = options << 1 | (onlyShowTargetLineNumbers ? 1 : 0);
+    return options;
+  }
+
+  private String formatProgram ()
+  {
+    StringBuilder fullText = new StringBuilder (buffer.length * 3);
+    Deque<String> loopVariables = new ArrayDeque<String> ();
     if (showHeader)
       addHeader (fullText);
     int alignPos = 0;
-    StringBuilder text;
+    StringBuilder text = new StringBuilder ();
     int baseOffset = showTargets ? 12 : 8;
 
-    for (SourceLine line : sourceLines)
+    for (int line = 0; line < totalLines; line++)
     {
-      text = new StringBuilder (getBase (line) + "  ");
+      text.setLength (0);
+      addBase (text, line);
+      text.append ("  ");
 
       int indent = loopVariables.size (); // each full line starts at the loop indent
-      int ifIndent = 0; // IF statement(s) limit back indentation by NEXT
+      int ifIndent = 0; // IF statements limit back indentation by NEXT
 
-      for (SubLine subline : line.sublines)
+      for (int subline = firstSubline[line]; subline < firstSubline[line + 1]; subline++)
       {
         // Allow empty statements (caused by a single colon)
-        if (subline.isEmpty ())
+        if (isEmpty (subline))
           continue;
 
         // A REM statement might conceal an assembler routine - see P.CREATE on Diags2E.DSK
-        if (subline.is (TOKEN_REM) && subline.containsToken ())
+        if (is (subline, TOKEN_REM) && containsToken (subline))
         {
-          int address = subline.getAddress () + 1; // skip the REM token
-          fullText.append (text
-                + String.format ("REM - Inline assembler @ $%02X (%d)%n", address, address));
+          int address = getAddress (subline) + 1; // skip the REM token
+          fullText.append (text);
+          fullText.append (
+              String.format ("REM - Inline assembler @ $%02X (%d)%n", address, address));
           String padding = "                         ".substring (0, text.length () + 2);
-          for (String asm : subline.getAssembler ())
+          for (String asm : getAssembler (subline))
             fullText.append (padding + asm + "\n");
           continue;
         }
 
         // Reduce the indent by each NEXT, but only as far as the IF indent allows
-        if (subline.is (TOKEN_NEXT))
+        if (is (subline, TOKEN_NEXT))
         {
           popLoopVariables (loopVariables, subline);
           indent = Math.max (ifIndent, loopVariables.size ());
         }
 
         // Are we joining REM lines with the previous subline?
-        if (!splitRem && subline.isJoinableRem ())
+        if (!splitRem && isJoinableRem (line, subline))
         {
           // Join this REM statement to the previous line, so no indenting
-          fullText.deleteCharAt (fullText.length () - 1); // remove newline
-          fullText.append (" ");
+          fullText.setCharAt (fullText.length () - 1, ' '); // replace newline
         }
         // ... otherwise do all the indenting and showing of targets etc.
         else
         {
           // Prepare target indicators for subsequent sublines (ie no line number)
-          if (showTargets && !subline.isFirst ())
-            if (subline.is (TOKEN_GOSUB))
+          if (showTargets && subline != firstSubline[line])
+            if (is (subline, TOKEN_GOSUB))
               text.append ("<<--");
-            else if (subline.is (TOKEN_GOTO) || subline.isImpliedGoto ())
+            else if (is (subline, TOKEN_GOTO) || isImpliedGoto (subline))
               text.append (" <--");
 
           // Align assign statements if required
           if (alignAssign)
-            alignPos = alignEqualsPosition (subline, alignPos);
+            alignPos = alignEqualsPosition (line, subline, alignPos);
 
           int column = indent * 2 + baseOffset;
           while (text.length () < column)
-            text.append (" ");
+            text.append (' ');
         }
 
         // Add the current text, then reset it
-        int pos = subline.is (TOKEN_REM) ? 0 : alignPos;
-        String lineText = subline.getAlignedText (pos);
-
-        // if (subline.is (TOKEN_REM) && lineText.length () > wrapRemAt + 4)
-        // {
-        // System.out.println (subline.getAlignedText (pos));
-        // String copy = lineText.substring (4);
-        // text.append ("REM ");
-        // int inset = text.length ();
-        // System.out.println (inset);
-        // List<String> remarks = splitRemark (copy, wrapRemAt);
-        // for (String remark : remarks)
-        // text.append ("                        ".substring (0, inset) + remark);
-        // }
-        // else
-        text.append (lineText);
+        int pos = is (subline, TOKEN_REM) ? 0 : alignPos;
+        int textStart = text.length ();
+        expandSubline (subline, text);
+        int equalPos = assignEqualPos[subline];
+        if (pos > equalPos && equalPos >= 0)
+          for (int i = pos - equalPos; i > 0; i--)     // pad in front of the equals sign
+            text.insert (textStart + equalPos, ' ');
 
         // Check for a wrapable PRINT statement (see FROM MACHINE LANGUAGE TO BASIC on DOSToolkit2eB.dsk)
-        if (subline.is (TOKEN_PRINT) && wrapPrintAt > 0 && countChars (text, ASCII_QUOTE) == 2
+        if (is (subline, TOKEN_PRINT) && wrapPrintAt > 0 && countChars (text, ASCII_QUOTE) == 2
               && countChars (text, ASCII_SEMI_COLON) == 0)
         {
           int first = text.indexOf ("\"");
@@ -154,23 +350,26 @@ public class BasicProgram extends AbstractFile
             int ptr = first + wrapPrintAt;
             do
             {
-              fullText.append (text.substring (0, ptr)
-                    + "\n                                 ".substring (0, first + 1));
+              fullText.append (text, 0, ptr);
+              fullText.append ('\n');
+              for (int i = 0; i < first; i++)
+                fullText.append (' ');
               text.delete (0, ptr);
               ptr = wrapPrintAt;
             } while (text.length () > wrapPrintAt);
           }
         }
 
-        fullText.append (text + "\n");
+        fullText.append (text);
+        fullText.append ('\n');
         text.setLength (0);
 
         // Calculate indent changes that take effect after the current subline
-        if (subline.is (TOKEN_IF))
+        if (is (subline, TOKEN_IF))
           ifIndent = ++indent;
-        else if (subline.is (TOKEN_FOR))
+        else if (is (subline, TOKEN_FOR))
         {
-          loopVariables.push (subline.forVariable);
+          loopVariables.push (getForVariable (subline));
           ++indent;
         }
       }
@@ -180,29 +379,11 @@ public class BasicProgram extends AbstractFile
         alignPos = 0;
     }
 
-    fullText.deleteCharAt (fullText.length () - 1); // remove last newline
+    if (fullText.length () > 0)
+      fullText.deleteCharAt (fullText.length () - 1); // remove last newline
     return fullText.toString ();
   }
 
-  private List<String> splitRemark (String remark, int wrapLength)
-  {
-    List<String> remarks = new ArrayList<String> ();
-    while (remark.length () > wrapLength)
-    {
-      int max = Math.min (wrapLength, remark.length () - 1);
-      while (max > 0 && remark.charAt (max) != ' ')
-        --max;
-      System.out.println (remark.substring (0, max));
-      remarks.add (remark.substring (0, max) + "\n");
-      if (max == 0)
-        break;
-      remark = remark.substring (max + 1);
-    }
-    remarks.add (remark);
-    System.out.println (remark);
-    return remarks;
-  }
-
   private int countChars (StringBuilder text, byte ch)
   {
     int total = 0;
@@ -212,39 +393,54 @@ public class BasicProgram extends AbstractFile
     return total;
   }
 
-  private String getBase (SourceLine line)
+  private void addBase (StringBuilder text, int line)
   {
+    int lineNumber = lineNumbers[line];
     if (!showTargets)
-      return String.format (" %5d", line.lineNumber);
+    {
+      text.append (' ');
+      appendLineNumber (text, lineNumber);
+      return;
+    }
 
-    String lineNumberText = String.format ("%5d", line.lineNumber);
-    SubLine subline = line.sublines.get (0);
+    int subline = firstSubline[line];
     String c1 = "  ", c2 = "  ";
-    if (subline.is (TOKEN_GOSUB))
+    if (is (subline, TOKEN_GOSUB))
       c1 = "<<";
-    if (subline.is (TOKEN_GOTO))
+    if (is (subline, TOKEN_GOTO))
       c1 = " <";
-    if (gotoLines.contains (line.lineNumber))
+    if (gotoLines.get (lineNumber))
       c2 = "> ";
-    if (gosubLines.contains (line.lineNumber))
+    if (gosubLines.get (lineNumber))
       c2 = ">>";
     if (c1.equals ("  ") && !c2.equals ("  "))
       c1 = "--";
     if (!c1.equals ("  ") && c2.equals ("  "))
       c2 = "--";
-    if (onlyShowTargetLineNumbers && !c2.startsWith (">"))
-      lineNumberText = "";
-    return String.format ("%s%s %s", c1, c2, lineNumberText);
+
+    text.append (c1);
+    text.append (c2);
+    text.append (' ');
+    if (!onlyShowTargetLineNumbers || c2.startsWith (">"))
+      appendLineNumber (text, lineNumber);
+  }
+
+  // right justified in 5 columns
+  private void appendLineNumber (StringBuilder text, int lineNumber)
+  {
+    for (int limit = 10000; limit > 1 && lineNumber < limit; limit /= 10)
+      text.append (' ');
+    text.append (lineNumber);
   }
 
   // Decide whether the current subline needs to be aligned on its equals sign. If so,
   // and the column hasn't been calculated, read ahead to find the highest position.
-  private int alignEqualsPosition (SubLine subline, int currentAlignPosition)
+  private int alignEqualsPosition (int line, int subline, int currentAlignPosition)
   {
-    if (subline.assignEqualPos > 0) // does the line have an equals sign?
+    if (assignEqualPos[subline] > 0) // does the line have an equals sign?
     {
       if (currentAlignPosition == 0)
-        currentAlignPosition = findHighest (subline); // examine following sublines for alignment
+        currentAlignPosition = findHighest (line, subline); // examine following sublines
       return currentAlignPosition;
     }
     return 0; // reset it
@@ -252,38 +448,38 @@ public class BasicProgram extends AbstractFile
 
   // The IF processing is so that any assignment that is being aligned doesn't continue
   // to the next full line (because the indentation has changed).
-  private int findHighest (SubLine startSubline)
+  private int findHighest (int line, int startSubline)
   {
-    boolean started = false;
-    int highestAssign = startSubline.assignEqualPos;
-    fast: for (SourceLine line : sourceLines)
+    int highestAssign = assignEqualPos[startSubline];
+
+    boolean inIf = false;
+    for (int subline = firstSubline[line]; subline < startSubline; subline++)
+      if (is (subline, TOKEN_IF))
+        inIf = true;
+
+    int lastSubline = inIf ? firstSubline[line + 1] : totalSublines;
+    for (int subline = startSubline + 1; subline < lastSubline; subline++)
     {
-      boolean inIf = false;
-      for (SubLine subline : line.sublines)
-      {
-        if (started)
-        {
-          // Stop when we come to a line without an equals sign (except for non-split REMs).
-          // Lines that start with a REM always break.
-          if (subline.assignEqualPos == 0
-          // && (splitRem || !subline.is (TOKEN_REM) || subline.isFirst ()))
-                && (splitRem || !subline.isJoinableRem ()))
-            break fast; // of champions
-
-          if (subline.assignEqualPos > highestAssign)
-            highestAssign = subline.assignEqualPos;
-        }
-        else if (subline == startSubline)
-          started = true;
-        else if (subline.is (TOKEN_IF))
-          inIf = true;
-      }
-      if (started && inIf)
+      while (subline >= firstSubline[line + 1])
+        ++line;
+
+      // Stop when we come to a line without an equals sign (except for non-split REMs).
+      // Lines that start with a REM always break.
+      if (assignEqualPos[subline] == 0 && (splitRem || !isJoinableRem (line, subline)))
         break;
+
+      if (assignEqualPos[subline] > highestAssign)
+        highestAssign = assignEqualPos[subline];
     }
     return highestAssign;
   }
 
+  @Override
+  public byte[] getHexDumpBuffer ()
+  {
+    return buffer.length < 2 ? super.getHexDumpBuffer () : null;
+  }
+
   @Override
   public String getHexDump ()
   {
@@ -360,19 +556,34 @@ public class BasicProgram extends AbstractFile
     return length;
   }
 
-  private void popLoopVariables (Stack<String> loopVariables, SubLine subline)
+  private void popLoopVariables (Deque<String> loopVariables, int subline)
   {
-    if (subline.nextVariables.length == 0) // naked NEXT
+    int startPtr = sublinePtrs[subline];
+    int length = sublineLengths[subline];
+
+    if (length == 2) // naked NEXT
     {
       if (loopVariables.size () > 0)
         loopVariables.pop ();
     }
     else
-      for (String variable : subline.nextVariables)
+    {
+      String varList = new String (buffer, startPtr + 1, length - 2);
+      for (String variable : varList.split (","))
         // e.g. NEXT X,Y,Z
         while (loopVariables.size () > 0)
           if (sameVariable (variable, loopVariables.pop ()))
             break;
+    }
+  }
+
+  private String getForVariable (int subline)
+  {
+    StringBuilder forVariable = new StringBuilder ();
+    int p = sublinePtrs[subline] + 1;
+    while (p < buffer.length && buffer[p] != TOKEN_EQUALS)
+      forVariable.append ((char) buffer[p++]);
+    return forVariable.toString ();
   }
 
   private boolean sameVariable (String v1, String v2)
@@ -385,274 +596,83 @@ public class BasicProgram extends AbstractFile
     return false;
   }
 
-  private class SourceLine
+  private boolean isImpliedGoto (int subline)
   {
-    List<SubLine> sublines = new ArrayList<SubLine> ();
-    int lineNumber;
-    int linePtr;
-    int length;
-
-    public SourceLine (int ptr)
-    {
-      linePtr = ptr;
-      lineNumber = HexFormatter.intValue (buffer[ptr + 2], buffer[ptr + 3]);
+    byte b = buffer[sublinePtrs[subline]];
+    if ((b & 0x80) > 0) // token
+      return false;
+    return (b >= 48 && b <= 57);
+  }
 
-      int startPtr = ptr += 4;
-      boolean inString = false; // can toggle
-      boolean inRemark = false; // can only go false -> true
-      byte b;
+  private boolean isJoinableRem (int line, int subline)
+  {
+    return is (subline, TOKEN_REM) && subline != firstSubline[line];
+  }
 
-      while ((b = buffer[ptr++]) != 0)
-      {
-        switch (b)
-        {
-        // break IF statements into two sublines (allows for easier line indenting)
-          case TOKEN_IF:
-            if (!inString && !inRemark)
-            {
-              // skip to THEN or GOTO - if not found then it's an error
-              while (buffer[ptr] != TOKEN_THEN && buffer[ptr] != TOKEN_GOTO
-                    && buffer[ptr] != 0)
-                ptr++;
-
-              // keep THEN with the IF
-              if (buffer[ptr] == TOKEN_THEN)
-                ++ptr;
-
-              // create subline from the condition (and THEN if it exists)
-              sublines.add (new SubLine (this, startPtr, ptr - startPtr));
-              startPtr = ptr;
-            }
-            break;
+  private boolean is (int subline, byte token)
+  {
+    return buffer[sublinePtrs[subline]] == token;
+  }
 
-          // end of subline, so add it, advance startPtr and continue
-          case ASCII_COLON:
-            if (!inString && !inRemark)
-            {
-              sublines.add (new SubLine (this, startPtr, ptr - startPtr));
-              startPtr = ptr;
-            }
-            break;
+  private boolean isEmpty (int subline)
+  {
+    return sublineLengths[subline] == 1 && buffer[sublinePtrs[subline]] == 0;
+  }
 
-          case TOKEN_REM:
-            if (!inString && !inRemark)
-              inRemark = true;
-            break;
+  private boolean containsToken (int subline)
+  {
+    // ignore first byte, check the rest for tokens
+    for (int p = sublinePtrs[subline] + 1, max = sublinePtrs[subline]
+        + sublineLengths[subline]; p < max; p++)
+      if ((buffer[p] & 0x80) > 0)
+        return true;
+    return false;
+  }
 
-          case ASCII_QUOTE:
-            if (!inRemark)
-              inString = !inString;
-            break;
-        }
-      }
+  private int getAddress (int subline)
+  {
+    return getLoadAddress () + sublinePtrs[subline];
+  }
 
-      // add whatever is left
-      sublines.add (new SubLine (this, startPtr, ptr - startPtr));
-      this.length = ptr - linePtr;
-    }
+  // A REM statement might conceal an assembler routine
+  private String[] getAssembler (int subline)
+  {
+    byte[] buffer2 = new byte[sublineLengths[subline] - 1];
+    System.arraycopy (buffer, sublinePtrs[subline] + 1, buffer2, 0, buffer2.length);
+    AssemblerProgram program =
+          new AssemblerProgram ("REM assembler", buffer2, getAddress (subline) + 1);
+    return program.getAssembler ().split ("\n");
   }
 
-  private class SubLine
+  // adds the subline's text with the tokens expanded
+  private void expandSubline (int subline, StringBuilder line)
   {
-    SourceLine parent;
-    int startPtr;
-    int length;
-    String[] nextVariables;
-    String forVariable = "";
-    int targetLine = -1;
+    int startPtr = sublinePtrs[subline];
+    int start = line.length ();
 
-    // used for aligning the equals sign
-    int assignEqualPos;
+    // All sublines end with 0 or : except IF lines that are split into two
+    int max = startPtr + sublineLengths[subline] - 1;
+    if (buffer[max] == 0)
+      --max;
 
-    public SubLine (SourceLine parent, int startPtr, int length)
+    for (int p = startPtr; p <= max; p++)
     {
-      this.parent = parent;
-      this.startPtr = startPtr;
-      this.length = length;
-
-      byte b = buffer[startPtr];
+      byte b = buffer[p];
       if ((b & 0x80) > 0) // token
       {
-        switch (b)
-        {
-          case TOKEN_FOR:
-            int p = startPtr + 1;
-            while (buffer[p] != TOKEN_EQUALS)
-              forVariable += (char) buffer[p++];
-            break;
-
-          case TOKEN_NEXT:
-            if (length == 2) // no variables
-              nextVariables = new String[0];
-            else
-            {
-              String varList = new String (buffer, startPtr + 1, length - 2);
-              nextVariables = varList.split (",");
-            }
-            break;
-
-          case TOKEN_LET:
-            recordEqualsPosition ();
-            break;
-
-          case TOKEN_GOTO:
-            String target = new String (buffer, startPtr + 1, length - 2);
-            try
-            {
-              gotoLines.add (Integer.parseInt (target));
-            }
-            catch (NumberFormatException e)
-            {
-              System.out.println ("Error parsing : GOTO " + target + " in "
-                    + parent.lineNumber);
-            }
-            break;
-
-          case TOKEN_GOSUB:
-            String target2 = new String (buffer, startPtr + 1, length - 2);
-            try
-            {
-              gosubLines.add (Integer.parseInt (target2));
-            }
-            catch (NumberFormatException e)
-            {
-              System.out.println ("Error parsing : GOSUB " + target2 + " in "
-                    + parent.lineNumber);
-            }
-            break;
-        }
+        if (line.length () > start && line.charAt (line.length () - 1) != ' ')
+          line.append (' ');
+        int val = b & 0x7F;
+        if (val < ApplesoftConstants.tokens.length)
+          line.append (ApplesoftConstants.tokens[val]);
       }
-      else
+      else if (b < 32) // CTRL character
       {
-        if (b >= 48 && b <= 57)       // numeric, so must be a line number
-        {
-          String target = new String (buffer, startPtr, length - 1);
-          try
-          {
-            targetLine = Integer.parseInt (target);
-            gotoLines.add (targetLine);
-          }
-          catch (NumberFormatException e)
-          {
-            System.out.println (target);
-            System.out.println (HexFormatter.format (buffer, startPtr, length - 1));
-            System.out.println (e.toString ());
-          }
-        }
-        else if (alignAssign)
-          recordEqualsPosition ();
+        line.append ('^');                      // would be better in inverse text
+        line.append ((char) (b + 64));
       }
-    }
-
-    private boolean isImpliedGoto ()
-    {
-      byte b = buffer[startPtr];
-      if ((b & 0x80) > 0) // token
-        return false;
-      return (b >= 48 && b <= 57);
-    }
-
-    // Record the position of the equals sign so it can be aligned with adjacent lines.
-    private void recordEqualsPosition ()
-    {
-      int p = startPtr + 1;
-      int max = startPtr + length;
-      while (buffer[p] != TOKEN_EQUALS && p < max)
-        p++;
-      if (buffer[p] == TOKEN_EQUALS)
-        assignEqualPos = toString ().indexOf ('='); // use expanded line
-    }
-
-    private boolean isJoinableRem ()
-    {
-      return is (TOKEN_REM) && !isFirst ();
-    }
-
-    public boolean isFirst ()
-    {
-      return (parent.linePtr + 4) == startPtr;
-    }
-
-    public boolean is (byte token)
-    {
-      return buffer[startPtr] == token;
-    }
-
-    public boolean isEmpty ()
-    {
-      return length == 1 && buffer[startPtr] == 0;
-    }
-
-    public boolean containsToken ()
-    {
-      // ignore first byte, check the rest for tokens
-      for (int p = startPtr + 1, max = startPtr + length; p < max; p++)
-        if ((buffer[p] & 0x80) > 0)
-          return true;
-      return false;
-    }
-
-    public int getAddress ()
-    {
-      return getLoadAddress () + startPtr;
-    }
-
-    public String getAlignedText (int alignPosition)
-    {
-      StringBuilder line = toStringBuilder ();
-
-      while (alignPosition-- > assignEqualPos)
-        line.insert (assignEqualPos, ' ');
-
-      return line.toString ();
-    }
-
-    // A REM statement might conceal an assembler routine
-    public String[] getAssembler ()
-    {
-      byte[] buffer2 = new byte[length - 1];
-      System.arraycopy (buffer, startPtr + 1, buffer2, 0, buffer2.length);
-      AssemblerProgram program =
-            new AssemblerProgram ("REM assembler", buffer2, getAddress () + 1);
-      return program.getAssembler ().split ("\n");
-    }
-
-    @Override
-    public String toString ()
-    {
-      return toStringBuilder ().toString ();
-    }
-
-    public StringBuilder toStringBuilder ()
-    {
-      StringBuilder line = new StringBuilder ();
-
-      // All sublines end with 0 or : except IF lines that are split into two
-      int max = startPtr + length - 1;
-      if (buffer[max] == 0)
-        --max;
-
-      for (int p = startPtr; p <= max; p++)
-      {
-        byte b = buffer[p];
-        if ((b & 0x80) > 0) // token
-        {
-          if (line.length () > 0 && line.charAt (line.length () - 1) != ' ')
-            line.append (' ');
-          int val = b & 0x7F;
-          if (val < ApplesoftConstants.tokens.length)
-            line.append (ApplesoftConstants.tokens[b & 0x7F]);
-          // else
-          // System.out.println ("Bad value : " + val + " " + line.toString () + " "
-          // + parent.lineNumber);
-        }
-        else if (b < 32) // CTRL character
-          line.append ("^" + (char) (b + 64)); // would be better in inverse text
-        else
-          line.append ((char) b);
-      }
-
-      return line;
+      else
+        line.append ((char) b);
     }
   }
 }
\ No newline at end of file
@@ -23,7 +23,7 @@ public class BootSector extends AbstractSector
     {
       int flag = buffer[0] & 0xFF;
       if (flag == 1)      // apple II
-        assembler = new AssemblerProgram (name + " Boot Loader", buffer, 0x00, 1);
+        assembler = new AssemblerProgram (name + " Boot Loader", buffer, 0x800, 1);
       else                // apple III (SOS)
       {
         byte[] newBuffer = new byte[buffer.length * 2];
@@ -33,8 +33,9 @@ public class BootSector extends AbstractSector
         System.arraycopy (buf, 0, newBuffer, buf.length, buf.length);
 
         buffer = newBuffer;
-        assembler = new AssemblerProgram (name + " Boot Loader", buffer, 0x00, 0);
+        assembler = new AssemblerProgram (name + " Boot Loader", buffer, 0xA000, 0);
       }
+      assembler.setTraceCode (true);
     }
 
     text.append (assembler.getText ());
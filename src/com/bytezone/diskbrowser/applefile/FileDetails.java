@@ -0,0 +1,20 @@
+package com.bytezone.diskbrowser.applefile;
+
+/*
+ * Implemented by catalog entries that can describe their file without reading it, so
+ * that the details can be saved in the catalog index.
+ */
+public interface FileDetails
+{
+  // the file type as the disk's own catalog shows it
+  public String getFileTypeText ();
+
+  // ProDOS aux type, or 0 for operating systems without one
+  public int getAuxType ();
+
+  // length in bytes according to the catalog
+  public int getFileLength ();
+
+  // blocks (or sectors) according to the catalog
+  public int getBlocksUsed ();
+}
\ No newline at end of file
@@ -199,6 +199,12 @@ public class IntegerBasicProgram extends AbstractFile
 		}
 	}
 
+	@Override
+	public byte[] getHexDumpBuffer ()
+	{
+		return null;
+	}
+
 	public String getHexDump ()
 	{
 		if (false)
@@ -39,6 +39,12 @@ public class SimpleText2 extends AbstractFile
 		return text.toString ();
 	}
 
+	@Override
+	public byte[] getHexDumpBuffer ()
+	{
+		return null;
+	}
+
 	public String getHexDump ()
 	{
 		StringBuilder text = new StringBuilder ();
@@ -188,6 +188,12 @@ public class StoredVariables extends AbstractFile
 		return false;
 	}
 
+	@Override
+	public byte[] getHexDumpBuffer ()
+	{
+		return null;
+	}
+
 	public String getHexDump ()
 	{
 		StringBuffer text = new StringBuffer ();
@@ -30,6 +30,12 @@ public class TextFile extends AbstractFile
     this.recordLength = recordLength;
   }
 
+  @Override
+  public byte[] getHexDumpBuffer ()
+  {
+    return buffers == null ? super.getHexDumpBuffer () : null;
+  }
+
   @Override
   public String getHexDump ()
   {
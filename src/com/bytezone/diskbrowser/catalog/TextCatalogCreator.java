@@ -9,8 +9,8 @@ import java.util.Enumeration;
 import javax.swing.JOptionPane;
 import javax.swing.tree.DefaultMutableTreeNode;
 
-import com.bytezone.diskbrowser.disk.DiskFactory;
-import com.bytezone.diskbrowser.disk.FormattedDisk;
+import com.bytezone.diskbrowser.gui.CatalogIndex;
+import com.bytezone.diskbrowser.gui.CatalogIndex.DiskRecord;
 import com.bytezone.diskbrowser.gui.TreeBuilder.FileNode;
 
 public class TextCatalogCreator extends AbstractCatalogCreator
@@ -26,6 +26,7 @@ public class TextCatalogCreator extends AbstractCatalogCreator
       return;
     }
     File f = ((FileNode) o).file;
+    final CatalogIndex catalogIndex = ((FileNode) o).getCatalogIndex ();
     final File f2 = new File (f.getAbsolutePath () + "/Catalog.txt");
     JOptionPane.showMessageDialog (null, "About to create file : " + f2.getAbsolutePath (),
                                    "Info", JOptionPane.INFORMATION_MESSAGE);
@@ -40,6 +41,7 @@ public class TextCatalogCreator extends AbstractCatalogCreator
         {
           out = new FileWriter (f2);
           printDescendants (node, out);
+          catalogIndex.save ();
         }
         catch (IOException e)
         {
@@ -60,6 +62,7 @@ public class TextCatalogCreator extends AbstractCatalogCreator
         }
       }
 
+      // disks that haven't changed since they were indexed are not opened again
       private void printDescendants (DefaultMutableTreeNode root, FileWriter out)
             throws IOException
       {
@@ -69,8 +72,9 @@ public class TextCatalogCreator extends AbstractCatalogCreator
           File f = ((FileNode) root.getUserObject ()).file;
           if (!f.isDirectory ())
           {
-            FormattedDisk fd = DiskFactory.createDisk (f.getAbsolutePath ());
-            out.write (fd.getCatalog ().getDataSource ().getText () + String.format ("%n"));
+            DiskRecord record = catalogIndex.update (f);
+            if (record != null && record.isRecognised ())
+              out.write (record.catalogText + String.format ("%n"));
           }
         }
 
@@ -49,6 +49,7 @@ public abstract class AbstractFormattedDisk implements FormattedDisk
 
   protected BitSet freeBlocks;
   protected BitSet usedBlocks; // still to be populated - currently using stillAvailable ()
+  private int[] blockOwner;     // file number + 1 of the file using each block, 0 if none
 
   public AbstractFormattedDisk (Disk disk)
   {
@@ -99,8 +100,8 @@ public abstract class AbstractFormattedDisk implements FormattedDisk
   {
     sectorTypes = new SectorType[disk.getTotalBlocks ()];
 
-    for (DiskAddress da : disk)
-      sectorTypes[da.getBlock ()] = disk.isSectorEmpty (da) ? emptySector : usedSector;
+    for (int block = 0; block < sectorTypes.length; block++)
+      sectorTypes[block] = disk.isSectorEmpty (block) ? emptySector : usedSector;
   }
 
   private void setGridLayout ()
@@ -291,6 +292,13 @@ public abstract class AbstractFormattedDisk implements FormattedDisk
     return new DefaultSector ("Data sector at " + address, disk, buffer);
   }
 
+  @Override
+  public ExtentList getFileExtents (int fileNo)
+  {
+    List<DiskAddress> sectors = getFileSectors (fileNo);
+    return sectors == null ? null : new ExtentList (sectors);
+  }
+
   /*
    * Override this with something useful
    */
@@ -306,6 +314,30 @@ public abstract class AbstractFormattedDisk implements FormattedDisk
     return "unknown";
   }
 
+  /*
+   * Subclasses call this as each file is read from the catalog, so that the file using
+   * a block can be found without searching every file. If more than one file claims
+   * the same block then the first one keeps it.
+   */
+  protected void setBlockOwner (int fileNo, ExtentList extents)
+  {
+    if (blockOwner == null)
+      blockOwner = new int[disk.getTotalBlocks ()];
+
+    for (int block : extents.getBlocks ())
+      if (block >= 0 && block < blockOwner.length && blockOwner[block] == 0)
+        blockOwner[block] = fileNo + 1;
+  }
+
+  // returns the position in fileEntries of the file using this block, or -1
+  protected int getBlockOwner (DiskAddress da)
+  {
+    int block = da.getBlock ();
+    if (blockOwner == null || block < 0 || block >= blockOwner.length)
+      return -1;
+    return blockOwner[block] - 1;
+  }
+
   @Override
   public int clearOrphans ()
   {
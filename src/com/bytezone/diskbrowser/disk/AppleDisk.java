@@ -4,9 +4,15 @@ import java.awt.AWTEventMulticaster;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.BufferedInputStream;
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
@@ -21,9 +27,10 @@ public class AppleDisk implements Disk
 {
   static final String newLine = String.format ("%n");
   static final int MAX_INTERLEAVE = 3;
+  private static final int MAX_HEAP_IMAGE = 0x100000;     // larger images are mapped
 
   public final File path;
-  private final byte[] diskBuffer;        // contains the disk contents in memory
+  private final ByteBuffer diskBuffer;    // read-only, and mapped if the image is large
 
   private final int tracks;               // usually 35 for floppy disks
   private int sectors;                    // 8 or 16
@@ -44,8 +51,15 @@ public class AppleDisk implements Disk
   // Position: 0 8 1 9 2 A 3 B 4 C 5 D 6 E 7 F    - Prodos (.PO disks)
   // Position: 0 7 E 6 D 5 C 4 B 3 A 2 9 1 8 F    - Dos    (.DO disks)
 
-  private boolean[] hasData;
+  // Emptiness of each 256 byte physical sector, filled in as sectors are first checked.
+  // This doesn't depend on the interleave or block size, so it is shared by all views.
+  private final byte[] sectorState;
+  private static final byte UNCHECKED = 0;
+  private static final byte EMPTY = 1;
+  private static final byte DATA = 2;
+
   private ActionListener actionListenerList;
+  private DiskAddress[] addresses;        // one shared instance per block, built on demand
   private List<DiskAddress> blockList;
 
   public AppleDisk (File path, int tracks, int sectors) throws FileFormatException
@@ -105,57 +119,129 @@ public class AppleDisk implements Disk
     this.tracks = tracks;
     this.sectors = sectors;
 
-    diskBuffer = new byte[tracks * sectors * sectorSize];
-    hasData = new boolean[blocks];
+    diskBuffer = mapFile (path, skip, tracks * sectors * sectorSize);
+    sectorState = new byte[diskBuffer.capacity () / 256];
+  }
+
+  /*
+   * Creates a disk from an image that is already in memory, such as one that has been
+   * decompressed from a .gz or .sdk file. The path is only used to identify the disk, the
+   * buffer is used as it is without being copied.
+   */
+  public AppleDisk (File path, byte[] buffer, int tracks, int sectors)
+        throws FileFormatException
+  {
+    this.blocks = tracks * sectors;
+    this.sectorSize = buffer.length / blocks;
+    this.trackSize = sectors * sectorSize;
+
+    if (sectorSize != 256 && sectorSize != 512)
+      throw new FileFormatException ("Invalid sector size : " + sectorSize);
+
+    this.path = path;
+    this.tracks = tracks;
+    this.sectors = sectors;
+
+    diskBuffer = ByteBuffer.wrap (buffer, 0, blocks * sectorSize).slice ().asReadOnlyBuffer ();
+    sectorState = new byte[diskBuffer.capacity () / 256];
+  }
+
+  /*
+   * Creates another view of a disk that has already been read, using a different number
+   * of sectors per track. The two disks share the same buffer, but each keeps its own
+   * interleave and sector size, so a disk can be tested for several formats without
+   * reading the file again.
+   */
+  public AppleDisk (AppleDisk disk, int sectors) throws FileFormatException
+  {
+    this.path = disk.path;
+    this.tracks = disk.tracks;
+    this.sectors = sectors;
+    this.blocks = tracks * sectors;
+    this.sectorSize = disk.diskBuffer.capacity () / blocks;
+    this.trackSize = sectors * sectorSize;
 
+    if (sectorSize != 256 && sectorSize != 512)
+      throw new FileFormatException ("Invalid sector size : " + sectorSize);
+
+    diskBuffer = disk.diskBuffer.duplicate ();
+    sectorState = disk.sectorState;
+  }
+
+  /*
+   * Maps a large hard disk image directly from the file rather than copying it onto the
+   * heap, so that it costs nothing until its sectors are actually read. Java can't unmap
+   * a file, and a mapped file stays open (and on Windows can't be deleted or renamed)
+   * until the buffer is garbage collected, so floppy sized images are copied onto the
+   * heap and the file is closed straight away. A file that is shorter than the image it
+   * describes (eg a truncated 2mg file) is also copied, and the remainder left empty.
+   * A file that can't be read (eg one that has just been deleted) is reported with a
+   * FileFormatException, the same as a file that isn't a disk.
+   */
+  private static ByteBuffer mapFile (File path, int skip, int length)
+  {
+    FileChannel channel = null;
     try
     {
-      BufferedInputStream file = new BufferedInputStream (new FileInputStream (path));
-      if (skip > 0)
-        file.skip (skip);
-      file.read (diskBuffer);
-      file.close ();
+      channel = new RandomAccessFile (path, "r").getChannel ();
+      if (length > MAX_HEAP_IMAGE && skip + length <= channel.size ())
+        return channel.map (MapMode.READ_ONLY, skip, length);
+
+      ByteBuffer buffer = ByteBuffer.allocate (length);
+      while (buffer.hasRemaining ())
+        if (channel.read (buffer, skip + buffer.position ()) <= 0)
+          break;
+      buffer.clear ();
+      return buffer.asReadOnlyBuffer ();
     }
     catch (IOException e)
     {
-      e.printStackTrace ();
-      System.exit (1);
+      throw new FileFormatException ("Unable to read " + path + " : " + e.getMessage ());
+    }
+    finally
+    {
+      close (channel);      // the mapping remains valid after the channel is closed
     }
-
-    checkSectorsForData ();
   }
 
   private byte[] getPrefix (File path)
   {
     byte[] buffer = new byte[64];
+    BufferedInputStream file = null;
     try
     {
-      BufferedInputStream file = new BufferedInputStream (new FileInputStream (path));
+      file = new BufferedInputStream (new FileInputStream (path));
       file.read (buffer);
-      file.close ();
     }
     catch (IOException e)
     {
-      e.printStackTrace ();
-      System.exit (1);
+      throw new FileFormatException ("Unable to read " + path + " : " + e.getMessage ());
+    }
+    finally
+    {
+      close (file);
     }
     return buffer;
   }
 
-  private void checkSectorsForData ()
+  // also used by DiskFactory
+  static void close (Closeable stream)
   {
-    blockList = null; // force blockList to be rebuilt with the correct number/size of blocks
-    for (DiskAddress da : this)
-    {
-      byte[] buffer = readSector (da);
-      hasData[da.getBlock ()] = false;
-      for (int i = 0; i < sectorSize; i++)
-        if (buffer[i] != 0)
-        {
-          hasData[da.getBlock ()] = true;
-          break;
-        }
-    }
+    if (stream != null)
+      try
+      {
+        stream.close ();
+      }
+      catch (IOException e)
+      {
+        e.printStackTrace ();
+      }
+  }
+
+  // a mapped image is read from the file as it is needed, rather than kept on the heap
+  public boolean isMapped ()
+  {
+    return diskBuffer.isDirect ();
   }
 
   /*
@@ -195,19 +281,44 @@ public class AppleDisk implements Disk
   @Override
   public boolean isSectorEmpty (DiskAddress da)
   {
-    return !hasData[da.getBlock ()];
+    return isSectorEmpty (da.getTrack (), da.getSector ());
   }
 
   @Override
   public boolean isSectorEmpty (int block)
   {
-    return !hasData[block];
+    return isSectorEmpty (block / sectors, block % sectors);
   }
 
   @Override
   public boolean isSectorEmpty (int track, int sector)
   {
-    return !hasData[getDiskAddress (track, sector).getBlock ()];
+    if (sectorSize == 256)
+      return isPhysicalSectorEmpty (getBufferOffset (track, sector, 0));
+
+    return isPhysicalSectorEmpty (getBufferOffset (track, sector, 0))
+        && isPhysicalSectorEmpty (getBufferOffset (track, sector, 1));
+  }
+
+  /*
+   * Checks the 256 bytes at diskOffset a long at a time, directly from the disk buffer.
+   * Each physical sector is only ever checked once.
+   */
+  private boolean isPhysicalSectorEmpty (int diskOffset)
+  {
+    int index = diskOffset / 256;
+    if (sectorState[index] == UNCHECKED)
+    {
+      byte state = EMPTY;
+      for (int ptr = diskOffset, max = diskOffset + 256; ptr < max; ptr += 8)
+        if (diskBuffer.getLong (ptr) != 0)
+        {
+          state = DATA;
+          break;
+        }
+      sectorState[index] = state;
+    }
+    return sectorState[index] == EMPTY;
   }
 
   @Override
@@ -238,6 +349,70 @@ public class AppleDisk implements Disk
     return buffer;
   }
 
+  @Override
+  public void readSector (DiskAddress da, byte[] buffer, int offset)
+  {
+    readBuffer (da, buffer, offset);
+  }
+
+  @Override
+  public ByteBuffer getSectorBuffer (DiskAddress da)
+  {
+    return getSectorsBuffer (da.getBlock (), 1);
+  }
+
+  @Override
+  public ByteBuffer getSectorBuffer (int track, int sector)
+  {
+    return getSectorsBuffer (track * sectors + sector, 1);
+  }
+
+  @Override
+  public ByteBuffer getSectorBuffer (int block)
+  {
+    return getSectorsBuffer (block, 1);
+  }
+
+  /*
+   * Returns a read-only view of a run of blocks. When the blocks are stored one after
+   * the other in the disk buffer (a single 256 byte sector, or a linear interleave) the
+   * view is a slice of the disk buffer itself, otherwise the blocks are copied into a
+   * new buffer in their logical order.
+   */
+  @Override
+  public ByteBuffer getSectorsBuffer (int block, int totalBlocks)
+  {
+    assert isValidAddress (block) && isValidAddress (block + totalBlocks - 1) : "Invalid block : "
+        + block;
+    int partsPerBlock = sectorSize / 256;
+    int diskOffset = getBufferOffset (block / sectors, block % sectors, 0);
+
+    boolean contiguous = true;
+    for (int i = 1, max = totalBlocks * partsPerBlock; i < max && contiguous; i++)
+    {
+      int nextBlock = block + i / partsPerBlock;
+      contiguous = getBufferOffset (nextBlock / sectors, nextBlock % sectors,
+                                    i % partsPerBlock) == diskOffset + i * 256;
+    }
+
+    ByteBuffer view;
+    if (contiguous)
+    {
+      view = diskBuffer.asReadOnlyBuffer ();
+      view.position (diskOffset);
+      view.limit (diskOffset + totalBlocks * sectorSize);
+      view = view.slice ();
+    }
+    else
+    {
+      byte[] buffer = new byte[totalBlocks * sectorSize];
+      for (int i = 0; i < totalBlocks; i++)
+        readBuffer (getDiskAddress (block + i), buffer, i * sectorSize);
+      view = ByteBuffer.wrap (buffer).asReadOnlyBuffer ();
+    }
+    return view.order (ByteOrder.LITTLE_ENDIAN);
+  }
+
   @Override
   public byte[] readSector (int track, int sector)
   {
@@ -262,7 +437,6 @@ public class AppleDisk implements Disk
   {
     assert (interleave >= 0 && interleave <= MAX_INTERLEAVE) : "Invalid interleave";
     this.interleave = interleave;
-    checkSectorsForData ();
     if (actionListenerList != null)
       notifyListeners ("Interleave changed");
   }
@@ -283,8 +457,8 @@ public class AppleDisk implements Disk
     sectors = trackSize / sectorSize;
     blocks = tracks * sectors;
     System.out.printf ("New blocks: %d%n", blocks);
-    hasData = new boolean[blocks];
-    checkSectorsForData ();
+    addresses = null; // force the addresses to be rebuilt with the correct number/size of blocks
+    blockList = null;
     if (actionListenerList != null)
       notifyListeners ("Sector size changed");
   }
@@ -297,7 +471,7 @@ public class AppleDisk implements Disk
       System.out.println ("Invalid block : " + block);
       return null;
     }
-    return new AppleDiskAddress (block, this);
+    return getAddress (block);
   }
 
   @Override
@@ -308,7 +482,8 @@ public class AppleDisk implements Disk
     for (int block : blocks)
     {
       assert (isValidAddress (block)) : "Invalid block : " + block;
-      addressList.add (new AppleDiskAddress (block, this));
+      addressList.add (isValidAddress (block) ? getAddress (block)
+          : new AppleDiskAddress (block, this));
     }
     return addressList;
   }
@@ -319,7 +494,23 @@ public class AppleDisk implements Disk
     // should this return null for invalid addresses?
     assert (isValidAddress (track, sector)) : "Invalid address : " + track + ", "
         + sector;
-    return new AppleDiskAddress (track, sector, this);
+    if (!isValidAddress (track, sector))
+      return new AppleDiskAddress (track, sector, this);
+    return getAddress (track * sectors + sector);
+  }
+
+  /*
+   * DiskAddress objects are immutable, so every request for the same block is given the
+   * same instance. This stops the catalog and file traversals creating a new object for
+   * every block they visit.
+   */
+  private DiskAddress getAddress (int block)
+  {
+    if (addresses == null)
+      addresses = new DiskAddress[blocks];
+    if (addresses[block] == null)
+      addresses[block] = new AppleDiskAddress (block, this);
+    return addresses[block];
   }
 
   @Override
@@ -362,25 +553,40 @@ public class AppleDisk implements Disk
     assert sectorSize == 256 || sectorSize == 512 : "Invalid sector size : " + sectorSize;
     assert interleave >= 0 && interleave <= MAX_INTERLEAVE : "Invalid interleave : "
         + interleave;
-    int diskOffset;
 
     if (sectorSize == 256)
-    {
-      diskOffset = da.getTrack () * trackSize
-          + interleaveSector[interleave][da.getSector ()] * sectorSize;
-      System.arraycopy (diskBuffer, diskOffset, buffer, bufferOffset, sectorSize);
-    }
+      copyBuffer (getBufferOffset (da.getTrack (), da.getSector (), 0), buffer,
+                  bufferOffset, sectorSize);
     else if (sectorSize == 512)
     {
-      diskOffset = da.getTrack () * trackSize
-          + interleaveSector[interleave][da.getSector () * 2] * 256;
-      System.arraycopy (diskBuffer, diskOffset, buffer, bufferOffset, 256);
-      diskOffset = da.getTrack () * trackSize
-          + interleaveSector[interleave][da.getSector () * 2 + 1] * 256;
-      System.arraycopy (diskBuffer, diskOffset, buffer, bufferOffset + 256, 256);
+      copyBuffer (getBufferOffset (da.getTrack (), da.getSector (), 0), buffer,
+                  bufferOffset, 256);
+      copyBuffer (getBufferOffset (da.getTrack (), da.getSector (), 1), buffer,
+                  bufferOffset + 256, 256);
     }
   }
 
+  // the disk may be read on several threads at once, so each read has its own position
+  private void copyBuffer (int diskOffset, byte[] buffer, int bufferOffset, int length)
+  {
+    ByteBuffer view = diskBuffer.duplicate ();
+    view.position (diskOffset);
+    view.get (buffer, bufferOffset, length);
+  }
+
+  /*
+   * Returns the position in the disk buffer of one of the 256 byte physical sectors that
+   * make up a logical sector. A 512 byte sector has two parts, which need not be next to
+   * each other.
+   */
+  private int getBufferOffset (int track, int sector, int part)
+  {
+    int[] sectorMap = interleaveSector[interleave];
+    if (sectorSize == 256)
+      return track * trackSize + sectorMap[sector] * 256;
+    return track * trackSize + sectorMap[sector * 2 + part] * 256;
+  }
+
   @Override
   public void addActionListener (ActionListener actionListener)
   {
@@ -428,7 +634,7 @@ public class AppleDisk implements Disk
     {
       blockList = new ArrayList<DiskAddress> (blocks);
       for (int block = 0; block < blocks; block++)
-        blockList.add (new AppleDiskAddress (block, this));
+        blockList.add (getAddress (block));
     }
     return blockList.iterator ();
   }
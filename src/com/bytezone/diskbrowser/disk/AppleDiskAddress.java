@@ -62,4 +62,10 @@ public class AppleDiskAddress implements DiskAddress
       return false;
     return this.block == ((AppleDiskAddress) other).block;
   }
+
+  @Override
+  public int hashCode ()
+  {
+    return block;
+  }
 }
\ No newline at end of file
@@ -2,6 +2,7 @@ package com.bytezone.diskbrowser.disk;
 
 import java.awt.event.ActionListener;
 import java.io.File;
+import java.nio.ByteBuffer;
 import java.util.List;
 
 public interface Disk extends Iterable<DiskAddress>
@@ -38,6 +39,17 @@ public interface Disk extends Iterable<DiskAddress>
 
   public byte[] readSectors (List<DiskAddress> daList);
 
+  public void readSector (DiskAddress da, byte[] buffer, int offset);
+
+  // read-only, little-endian views of the disk contents, copied only when interleaved
+  public ByteBuffer getSectorBuffer (int block);
+
+  public ByteBuffer getSectorBuffer (int track, int sector);
+
+  public ByteBuffer getSectorBuffer (DiskAddress da);
+
+  public ByteBuffer getSectorsBuffer (int block, int totalBlocks);
+
   public int writeSector (DiskAddress da, byte[] buffer);
 
   public boolean isSectorEmpty (DiskAddress da);
@@ -1,11 +1,17 @@
 package com.bytezone.diskbrowser.disk;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.zip.GZIPInputStream;
 
 import com.bytezone.diskbrowser.FileFormatException;
+import com.bytezone.diskbrowser.HexFormatter;
 import com.bytezone.diskbrowser.NuFX;
 import com.bytezone.diskbrowser.cpm.CPMDisk;
 import com.bytezone.diskbrowser.dos.DosDisk;
@@ -39,18 +45,16 @@ public class DiskFactory
     String suffix = path.substring (path.lastIndexOf (".") + 1).toLowerCase ();
     Boolean compressed = false;
     Path p = Paths.get (path);
+    byte[] buffer = null;         // the uncompressed image of a .sdk or .gz file
 
     if (suffix.equalsIgnoreCase ("sdk"))
     {
       try
       {
         NuFX nuFX = new NuFX (p);
-        File tmp = File.createTempFile ("sdk", null);
-        FileOutputStream fos = new FileOutputStream (tmp);
-        fos.write (nuFX.getBuffer ());
-        fos.close ();
-        tmp.deleteOnExit ();
-        file = tmp;
+        buffer = nuFX.getBuffer ();
+        if (buffer == null)
+          return null;
         suffix = "dsk";
         compressed = true;
       }
@@ -68,19 +72,7 @@ public class DiskFactory
     {
       try
       {
-        InputStream in = new GZIPInputStream (new FileInputStream (path));
-        File tmp = File.createTempFile ("gzip", null);
-        FileOutputStream fos = new FileOutputStream (tmp);
-
-        int bytesRead;
-        byte[] buffer = new byte[1024];
-        while ((bytesRead = in.read (buffer)) > 0)
-          fos.write (buffer, 0, bytesRead);
-
-        fos.close ();
-        in.close ();
-        tmp.deleteOnExit ();
-        file = tmp;
+        buffer = decompress (file);
         suffix = "dsk";
         compressed = true;
       }
@@ -95,15 +87,17 @@ public class DiskFactory
     FormattedDisk disk2 = null;
 
     if (suffix.equals ("hdv"))
-      return checkHardDisk (file);
+      return checkHardDisk (file, null);
 
     if (suffix.equals ("2mg"))
       return check2mgDisk (file);
 
-    //    if (((suffix.equals ("po") || suffix.equals ("dsk")) && file.length () > 116480))
-    if (((suffix.equals ("po") || suffix.equals ("dsk")) && file.length () > 143360))
+    long length = buffer == null ? file.length () : buffer.length;
+
+    //    if (((suffix.equals ("po") || suffix.equals ("dsk")) && length > 116480))
+    if (((suffix.equals ("po") || suffix.equals ("dsk")) && length > 143360))
     {
-      disk = checkHardDisk (file);
+      disk = checkHardDisk (file, buffer);
       if (disk != null)
       {
         if (compressed)
@@ -112,47 +106,46 @@ public class DiskFactory
       }
     }
 
-    long length = file.length ();
     if (length != 143360 && length != 116480)
     {
-      System.out.println ("invalid file length : " + file.length ());
+      System.out.println ("invalid file length : " + length);
       return null;
     }
 
-    int sectors = file.length () == 143360 ? 16 : 13;
+    int sectors = length == 143360 ? 16 : 13;
+    DiskProbe probe = new DiskProbe (createAppleDisk (file, buffer, 35, sectors));
     if (true)
     {
-      AppleDisk appleDisk = new AppleDisk (file, 35, sectors);
-      long checksum = appleDisk.getBootChecksum ();
+      long checksum = probe.disk.getBootChecksum ();
 
       if (checksum == 3176296590L || checksum == 108825457L || checksum == 1439356606L
             || checksum == 1550012074L || checksum == 1614602459L || checksum == 940889336L
             || checksum == 990032697 || checksum == 2936955085L || checksum == 1348415927L
             || checksum == 3340889101L || checksum == 18315788L || checksum == 993895235L)
       {
-        disk = checkDos (file);
-        disk2 = checkProdos (file);
+        disk = probe.checkDos ();
+        disk2 = probe.checkProdos ();
         if (disk2 != null && disk != null)
           disk = new DualDosDisk (disk, disk2);
       }
 
       else if (checksum == 1737448647L || checksum == 170399908L)
       {
-        disk = checkProdos (file);
-        disk2 = checkDos (file);
+        disk = probe.checkProdos ();
+        disk2 = probe.checkDos ();
         if (disk2 != null && disk != null)
           disk = new DualDosDisk (disk, disk2);
       }
 
       else if (checksum == 2803644711L || checksum == 3317783349L || checksum == 1728863694L
             || checksum == 198094178L)
-        disk = checkPascalDisk (file);
+        disk = probe.checkPascalDisk ();
 
       else if (checksum == 3028642627L || checksum == 2070151659L)
-        disk = checkInfocomDisk (file);
+        disk = probe.checkInfocomDisk ();
 
       else if (checksum == 1212926910L || checksum == 1365043894L)
-        disk = checkCPMDisk (file);
+        disk = probe.checkCPMDisk ();
 
       if (disk != null)
       {
@@ -168,37 +161,37 @@ public class DiskFactory
 
     if (suffix.equals ("dsk") || suffix.equals ("do") || suffix.equals ("d13"))
     {
-      disk = checkDos (file);
+      disk = probe.checkDos ();
       if (disk == null)
-        disk = checkProdos (file);
+        disk = probe.checkProdos ();
       else if (sectors == 16)
       {
         if (debug)
           System.out.println ("Checking DualDos disk");
-        disk2 = checkProdos (file);
+        disk2 = probe.checkProdos ();
         if (disk2 != null)
           disk = new DualDosDisk (disk, disk2);
       }
     }
     else if (suffix.equals ("po"))
     {
-      disk = checkProdos (file);
+      disk = probe.checkProdos ();
       if (disk == null)
-        disk = checkDos (file);
+        disk = probe.checkDos ();
     }
 
     if (disk == null)
-      disk = checkPascalDisk (file);
+      disk = probe.checkPascalDisk ();
 
     if (disk == null)
     {
-      disk2 = checkInfocomDisk (file);
+      disk2 = probe.checkInfocomDisk ();
       if (disk2 != null)
         disk = disk2;
     }
 
     if (disk == null)
-      disk = new DataDisk (new AppleDisk (file, 35, 16));
+      disk = new DataDisk (new AppleDisk (probe.disk, 16));
 
     if (debug)
       System.out.println ("  Factory creating disk : "
@@ -210,14 +203,113 @@ public class DiskFactory
     return disk;
   }
 
-  private static DosDisk checkDos (File file)
+  /*
+   * Returns the disk image held in a file's contents. A .sdk or .gz file is uncompressed,
+   * and the header is removed from a .2mg file. Any other file is already an image.
+   * Returns null if the file doesn't contain a disk image.
+   */
+  public static byte[] getImage (File file, byte[] contents) throws IOException
+  {
+    String name = file.getName ();
+    String suffix = name.substring (name.lastIndexOf (".") + 1).toLowerCase ();
+
+    if (suffix.equals ("sdk"))
+      try
+      {
+        return new NuFX (contents).getBuffer ();
+      }
+      catch (FileFormatException e)
+      {
+        return null;
+      }
+
+    if (suffix.equals ("gz"))
+    {
+      int length = 0;
+      if (contents.length >= 4)                   // ISIZE is little-endian
+        length = ByteBuffer.wrap (contents, contents.length - 4, 4)
+            .order (ByteOrder.LITTLE_ENDIAN).getInt ();
+      return decompress (new ByteArrayInputStream (contents), length);
+    }
+
+    if (suffix.equals ("2mg"))
+    {
+      if (contents.length < 64)
+        return null;
+      int skip = HexFormatter.intValue (contents[8], contents[9]);
+      int blocks = HexFormatter.intValue (contents[20], contents[21]);
+      if (skip >= contents.length)
+        return null;
+      return Arrays.copyOfRange (contents, skip,
+                                 Math.min (contents.length, skip + blocks * 512));
+    }
+
+    return contents;
+  }
+
+  /*
+   * Reads the whole of a gzip file into memory. The uncompressed length is taken from the
+   * end of the file so that the buffer doesn't need to grow, but is only a hint in case
+   * the file has been damaged.
+   */
+  private static byte[] decompress (File file) throws IOException
+  {
+    int length = 143360;
+    RandomAccessFile raf = null;
+    try
+    {
+      raf = new RandomAccessFile (file, "r");
+      if (raf.length () >= 4)
+      {
+        raf.seek (raf.length () - 4);
+        length = Integer.reverseBytes (raf.readInt ());   // ISIZE is little-endian
+      }
+    }
+    finally
+    {
+      AppleDisk.close (raf);
+    }
+
+    return decompress (new FileInputStream (file), length);
+  }
+
+  // the stream is always closed, even if it turns out to be damaged
+  private static byte[] decompress (InputStream compressed, int length) throws IOException
+  {
+    ByteArrayOutputStream out =
+        new ByteArrayOutputStream (length > 0 && length <= 0x4000000 ? length : 143360);
+    InputStream in = null;
+    try
+    {
+      in = new GZIPInputStream (compressed, 8192);
+
+      int bytesRead;
+      byte[] buffer = new byte[8192];
+      while ((bytesRead = in.read (buffer)) > 0)
+        out.write (buffer, 0, bytesRead);
+    }
+    finally
+    {
+      AppleDisk.close (in == null ? compressed : in);
+    }
+
+    return out.toByteArray ();
+  }
+
+  private static AppleDisk createAppleDisk (File file, byte[] buffer, int tracks, int sectors)
+  {
+    if (buffer == null)
+      return new AppleDisk (file, tracks, sectors);
+    return new AppleDisk (file, buffer, tracks, sectors);
+  }
+
+  private static DosDisk checkDos (AppleDisk appleDisk)
   {
     if (debug)
       System.out.println ("Checking DOS disk");
     try
     {
-      int sectors = file.length () == 143360 ? 16 : 13;
-      AppleDisk disk = new AppleDisk (file, 35, sectors);
+      AppleDisk disk = new AppleDisk (appleDisk, appleDisk.getSectorsPerTrack ());
       if (DosDisk.isCorrectFormat (disk))
         return new DosDisk (disk);
     }
@@ -229,13 +321,13 @@ public class DiskFactory
     return null;
   }
 
-  private static ProdosDisk checkProdos (File file)
+  private static ProdosDisk checkProdos (AppleDisk appleDisk)
   {
     if (debug)
       System.out.println ("Checking Prodos disk");
     try
     {
-      AppleDisk disk = new AppleDisk (file, 35, 8);
+      AppleDisk disk = new AppleDisk (appleDisk, 8);
       if (ProdosDisk.isCorrectFormat (disk))
         return new ProdosDisk (disk);
     }
@@ -247,39 +339,40 @@ public class DiskFactory
     return null;
   }
 
-  private static ProdosDisk checkHardDisk (File file)
+  private static ProdosDisk checkHardDisk (File file, byte[] buffer)
   {
+    long length = buffer == null ? file.length () : buffer.length;
     if (debug)
     {
       System.out.println ("\nChecking Prodos hard disk");
-      System.out.printf ("Total blocks : %f%n", (float) file.length () / 512);
-      System.out.printf ("Total tracks : %f%n", (float) file.length () / 4096);
-      System.out.printf ("File length  : %d%n", file.length ());
+      System.out.printf ("Total blocks : %f%n", (float) length / 512);
+      System.out.printf ("Total tracks : %f%n", (float) length / 4096);
+      System.out.printf ("File length  : %d%n", length);
       System.out.println ();
     }
 
     // assumes a sector is 512 bytes
-    if ((file.length () % 512) != 0)
+    if ((length % 512) != 0)
     {
       if (debug)
-        System.out.printf ("file length not divisible by 512 : %d%n%", file.length ());
+        System.out.printf ("file length not divisible by 512 : %d%n%", length);
       return null;
     }
 
     // assumes a track is 4096 bytes
-    //    if ((file.length () % 4096) != 0)
+    //    if ((length % 4096) != 0)
     //    {
     //      if (debug)
     //      {
-    //        System.out.printf ("file length not divisible by 4096 : %d%n%n", file.length ());
-    //        int usableLength = (int) (file.length () / 4096);
+    //        System.out.printf ("file length not divisible by 4096 : %d%n%n", length);
+    //        int usableLength = (int) (length / 4096);
     //      }
     //      return null;
     //    }
 
     try
     {
-      AppleDisk disk = new AppleDisk (file, (int) file.length () / 4096, 8);
+      AppleDisk disk = createAppleDisk (file, buffer, (int) length / 4096, 8);
       if (ProdosDisk.isCorrectFormat (disk))
       {
         if (debug)
@@ -320,11 +413,11 @@ public class DiskFactory
     return null;
   }
 
-  private static FormattedDisk checkPascalDisk (File file)
+  private static FormattedDisk checkPascalDisk (AppleDisk appleDisk)
   {
     if (debug)
       System.out.println ("Checking Pascal disk");
-    AppleDisk disk = new AppleDisk (file, 35, 8);
+    AppleDisk disk = new AppleDisk (appleDisk, 8);
     if (!PascalDisk.isCorrectFormat (disk, debug))
       return null;
     if (debug)
@@ -336,11 +429,11 @@ public class DiskFactory
     return new PascalDisk (disk);
   }
 
-  private static InfocomDisk checkInfocomDisk (File file)
+  private static InfocomDisk checkInfocomDisk (AppleDisk appleDisk)
   {
     if (debug)
       System.out.println ("Checking Infocom disk");
-    AppleDisk disk = new AppleDisk (file, 35, 16);
+    AppleDisk disk = new AppleDisk (appleDisk, 16);
     if (InfocomDisk.isCorrectFormat (disk))
       return new InfocomDisk (disk);
     if (debug)
@@ -348,15 +441,67 @@ public class DiskFactory
     return null;
   }
 
-  private static CPMDisk checkCPMDisk (File file)
+  private static CPMDisk checkCPMDisk (AppleDisk appleDisk)
   {
     if (debug)
       System.out.println ("Checking CPM disk");
-    AppleDisk disk = new AppleDisk (file, 35, 16);
+    AppleDisk disk = new AppleDisk (appleDisk, 16);
     if (CPMDisk.isCorrectFormat (disk))
       return new CPMDisk (disk);
     if (debug)
       System.out.println ("Not a CPM disk");
     return null;
   }
+
+  /*
+   * Holds a disk that has been read once, and the results of testing it for each of the
+   * floppy disk formats. Every test is given its own view of the shared disk buffer, and
+   * each format is only tested once, even when both the boot sector checksum and the
+   * file suffix suggest it.
+   */
+  private static class DiskProbe
+  {
+    final AppleDisk disk;
+    private final Map<String, FormattedDisk> results = new HashMap<String, FormattedDisk> ();
+
+    DiskProbe (AppleDisk disk)
+    {
+      this.disk = disk;
+    }
+
+    FormattedDisk checkDos ()
+    {
+      if (!results.containsKey ("dos"))
+        results.put ("dos", DiskFactory.checkDos (disk));
+      return results.get ("dos");
+    }
+
+    FormattedDisk checkProdos ()
+    {
+      if (!results.containsKey ("prodos"))
+        results.put ("prodos", DiskFactory.checkProdos (disk));
+      return results.get ("prodos");
+    }
+
+    FormattedDisk checkPascalDisk ()
+    {
+      if (!results.containsKey ("pascal"))
+        results.put ("pascal", DiskFactory.checkPascalDisk (disk));
+      return results.get ("pascal");
+    }
+
+    FormattedDisk checkInfocomDisk ()
+    {
+      if (!results.containsKey ("infocom"))
+        results.put ("infocom", DiskFactory.checkInfocomDisk (disk));
+      return results.get ("infocom");
+    }
+
+    FormattedDisk checkCPMDisk ()
+    {
+      if (!results.containsKey ("cpm"))
+        results.put ("cpm", DiskFactory.checkCPMDisk (disk));
+      return results.get ("cpm");
+    }
+  }
 }
\ No newline at end of file
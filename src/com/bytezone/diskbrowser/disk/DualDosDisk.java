@@ -62,6 +62,12 @@ public class DualDosDisk implements FormattedDisk, FileSelectionListener
     return disks[currentDisk].getFileSectors (fileNo);
   }
 
+  @Override
+  public ExtentList getFileExtents (int fileNo)
+  {
+    return disks[currentDisk].getFileExtents (fileNo);
+  }
+
   @Override
   public List<AppleFileSource> getCatalogList ()
   {
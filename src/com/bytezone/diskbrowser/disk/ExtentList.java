@@ -0,0 +1,173 @@
+package com.bytezone.diskbrowser.disk;
+
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * A compact, read-only list of the blocks used by a file. The blocks are stored as runs
+ * of consecutive block numbers (extents) in file order, so a contiguous file of any size
+ * needs only a single entry. Gaps in a file (null addresses in a DOS random access text
+ * file) are stored as block -1.
+ * A second copy of the extents is sorted and merged, so that testing whether a block
+ * belongs to the file is a binary search rather than a scan of the whole list.
+ */
+public class ExtentList
+{
+  private static final int GAP = -1;
+
+  private final int[] extentStart;        // first block of each extent, in file order
+  private final int[] extentOffset;       // position in the file of each extent's first block
+  private final int totalBlocks;
+
+  private final int[] sortedStart;        // merged extents, in block order
+  private final int[] sortedEnd;          // block AFTER the last block of the extent
+
+  public ExtentList (List<DiskAddress> sectors)
+  {
+    int[] blocks = new int[sectors.size ()];
+    int ptr = 0;
+    for (DiskAddress da : sectors)
+      blocks[ptr++] = da == null ? GAP : da.getBlock ();
+    totalBlocks = blocks.length;
+
+    // count the extents
+    int totalExtents = 0;
+    for (int i = 0; i < totalBlocks; i++)
+      if (i == 0 || !follows (blocks[i - 1], blocks[i]))
+        totalExtents++;
+
+    extentStart = new int[totalExtents];
+    extentOffset = new int[totalExtents];
+    int extent = -1;
+    for (int i = 0; i < totalBlocks; i++)
+      if (i == 0 || !follows (blocks[i - 1], blocks[i]))
+      {
+        extent++;
+        extentStart[extent] = blocks[i];
+        extentOffset[extent] = i;
+      }
+
+    // sort the real extents by their first block, and merge any that touch or overlap
+    long[] ranges = new long[totalExtents];
+    int totalRanges = 0;
+    for (int i = 0; i < totalExtents; i++)
+      if (extentStart[i] != GAP)
+        ranges[totalRanges++] =
+            ((long) extentStart[i] << 32) | (extentStart[i] + getExtentLength (i));
+    Arrays.sort (ranges, 0, totalRanges);
+
+    int[] starts = new int[totalRanges];
+    int[] ends = new int[totalRanges];
+    int merged = 0;
+    for (int i = 0; i < totalRanges; i++)
+    {
+      int start = (int) (ranges[i] >>> 32);
+      int end = (int) ranges[i];
+      if (merged > 0 && start <= ends[merged - 1])
+      {
+        if (end > ends[merged - 1])
+          ends[merged - 1] = end;
+      }
+      else
+      {
+        starts[merged] = start;
+        ends[merged] = end;
+        merged++;
+      }
+    }
+    sortedStart = Arrays.copyOf (starts, merged);
+    sortedEnd = Arrays.copyOf (ends, merged);
+  }
+
+  // true if block continues the extent that ends with previousBlock
+  private static boolean follows (int previousBlock, int block)
+  {
+    if (previousBlock == GAP)
+      return block == GAP;
+    return block != GAP && block == previousBlock + 1;
+  }
+
+  private int getExtentLength (int extent)
+  {
+    int nextOffset = extent == extentOffset.length - 1 ? totalBlocks : extentOffset[extent + 1];
+    return nextOffset - extentOffset[extent];
+  }
+
+  public boolean contains (DiskAddress da)
+  {
+    return da != null && contains (da.getBlock ());
+  }
+
+  public boolean contains (int block)
+  {
+    int lo = 0;
+    int hi = sortedStart.length - 1;
+    while (lo <= hi)
+    {
+      int mid = (lo + hi) >>> 1;
+      if (block < sortedStart[mid])
+        hi = mid - 1;
+      else if (block >= sortedEnd[mid])
+        lo = mid + 1;
+      else
+        return true;
+    }
+    return false;
+  }
+
+  // block number at this position in the file, or -1 for a gap
+  public int getBlock (int index)
+  {
+    if (index < 0 || index >= totalBlocks)
+      throw new IndexOutOfBoundsException ("Index : " + index + ", Size : " + totalBlocks);
+
+    int extent = Arrays.binarySearch (extentOffset, index);
+    if (extent < 0)
+      extent = -extent - 2;           // the extent that started before this index
+    if (extentStart[extent] == GAP)
+      return GAP;
+    return extentStart[extent] + index - extentOffset[extent];
+  }
+
+  public int[] getBlocks ()
+  {
+    int[] blocks = new int[totalBlocks];
+    for (int extent = 0; extent < extentStart.length; extent++)
+    {
+      int start = extentStart[extent];
+      for (int i = 0, max = getExtentLength (extent); i < max; i++)
+        blocks[extentOffset[extent] + i] = start == GAP ? GAP : start + i;
+    }
+    return blocks;
+  }
+
+  public int size ()
+  {
+    return totalBlocks;
+  }
+
+  public int getTotalExtents ()
+  {
+    return extentStart.length;
+  }
+
+  @Override
+  public String toString ()
+  {
+    StringBuilder text = new StringBuilder ();
+    for (int extent = 0; extent < extentStart.length; extent++)
+    {
+      int start = extentStart[extent];
+      int length = getExtentLength (extent);
+      if (start == GAP)
+        text.append (String.format ("gap x %d;", length));
+      else if (length == 1)
+        text.append (start + ";");
+      else
+        text.append (start + "-" + (start + length - 1) + ";");
+    }
+    if (text.length () > 0)
+      text.deleteCharAt (text.length () - 1);
+    return text.toString ();
+  }
+}
@@ -18,6 +18,8 @@ public interface FormattedDisk
   public List<DiskAddress> getFileSectors (int fileNo);
 
   // Methods implemented by AbstractFormattedDisk
+  public ExtentList getFileExtents (int fileNo);
+
   public JTree getCatalogTree (); // each node is an AppleFileSource
 
   public List<AppleFileSource> getCatalogList ();
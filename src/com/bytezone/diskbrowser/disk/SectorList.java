@@ -15,6 +15,14 @@ public class SectorList extends AbstractFile
 
     this.sectors = sectors;
     this.formattedDisk = formattedDisk;
+  }
+
+  // the sectors are only copied when they are needed, as a large selection can be the
+  // whole disk and its hex dump is read from the disk itself
+  private void readSectors ()
+  {
+    if (buffer != null)
+      return;
 
     Disk disk = formattedDisk.getDisk ();
     int ptr = 0;
@@ -22,12 +30,42 @@ public class SectorList extends AbstractFile
 
     for (DiskAddress da : sectors)
     {
-      byte[] tempBuffer = disk.readSector (da);
-      System.arraycopy (tempBuffer, 0, buffer, ptr, disk.getBlockSize ());
+      disk.readSector (da, buffer, ptr);
       ptr += disk.getBlockSize ();
     }
   }
 
+  public List<DiskAddress> getSectors ()
+  {
+    return sectors;
+  }
+
+  public FormattedDisk getFormattedDisk ()
+  {
+    return formattedDisk;
+  }
+
+  @Override
+  public String getHexDump ()
+  {
+    readSectors ();
+    return super.getHexDump ();
+  }
+
+  @Override
+  public String getAssembler ()
+  {
+    readSectors ();
+    return super.getAssembler ();
+  }
+
+  @Override
+  public byte[] getHexDumpBuffer ()
+  {
+    readSectors ();
+    return buffer;
+  }
+
   @Override
   public String getText ()
   {
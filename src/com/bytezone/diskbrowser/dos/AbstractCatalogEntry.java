@@ -1,5 +1,6 @@
 package com.bytezone.diskbrowser.dos;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -7,11 +8,12 @@ import com.bytezone.diskbrowser.HexFormatter;
 import com.bytezone.diskbrowser.applefile.*;
 import com.bytezone.diskbrowser.disk.Disk;
 import com.bytezone.diskbrowser.disk.DiskAddress;
+import com.bytezone.diskbrowser.disk.ExtentList;
 import com.bytezone.diskbrowser.disk.FormattedDisk;
 import com.bytezone.diskbrowser.dos.DosDisk.FileType;
 import com.bytezone.diskbrowser.gui.DataSource;
 
-abstract class AbstractCatalogEntry implements AppleFileSource
+abstract class AbstractCatalogEntry implements AppleFileSource, FileDetails
 {
   Disk disk;
   DosDisk dosDisk;
@@ -26,6 +28,7 @@ abstract class AbstractCatalogEntry implements AppleFileSource
   protected DiskAddress catalogSectorDA;
   protected final List<DiskAddress> dataSectors = new ArrayList<DiskAddress> ();
   protected final List<DiskAddress> tsSectors = new ArrayList<DiskAddress> ();
+  private ExtentList extents;     // tsSectors and dataSectors, built when first needed
 
   public AbstractCatalogEntry (DosDisk dosDisk, DiskAddress catalogSector, byte[] entryBuffer)
   {
@@ -117,10 +120,10 @@ abstract class AbstractCatalogEntry implements AppleFileSource
 
   // maybe this should be in the FormattedDisk
   // maybe DiskAddress should have a 'valid' flag
-  protected DiskAddress getValidAddress (byte[] buffer, int offset)
+  protected DiskAddress getValidAddress (ByteBuffer buffer, int offset)
   {
-    if (disk.isValidAddress (buffer[offset], buffer[offset + 1]))
-      return disk.getDiskAddress (buffer[offset], buffer[offset + 1]);
+    if (disk.isValidAddress (buffer.get (offset), buffer.get (offset + 1)))
+      return disk.getDiskAddress (buffer.get (offset), buffer.get (offset + 1));
     return null;
   }
 
@@ -203,6 +206,9 @@ abstract class AbstractCatalogEntry implements AppleFileSource
               appleFile = new MerlinSource (name, exactBuffer);
             else
               appleFile = new AssemblerProgram (name, exactBuffer, loadAddress);
+
+            if (appleFile instanceof AssemblerProgram)
+              ((AssemblerProgram) appleFile).setTraceCode (true);
           }
           break;
         case SS: // what is this?
@@ -236,14 +242,19 @@ abstract class AbstractCatalogEntry implements AppleFileSource
 
   boolean contains (DiskAddress da)
   {
-    for (DiskAddress sector : tsSectors)
-      if (sector.compareTo (da) == 0)
-        return true;
-    for (DiskAddress sector : dataSectors)
-      // random access files may have gaps, and thus null sectors
-      if (sector != null && sector.compareTo (da) == 0)
-        return true;
-    return false;
+    return getExtents ().contains (da);
+  }
+
+  // random access files may have gaps, and thus null sectors
+  ExtentList getExtents ()
+  {
+    if (extents == null)
+    {
+      List<DiskAddress> sectors = new ArrayList<DiskAddress> (tsSectors);
+      sectors.addAll (dataSectors);
+      extents = new ExtentList (sectors);
+    }
+    return extents;
   }
 
   @Override
@@ -269,6 +280,32 @@ abstract class AbstractCatalogEntry implements AppleFileSource
     return sectors;
   }
 
+  @Override
+  public String getFileTypeText ()
+  {
+    return getFileType ();
+  }
+
+  @Override
+  public int getAuxType ()
+  {
+    return 0;
+  }
+
+  // DOS only records the length inside the file, so this is the sectors that it fills
+  // unless the entry has read it
+  @Override
+  public int getFileLength ()
+  {
+    return dataSectors.size () * 256;
+  }
+
+  @Override
+  public int getBlocksUsed ()
+  {
+    return reportedSize;
+  }
+
   @Override
   public String toString ()
   {
@@ -1,5 +1,7 @@
 package com.bytezone.diskbrowser.dos;
 
+import java.nio.ByteBuffer;
+
 import com.bytezone.diskbrowser.HexFormatter;
 import com.bytezone.diskbrowser.disk.DiskAddress;
 import com.bytezone.diskbrowser.dos.DosDisk.FileType;
@@ -29,13 +31,13 @@ class CatalogEntry extends AbstractCatalogEntry
           System.out.println (" from " + name);
         }
         tsSectors.add (da);
-        byte[] sectorBuffer = disk.readSector (da);
+        ByteBuffer sectorBuffer = disk.getSectorBuffer (da);
 
         int startPtr = 12;
         // the tsList *should* start at 0xC0, but some disks start in the unused bytes
         if (false)
           for (int i = 7; i < startPtr; i++)
-            if (sectorBuffer[i] != 0)
+            if (sectorBuffer.get (i) != 0)
             {
               startPtr = i;
               break;
@@ -48,7 +50,7 @@ class CatalogEntry extends AbstractCatalogEntry
           {
             System.out.print ("T/S list in sector " + i);
             System.out.printf (" contains an invalid address : %02X, %02X (file %s)%n",
-                               sectorBuffer[i], sectorBuffer[i + 1], name.trim ());
+                               sectorBuffer.get (i), sectorBuffer.get (i + 1), name.trim ());
             break loop;
           }
           if (da.getBlock () == 0)
@@ -75,7 +77,8 @@ class CatalogEntry extends AbstractCatalogEntry
         if (da == null)
         {
           System.out.print ("Next T/S list in sector " + da);
-          System.out.printf (" is invalid : %02X, %02X%n", sectorBuffer[1], sectorBuffer[2]);
+          System.out.printf (" is invalid : %02X, %02X%n", sectorBuffer.get (1),
+                             sectorBuffer.get (2));
           break;
         }
       }
@@ -100,22 +103,30 @@ class CatalogEntry extends AbstractCatalogEntry
     // get the file length
     if (dataSectors.size () > 0 && fileType != FileType.Text)
     {
-      byte[] buffer = disk.readSector (dataSectors.get (0));
+      ByteBuffer buffer = disk.getSectorBuffer (dataSectors.get (0));
       switch (fileType)
       {
         case IntegerBasic:
           //          length = HexFormatter.intValue (buffer[0], buffer[1]);
           //          break;
         case ApplesoftBasic:
-          length = HexFormatter.intValue (buffer[0], buffer[1]);
+          length = HexFormatter.intValue (buffer.get (0), buffer.get (1));
           break;
         default:
-          address = HexFormatter.intValue (buffer[0], buffer[1]);
-          length = HexFormatter.intValue (buffer[2], buffer[3]);
+          address = HexFormatter.intValue (buffer.get (0), buffer.get (1));
+          length = HexFormatter.intValue (buffer.get (2), buffer.get (3));
       }
     }
   }
 
+  // text files don't record their length
+  @Override
+  public int getFileLength ()
+  {
+    return fileType == FileType.Text || dataSectors.size () == 0 ? super.getFileLength ()
+        : length;
+  }
+
   public String getDetails ()
   {
     int actualSize = dataSectors.size () + tsSectors.size () - textFileGaps;
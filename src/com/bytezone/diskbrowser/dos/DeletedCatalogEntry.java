@@ -1,5 +1,7 @@
 package com.bytezone.diskbrowser.dos;
 
+import java.nio.ByteBuffer;
+
 import com.bytezone.diskbrowser.applefile.DefaultAppleFile;
 import com.bytezone.diskbrowser.disk.DiskAddress;
 import com.bytezone.diskbrowser.gui.DataSource;
@@ -42,7 +44,7 @@ class DeletedCatalogEntry extends AbstractCatalogEntry
       tsSectors.add (da);
       totalBlocks++;
 
-      byte[] sectorBuffer = disk.readSector (da);
+      ByteBuffer sectorBuffer = disk.getSectorBuffer (da);
       for (int i = 12, max = disk.getBlockSize (); i < max; i += 2)
       {
         da = getValidAddress (sectorBuffer, i);
@@ -68,7 +70,7 @@ class DeletedCatalogEntry extends AbstractCatalogEntry
       if (da == null)
       {
         System.out.printf ("Next T/S list in sector %s is invalid : %02X, %02X%n", da,
-              sectorBuffer[1], sectorBuffer[2]);
+              sectorBuffer.get (1), sectorBuffer.get (2));
         break;
       }
     }
@@ -1,6 +1,7 @@
 package com.bytezone.diskbrowser.dos;
 
 import java.awt.Color;
+import java.nio.ByteBuffer;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
@@ -80,26 +81,28 @@ public class DosDisk extends AbstractFormattedDisk
 
     // flag the catalog sectors before any file mistakenly grabs them
     DiskAddress da = disk.getDiskAddress (catalogStart.getBlock ());
+    ByteBuffer catalogBuffer;
     do
     {
       if (!disk.isValidAddress (da))
         break;
-      sectorBuffer = disk.readSector (da);
-      if (!disk.isValidAddress (sectorBuffer[1], sectorBuffer[2]))
+      catalogBuffer = disk.getSectorBuffer (da);
+      if (!disk.isValidAddress (catalogBuffer.get (1), catalogBuffer.get (2)))
         break;
 
       // The first byte is officially unused, but it always seems to contain 0x00 or 0xFF
       // See beautifulboot.dsk.
-      if (sectorBuffer[0] != 0 && (sectorBuffer[0] & 0xFF) != 0xFF && false)
+      if (catalogBuffer.get (0) != 0 && (catalogBuffer.get (0) & 0xFF) != 0xFF && false)
       {
-        System.out.println ("Dos catalog sector buffer byte #0 invalid : " + sectorBuffer[0]);
+        System.out.println ("Dos catalog sector buffer byte #0 invalid : "
+              + catalogBuffer.get (0));
         break;
       }
 
       sectorTypes[da.getBlock ()] = catalogSector;
 
-      int track = sectorBuffer[1] & 0xFF;
-      int sector = sectorBuffer[2] & 0xFF;
+      int track = catalogBuffer.get (1) & 0xFF;
+      int sector = catalogBuffer.get (2) & 0xFF;
       if (!disk.isValidAddress (track, sector))
         break;
 
@@ -117,18 +120,19 @@ public class DosDisk extends AbstractFormattedDisk
     {
       if (!disk.isValidAddress (da))
         break;
-      sectorBuffer = disk.readSector (da);
-      if (!disk.isValidAddress (sectorBuffer[1], sectorBuffer[2]))
+      catalogBuffer = disk.getSectorBuffer (da);
+      if (!disk.isValidAddress (catalogBuffer.get (1), catalogBuffer.get (2)))
         break;
 
       for (int ptr = 11; ptr < 256; ptr += ENTRY_SIZE)
       {
-        if (sectorBuffer[ptr] == 0) // empty slot, no more catalog entries
+        if (catalogBuffer.get (ptr) == 0) // empty slot, no more catalog entries
           continue;
         //          break loop;
 
         byte[] entry = new byte[ENTRY_SIZE];
-        System.arraycopy (sectorBuffer, ptr, entry, 0, ENTRY_SIZE);
+        catalogBuffer.position (ptr);
+        catalogBuffer.get (entry);
 
         if (entry[0] == (byte) 0xFF) // deleted file
         {
@@ -142,19 +146,20 @@ public class DosDisk extends AbstractFormattedDisk
         {
           CatalogEntry catalogEntry = new CatalogEntry (this, da, entry);
           fileEntries.add (catalogEntry);
+          setBlockOwner (fileEntries.size () - 1, catalogEntry.getExtents ());
           DefaultMutableTreeNode node = new DefaultMutableTreeNode (catalogEntry);
           node.setAllowsChildren (false);
           volumeNode.add (node);
         }
       }
 
-      int track = sectorBuffer[1] & 0xFF;
-      int sector = sectorBuffer[2] & 0xFF;
+      int track = catalogBuffer.get (1) & 0xFF;
+      int sector = catalogBuffer.get (2) & 0xFF;
       if (!disk.isValidAddress (track, sector))
         break;
 
       //      int thisBlock = da.getBlock ();
-      da = disk.getDiskAddress (sectorBuffer[1], sectorBuffer[2]);
+      da = disk.getDiskAddress (catalogBuffer.get (1), catalogBuffer.get (2));
 
       //      if (CHECK_SELF_POINTER && da.getBlock () == thisBlock)
       //        break;
@@ -240,37 +245,37 @@ public class DosDisk extends AbstractFormattedDisk
 
   private static int checkFormat (AppleDisk disk)
   {
-    byte[] buffer = disk.readSector (0x11, 0x00);
+    ByteBuffer buffer = disk.getSectorBuffer (0x11, 0x00);
 
     // DISCCOMMANDER.DSK uses track 0x17 for the catalog
     //    if (buffer[1] != 0x11) // first catalog track
     //      return 0;
 
-    if (buffer[53] != 16 && buffer[53] != 13) // tracks per sector
+    if (buffer.get (53) != 16 && buffer.get (53) != 13) // tracks per sector
     {
       // System.out.println ("VTOC tracks per sector : " + (buffer[53 & 0xFF]));
       return 0;
     }
-    if (buffer[49] < -1 || buffer[49] > 1) // direction of next file save
+    if (buffer.get (49) < -1 || buffer.get (49) > 1) // direction of next file save
     {
-      System.out.println ("Bad direction : " + buffer[49]);
+      System.out.println ("Bad direction : " + buffer.get (49));
       // Visicalc data disk had 0xF8
       //      return 0;
     }
 
-    int version = buffer[3];
+    int version = buffer.get (3);
     if (version < -1 || version > 4)
     {
-      System.out.println ("Bad version : " + buffer[3]);
+      System.out.println ("Bad version : " + buffer.get (3));
       return 0;
     }
 
     return countCatalogBlocks (disk, buffer);
   }
 
-  private static int countCatalogBlocks (AppleDisk disk, byte[] buffer)
+  private static int countCatalogBlocks (AppleDisk disk, ByteBuffer buffer)
   {
-    DiskAddress catalogStart = disk.getDiskAddress (buffer[1], buffer[2]);
+    DiskAddress catalogStart = disk.getDiskAddress (buffer.get (1), buffer.get (2));
     //    int catalogBlocks = 0;
     DiskAddress da = disk.getDiskAddress (catalogStart.getBlock ());
     List<DiskAddress> catalogAddresses = new ArrayList<DiskAddress> ();
@@ -287,10 +292,10 @@ public class DosDisk extends AbstractFormattedDisk
         return 0;
       }
 
-      buffer = disk.readSector (da);
-      if (!disk.isValidAddress (buffer[1], buffer[2]))
+      buffer = disk.getSectorBuffer (da);
+      if (!disk.isValidAddress (buffer.get (1), buffer.get (2)))
       {
-        System.out.printf ("Invalid address : %02X / %02X%n", buffer[1], buffer[2]);
+        System.out.printf ("Invalid address : %02X / %02X%n", buffer.get (1), buffer.get (2));
         //        System.out.println (HexFormatter.format (buffer));
         //        System.out.println (da);
         break;
@@ -305,7 +310,7 @@ public class DosDisk extends AbstractFormattedDisk
       //      }
 
       //      int thisBlock = da.getBlock ();
-      da = disk.getDiskAddress (buffer[1], buffer[2]);
+      da = disk.getDiskAddress (buffer.get (1), buffer.get (2));
 
       //      if (CHECK_SELF_POINTER && da.getBlock () == thisBlock)
       //        break;
@@ -351,10 +356,8 @@ public class DosDisk extends AbstractFormattedDisk
   @Override
   public String getSectorFilename (DiskAddress da)
   {
-    for (AppleFileSource ce : fileEntries)
-      if (((CatalogEntry) ce).contains (da))
-        return ((CatalogEntry) ce).name;
-    return null;
+    int fileNo = getBlockOwner (da);
+    return fileNo < 0 ? null : ((CatalogEntry) fileEntries.get (fileNo)).name;
   }
 
   @Override
@@ -0,0 +1,556 @@
+package com.bytezone.diskbrowser.gui;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+import javax.swing.tree.DefaultMutableTreeNode;
+
+import com.bytezone.diskbrowser.applefile.AbstractFile;
+import com.bytezone.diskbrowser.applefile.AppleFileSource;
+import com.bytezone.diskbrowser.applefile.FileDetails;
+import com.bytezone.diskbrowser.disk.DiskFactory;
+import com.bytezone.diskbrowser.disk.FormattedDisk;
+import com.bytezone.diskbrowser.gui.DirectoryScanner.Entry;
+
+/***********************************************************************************************
+ * A persistent index of the disks in the library. Each disk is recorded with the size,
+ * modification time and CRC of its file, along with the details that would otherwise
+ * mean opening the disk and parsing its catalog - the format, volume name, boot sector
+ * checksum, catalog text and list of files. A disk is only opened again when the size or
+ * modification time of its file changes. Each file on a disk has a digest of its
+ * contents, so the index can show which disks share a file without opening them. The
+ * index also keeps the digests that are used to find duplicate disks. It is kept in a
+ * hidden file in the user's home folder, and covers every root folder that has been used.
+ ***********************************************************************************************/
+
+public class CatalogIndex extends LibraryIndex
+{
+  private static final String INDEX_NAME = ".diskbrowser.index";
+  private static final int MAGIC = 0x44424958;          // DBIX
+  private static final int VERSION = 5;
+  private static final Charset UTF8 = Charset.forName ("UTF-8");
+  private static final int DISKS_PER_TASK = 4;
+
+  private final Map<String, DiskRecord> records = new ConcurrentHashMap<String, DiskRecord> ();
+  private final Map<String, DigestRecord> digests =
+      new ConcurrentHashMap<String, DigestRecord> ();
+  private volatile Map<String, List<DiskRecord>> fileLocations;   // built when needed
+
+  public CatalogIndex ()
+  {
+    this (new File (System.getProperty ("user.home"), INDEX_NAME));
+  }
+
+  public CatalogIndex (File indexFile)
+  {
+    super (indexFile, MAGIC, VERSION, "catalog index");
+  }
+
+  // Returns the record for this disk if it is up to date, otherwise null
+  public DiskRecord getRecord (File file)
+  {
+    load ();
+    DiskRecord record = records.get (file.getAbsolutePath ());
+    if (record != null && record.size == file.length ()
+        && record.modified == file.lastModified ())
+      return record;
+    return null;
+  }
+
+  /*
+   * Returns an up to date record for this disk, only reading the disk if it has changed.
+   * Returns null if the file can't be read, and the disk is left out of the index.
+   */
+  public DiskRecord update (File file)
+  {
+    DiskRecord record = getRecord (file);
+    if (record == null)
+    {
+      record = readDisk (file);
+      if (record == null)
+        return null;
+      records.put (record.path, record);
+      fileLocations = null;
+      changed = true;
+    }
+    return record;
+  }
+
+  // Returns every disk that has a copy of this file
+  public List<DiskRecord> getDisksContaining (FileRecord file)
+  {
+    if (file.digest.isEmpty ())
+      return Collections.emptyList ();
+    List<DiskRecord> disks = getFileLocations ().get (file.digest);
+    return disks == null ? Collections.<DiskRecord> emptyList () : disks;
+  }
+
+  // Returns the files on this disk that aren't on any other disk
+  public List<FileRecord> getUniqueFiles (DiskRecord disk)
+  {
+    Map<String, List<DiskRecord>> locations = getFileLocations ();
+    List<FileRecord> files = new ArrayList<FileRecord> ();
+    for (FileRecord file : disk.files)
+    {
+      List<DiskRecord> disks = locations.get (file.digest);
+      if (file.digest.isEmpty () || disks == null || disks.size () == 1)
+        files.add (file);
+    }
+    return files;
+  }
+
+  // maps the digest of every file to the disks that hold it
+  private Map<String, List<DiskRecord>> getFileLocations ()
+  {
+    load ();
+    Map<String, List<DiskRecord>> locations = fileLocations;
+    if (locations != null)
+      return locations;
+
+    locations = new HashMap<String, List<DiskRecord>> ();
+    for (DiskRecord record : records.values ())
+      for (FileRecord file : record.files)
+      {
+        if (file.digest.isEmpty ())
+          continue;
+        List<DiskRecord> disks = locations.get (file.digest);
+        if (disks == null)
+        {
+          disks = new ArrayList<DiskRecord> ();
+          locations.put (file.digest, disks);
+        }
+        if (disks.isEmpty () || disks.get (disks.size () - 1) != record)
+          disks.add (record);               // a disk might have more than one copy
+      }
+
+    fileLocations = locations;
+    return locations;
+  }
+
+  // Returns the digests of this disk if they are up to date, otherwise null
+  public DigestRecord getDigests (File file)
+  {
+    load ();
+    DigestRecord record = digests.get (file.getAbsolutePath ());
+    if (record != null && record.size == file.length ()
+        && record.modified == file.lastModified ())
+      return record;
+    return null;
+  }
+
+  public void putDigests (DigestRecord record)
+  {
+    load ();
+    digests.put (record.path, record);
+    changed = true;
+  }
+
+  /*
+   * Brings the record of every disk below the folder up to date, and removes the
+   * records of disks that are no longer there. Returns the number of disks that had to
+   * be read.
+   */
+  public int update (File folder, DirectoryScanner scanner)
+  {
+    load ();
+    Set<String> found = new HashSet<String> ();
+    List<File> changedFiles = new ArrayList<File> ();
+    findChanges (folder.toPath (), scanner, found, changedFiles, new HashSet<Object> ());
+
+    readAll (changedFiles, DISKS_PER_TASK, new FileProcessor ()
+    {
+      @Override
+      public void process (File file)
+      {
+        update (file);
+      }
+    });
+
+    String prefix = folder.getAbsolutePath () + File.separator;
+    removeMissing (records.keySet (), prefix, found);
+    removeMissing (digests.keySet (), prefix, found);
+    fileLocations = null;
+    return changedFiles.size ();
+  }
+
+  private void removeMissing (Set<String> paths, String prefix, Set<String> found)
+  {
+    Iterator<String> iterator = paths.iterator ();
+    while (iterator.hasNext ())
+    {
+      String path = iterator.next ();
+      if (path.startsWith (prefix) && !found.contains (path))
+      {
+        iterator.remove ();
+        changed = true;
+      }
+    }
+  }
+
+  // each folder is only read once, even if it can be reached through a link
+  private void findChanges (Path directory, DirectoryScanner scanner, Set<String> found,
+      List<File> changedFiles, Set<Object> visited)
+  {
+    for (Entry entry : scanner.getFolder (directory).entries)
+      if (entry.isDirectory)
+      {
+        if (visited.add (entry.fileKey == null ? entry.path : entry.fileKey))
+          findChanges (entry.path, scanner, found, changedFiles, visited);
+      }
+      else if (TreeBuilder.isDiskFile (entry.name, entry.size))
+      {
+        String path = entry.file.getAbsolutePath ();
+        if (!found.add (path))
+          continue;                         // reached through a link
+        if (getRecord (entry.file) == null)
+          changedFiles.add (entry.file);
+      }
+  }
+
+  public int size ()
+  {
+    load ();
+    return records.size ();
+  }
+
+  // returns null if the file can't be read
+  private DiskRecord readDisk (File file)
+  {
+    String path = file.getAbsolutePath ();
+    long size = file.length ();
+    long modified = file.lastModified ();
+    long crc;
+    try
+    {
+      crc = getChecksum (file);
+    }
+    catch (IOException e)
+    {
+      System.out.println ("Unable to read " + path + " : " + e.getMessage ());
+      return null;
+    }
+
+    List<FileRecord> files = new ArrayList<FileRecord> ();
+    try
+    {
+      FormattedDisk disk = DiskFactory.createDisk (file);
+      if (disk != null)
+        return readDisk (disk, path, size, modified, crc, files);
+    }
+    catch (Exception e)
+    {
+      System.out.println ("Unable to index " + path + " : " + e.getMessage ());
+      if (!file.canRead ())
+        return null;                        // it has gone since the checksum was taken
+    }
+
+    files.clear ();
+    return new DiskRecord (path, size, modified, crc, "", "", 0, "", files);
+  }
+
+  private DiskRecord readDisk (FormattedDisk disk, String path, long size, long modified,
+      long crc, List<FileRecord> files)
+  {
+    for (AppleFileSource afs : disk.getCatalogList ())
+    {
+      if (afs instanceof FileDetails)
+      {
+        FileDetails details = (FileDetails) afs;
+        files.add (new FileRecord (afs.getUniqueName (), details.getFileTypeText (),
+            details.getAuxType (), details.getFileLength (), details.getBlocksUsed (),
+            getDigest (afs)));
+      }
+      else
+        files.add (new FileRecord (afs.getUniqueName (), "", 0, 0,
+            afs.getSectors ().size (), getDigest (afs)));
+    }
+
+    CRC32 bootChecksum = new CRC32 ();
+    bootChecksum.update (disk.getDisk ().readSector (0, 0));
+
+    String catalogText = "";
+    AppleFileSource catalog = disk.getCatalog ();
+    if (catalog != null && catalog.getDataSource () != null)
+      catalogText = catalog.getDataSource ().getText ();
+
+    return new DiskRecord (path, size, modified, crc, disk.getClass ().getSimpleName (),
+        getVolumeName (disk), bootChecksum.getValue (), catalogText, files);
+  }
+
+  // digest of the file's data as it is read from the disk, or empty if it has none
+  private String getDigest (AppleFileSource afs)
+  {
+    try
+    {
+      DataSource dataSource = afs.getDataSource ();
+      if (dataSource instanceof AbstractFile)
+      {
+        byte[] buffer = ((AbstractFile) dataSource).buffer;
+        if (buffer != null)
+          return DuplicateFinder.getDigest (buffer);
+      }
+    }
+    catch (Exception e)
+    {
+      // a damaged file
+    }
+    return "";
+  }
+
+  // the volume is the first node of every catalog tree
+  private String getVolumeName (FormattedDisk disk)
+  {
+    DefaultMutableTreeNode root =
+        (DefaultMutableTreeNode) disk.getCatalogTree ().getModel ().getRoot ();
+    if (root.getChildCount () > 0)
+    {
+      Object volume = ((DefaultMutableTreeNode) root.getChildAt (0)).getUserObject ();
+      if (volume != null)
+        return volume.toString ();
+    }
+    return disk.getName ();
+  }
+
+  static long getChecksum (File file) throws IOException
+  {
+    CRC32 checksum = new CRC32 ();
+    byte[] buffer = new byte[0x10000];
+    InputStream in = null;
+    try
+    {
+      in = new FileInputStream (file);
+      int bytesRead;
+      while ((bytesRead = in.read (buffer)) > 0)
+        checksum.update (buffer, 0, bytesRead);
+    }
+    finally
+    {
+      close (in);
+    }
+    return checksum.getValue ();
+  }
+
+  @Override
+  void readIndex (DataInputStream in) throws IOException
+  {
+    int totalRecords = in.readInt ();
+    for (int i = 0; i < totalRecords; i++)
+    {
+      DiskRecord record = new DiskRecord (in);
+      records.put (record.path, record);
+    }
+    fileLocations = null;
+
+    int totalDigests = in.readInt ();
+    for (int i = 0; i < totalDigests; i++)
+    {
+      DigestRecord record = new DigestRecord (in);
+      digests.put (record.path, record);
+    }
+  }
+
+  @Override
+  void writeIndex (DataOutputStream out) throws IOException
+  {
+    List<DiskRecord> list = new ArrayList<DiskRecord> (records.values ());
+    out.writeInt (list.size ());
+    for (DiskRecord record : list)
+      record.write (out);
+
+    List<DigestRecord> digestList = new ArrayList<DigestRecord> (digests.values ());
+    out.writeInt (digestList.size ());
+    for (DigestRecord record : digestList)
+      record.write (out);
+  }
+
+  @Override
+  void clearIndex ()
+  {
+    records.clear ();
+    digests.clear ();
+  }
+
+  // writeUTF () can't be used because catalogs of hard disks can be longer than 64K
+  private static void writeString (DataOutputStream out, String text) throws IOException
+  {
+    byte[] bytes = text.getBytes (UTF8);
+    out.writeInt (bytes.length);
+    out.write (bytes);
+  }
+
+  private static String readString (DataInputStream in) throws IOException
+  {
+    byte[] bytes = new byte[in.readInt ()];
+    in.readFully (bytes);
+    return new String (bytes, UTF8);
+  }
+
+  public static class DiskRecord
+  {
+    public final String path;
+    public final long size;
+    public final long modified;
+    public final long crc;
+    public final String format;             // empty if the disk wasn't recognised
+    public final String volumeName;
+    public final long bootChecksum;         // CRC of track 0 sector 0
+    public final String catalogText;
+    public final List<FileRecord> files;
+
+    DiskRecord (String path, long size, long modified, long crc, String format,
+        String volumeName, long bootChecksum, String catalogText, List<FileRecord> files)
+    {
+      this.path = path;
+      this.size = size;
+      this.modified = modified;
+      this.crc = crc;
+      this.format = format;
+      this.volumeName = volumeName;
+      this.bootChecksum = bootChecksum;
+      this.catalogText = catalogText;
+      this.files = Collections.unmodifiableList (files);
+    }
+
+    DiskRecord (DataInputStream in) throws IOException
+    {
+      path = readString (in);
+      size = in.readLong ();
+      modified = in.readLong ();
+      crc = in.readLong ();
+      format = readString (in);
+      volumeName = readString (in);
+      bootChecksum = in.readLong ();
+      catalogText = readString (in);
+
+      int totalFiles = in.readInt ();
+      List<FileRecord> list = new ArrayList<FileRecord> (totalFiles);
+      for (int i = 0; i < totalFiles; i++)
+        list.add (new FileRecord (readString (in), readString (in), in.readInt (),
+            in.readInt (), in.readInt (), readString (in)));
+      files = Collections.unmodifiableList (list);
+    }
+
+    void write (DataOutputStream out) throws IOException
+    {
+      writeString (out, path);
+      out.writeLong (size);
+      out.writeLong (modified);
+      out.writeLong (crc);
+      writeString (out, format);
+      writeString (out, volumeName);
+      out.writeLong (bootChecksum);
+      writeString (out, catalogText);
+
+      out.writeInt (files.size ());
+      for (FileRecord file : files)
+      {
+        writeString (out, file.name);
+        writeString (out, file.fileType);
+        out.writeInt (file.auxType);
+        out.writeInt (file.length);
+        out.writeInt (file.blocks);
+        writeString (out, file.digest);
+      }
+    }
+
+    public boolean isRecognised ()
+    {
+      return !format.isEmpty ();
+    }
+
+    @Override
+    public String toString ()
+    {
+      return String.format ("%-12s %-20s %,4d files  %s", format, volumeName, files.size (),
+                            path);
+    }
+  }
+
+  /*
+   * SHA-256 digests of a disk's file and of the image that it holds, which differ when
+   * the image is compressed or has a header.
+   */
+  public static class DigestRecord
+  {
+    public final String path;
+    public final long size;
+    public final long modified;
+    public final int imageLength;           // -1 if the file doesn't hold an image
+    public final String fileDigest;
+    public final String imageDigest;
+
+    public DigestRecord (File file, int imageLength, String fileDigest, String imageDigest)
+    {
+      this.path = file.getAbsolutePath ();
+      this.size = file.length ();
+      this.modified = file.lastModified ();
+      this.imageLength = imageLength;
+      this.fileDigest = fileDigest;
+      this.imageDigest = imageDigest;
+    }
+
+    DigestRecord (DataInputStream in) throws IOException
+    {
+      path = readString (in);
+      size = in.readLong ();
+      modified = in.readLong ();
+      imageLength = in.readInt ();
+      fileDigest = readString (in);
+      imageDigest = readString (in);
+    }
+
+    void write (DataOutputStream out) throws IOException
+    {
+      writeString (out, path);
+      out.writeLong (size);
+      out.writeLong (modified);
+      out.writeInt (imageLength);
+      writeString (out, fileDigest);
+      writeString (out, imageDigest);
+    }
+  }
+
+  public static class FileRecord
+  {
+    public final String name;
+    public final String fileType;
+    public final int auxType;
+    public final int length;
+    public final int blocks;
+    public final String digest;             // SHA-256 of the file's data
+
+    FileRecord (String name, String fileType, int auxType, int length, int blocks,
+        String digest)
+    {
+      this.name = name;
+      this.fileType = fileType;
+      this.auxType = auxType;
+      this.length = length;
+      this.blocks = blocks;
+      this.digest = digest;
+    }
+
+    @Override
+    public String toString ()
+    {
+      return String.format ("%-30s %-4s %04X %,9d %,5d", name, fileType, auxType, length,
+                            blocks);
+    }
+  }
+}
\ No newline at end of file
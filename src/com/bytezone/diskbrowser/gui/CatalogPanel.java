@@ -16,6 +16,7 @@ import java.util.EventObject;
 import java.util.List;
 import java.util.prefs.Preferences;
 
+import javax.swing.JOptionPane;
 import javax.swing.JTabbedPane;
 import javax.swing.JTree;
 import javax.swing.SwingConstants;
@@ -52,6 +53,9 @@ class CatalogPanel extends JTabbedPane implements RedoListener, SectorSelectionL
   private final DiskAndFileSelector selector = new DiskAndFileSelector ();
   private final RedoHandler navMan;
   private DuplicateAction duplicateAction; // this sux
+  private SearchAction searchAction;
+  private final CreateDatabaseAction databaseAction;
+  private final SharedFilesAction sharedFilesAction;
   private CloseTabAction closeTabAction;
 
   public CatalogPanel (MenuHandler mh, RedoHandler navMan, Preferences prefs)
@@ -64,6 +68,8 @@ class CatalogPanel extends JTabbedPane implements RedoListener, SectorSelectionL
     //    this.font = new Font (catalogFontName, Font.PLAIN, catalogFontSize);
     this.lister = new DocumentCreatorFactory (mh);
     this.navMan = navMan;
+    this.databaseAction = mh.databaseAction;
+    this.sharedFilesAction = mh.sharedFilesAction;
 
     selector.addDiskSelectionListener (lister.diskLister);
 
@@ -99,58 +105,71 @@ class CatalogPanel extends JTabbedPane implements RedoListener, SectorSelectionL
       System.out.println ("Last sectors : " + lastSectorsUsed);
     }
 
-    DiskSelectedEvent diskEvent = null;
-    if (!lastDiskUsed.isEmpty ())
-    {
-      diskEvent = DiskSelectedEvent.create (this, lastDiskUsed);
-      if (diskEvent != null)
-      {
-        FormattedDisk fd = diskEvent.getFormattedDisk ();
-        if (lastDosUsed >= 0 && fd instanceof DualDosDisk)
-          ((DualDosDisk) fd).setCurrentDiskNo (lastDosUsed);
-      }
-    }
-    else
-      System.out.println ("no disk selected");
-
-    fileTab = new FileSystemTab (rootDirectoryFile, selector, navMan, font, diskEvent);
+    fileTab = new FileSystemTab (rootDirectoryFile, selector, navMan, font, lastDiskUsed);
     fileTab.addTreeMouseListener (new MouseListener ()); // listen for disk selection
     lister.catalogLister.setNode (fileTab.getRootNode ());
+    databaseAction.setLibrary (fileTab.rootFolder, fileTab.scanner, fileTab.catalogIndex);
+    sharedFilesAction.setLibrary (fileTab.rootFolder, fileTab.scanner,
+                                  fileTab.catalogIndex);
     insertTab ("Disk Tree", null, fileTab, "Display Apple disks", 0);
 
-    if (diskEvent != null)
-    {
-      AppleDiskTab tab = null;
-      FormattedDisk fd = diskEvent.getFormattedDisk ();
+    if (!lastDiskUsed.isEmpty ())
+      openLastDisk (lastDiskUsed, lastDosUsed, lastFileUsed, lastSectorsUsed);
+    else
+      System.out.println ("no disk selected");
+  }
 
-      if (!lastFileUsed.isEmpty ())
+  // the disk tab is added when the disk has been read in the background
+  private void openLastDisk (final String lastDiskUsed, final int lastDosUsed,
+        final String lastFileUsed, final String lastSectorsUsed)
+  {
+    DiskLoader.DiskLoadListener listener = new DiskLoader.DiskLoadListener ()
+    {
+      @Override
+      public void diskLoaded (FileNode node, FormattedDisk fd)
       {
-        AppleFileSource afs = fd.getFile (lastFileUsed);
-        if (afs != null)
+        if (fd == null)
+        {
+          System.out.println ("Unable to open " + lastDiskUsed);
+          return;
+        }
+
+        if (lastDosUsed >= 0 && fd instanceof DualDosDisk)
+          ((DualDosDisk) fd).setCurrentDiskNo (lastDosUsed);
+
+        AppleDiskTab tab = null;
+        if (!lastFileUsed.isEmpty ())
         {
-          FileSelectedEvent fileEvent = FileSelectedEvent.create (this, afs);
-          tab = new AppleDiskTab (fd, selector, navMan, font, fileEvent);
+          AppleFileSource afs = fd.getFile (lastFileUsed);
+          if (afs != null)
+          {
+            FileSelectedEvent fileEvent =
+                  FileSelectedEvent.create (CatalogPanel.this, afs);
+            tab = new AppleDiskTab (fd, selector, navMan, font, fileEvent);
+          }
+          else
+            tab = new AppleDiskTab (fd, selector, navMan, font, lastFileUsed);
+        }
+        else if (!lastSectorsUsed.isEmpty ())
+        {
+          SectorSelectedEvent sectorEvent =
+                SectorSelectedEvent.create (CatalogPanel.this, fd, lastSectorsUsed);
+          tab = new AppleDiskTab (fd, selector, navMan, font, sectorEvent);
         }
         else
-          tab = new AppleDiskTab (fd, selector, navMan, font, lastFileUsed);
-      }
-      else if (!lastSectorsUsed.isEmpty ())
-      {
-        SectorSelectedEvent sectorEvent =
-              SectorSelectedEvent.create (this, fd, lastSectorsUsed);
-        tab = new AppleDiskTab (fd, selector, navMan, font, sectorEvent);
-      }
-      else
-        tab = new AppleDiskTab (fd, selector, navMan, font);
+          tab = new AppleDiskTab (fd, selector, navMan, font);
 
-      if (tab != null)
-      {
         diskTabs.add (tab);
         add (tab, "D" + diskTabs.size ());
+        setSelectedIndex (diskTabs.size ());
       }
-      else
-        System.out.println ("No disk tab created");
-    }
+    };
+
+    FileNode node = fileTab.findFileNode (lastDiskUsed);
+    if (node != null)
+      selector.diskLoader.open (node, listener);
+    else
+      selector.diskLoader.open (lastDiskUsed, listener);
   }
 
   public void activate ()
@@ -171,7 +190,14 @@ class CatalogPanel extends JTabbedPane implements RedoListener, SectorSelectionL
   {
     this.duplicateAction = action;
     if (fileTab != null && fileTab.rootFolder != null)
-      action.setDuplicates (fileTab.rootFolder, fileTab.duplicateDisks);
+      action.setDuplicates (fileTab.rootFolder, fileTab.scanner, fileTab.catalogIndex);
+  }
+
+  void setSearchAction (SearchAction action)
+  {
+    this.searchAction = action;
+    if (fileTab != null && fileTab.rootFolder != null)
+      action.setLibrary (fileTab.rootFolder, fileTab.scanner);
   }
 
   void setCloseTabAction (CloseTabAction action)
@@ -194,10 +220,15 @@ class CatalogPanel extends JTabbedPane implements RedoListener, SectorSelectionL
     fileTab = newFileTab;
     fileTab.addTreeMouseListener (new MouseListener ()); // listen for disk selection
     lister.catalogLister.setNode (fileTab.getRootNode ());
+    databaseAction.setLibrary (fileTab.rootFolder, fileTab.scanner, fileTab.catalogIndex);
+    sharedFilesAction.setLibrary (fileTab.rootFolder, fileTab.scanner,
+                                  fileTab.catalogIndex);
 
     insertTab ("Disk Tree", null, fileTab, null, 0);
     setSelectedIndex (0);
-    duplicateAction.setDuplicates (fileTab.rootFolder, fileTab.duplicateDisks);
+    duplicateAction.setDuplicates (fileTab.rootFolder, fileTab.scanner,
+                                   fileTab.catalogIndex);
+    searchAction.setLibrary (fileTab.rootFolder, fileTab.scanner);
     //    }
     //    catch (NoDisksFoundException e)
     //    {
@@ -206,7 +237,7 @@ class CatalogPanel extends JTabbedPane implements RedoListener, SectorSelectionL
     //    }
   }
 
-  // called after a double-click in the fileTab
+  // called after a double-click in the fileTab, or in the search results
   public void addDiskPanel (FormattedDisk disk, String lastFileUsed, boolean activate)
   {
     int tabNo = 1;
@@ -220,13 +251,31 @@ class CatalogPanel extends JTabbedPane implements RedoListener, SectorSelectionL
       tabNo++;
     }
 
-    AppleDiskTab tab = new AppleDiskTab (disk, selector, navMan, font);
+    AppleDiskTab tab = lastFileUsed == null ? new AppleDiskTab (disk, selector, navMan, font)
+          : new AppleDiskTab (disk, selector, navMan, font, lastFileUsed);
     diskTabs.add (tab);
     add (tab, "D" + diskTabs.size ());
     if (activate)
       setSelectedIndex (diskTabs.size ());
   }
 
+  // opens a disk in its own tab once it has been read in the background
+  public void openDiskPanel (final String path, final String lastFileUsed)
+  {
+    selector.diskLoader.open (path, new DiskLoader.DiskLoadListener ()
+    {
+      @Override
+      public void diskLoaded (FileNode node, FormattedDisk disk)
+      {
+        if (disk == null)
+          JOptionPane.showMessageDialog (null, "Unable to open " + path, "Format error",
+                                         JOptionPane.ERROR_MESSAGE);
+        else
+          addDiskPanel (disk, lastFileUsed, true);
+      }
+    });
+  }
+
   // Called from RefreshTreeAction
   public void refreshTree ()
   {
@@ -282,11 +331,18 @@ class CatalogPanel extends JTabbedPane implements RedoListener, SectorSelectionL
       if (diskTabs.size () == 0)
       {
         RedoEvent redoEvent = fileTab.redoData.getCurrentEvent ();
-        if (redoEvent != null)
+        if (redoEvent != null && redoEvent.value instanceof DiskSelectedEvent)
         {
           DiskSelectedEvent event = (DiskSelectedEvent) redoEvent.value;
           prefs.put (prefsLastDiskUsed, event.getFormattedDisk ().getAbsolutePath ());
         }
+        else if (redoEvent != null)
+        {
+          // the disk may not have been read yet
+          FileNode node = ((FileNodeSelectedEvent) redoEvent.value).getFileNode ();
+          prefs.put (prefsLastDiskUsed,
+                     node.file.isFile () ? node.file.getAbsolutePath () : "");
+        }
         prefs.put (prefsLastFileUsed, "");
         prefs.put (prefsLastSectorsUsed, "");
       }
@@ -373,7 +429,21 @@ class CatalogPanel extends JTabbedPane implements RedoListener, SectorSelectionL
       if (node.file.isDirectory ())
         lister.catalogLister.setNode (selectedNode);
       else if (e.getClickCount () == 2)
-        addDiskPanel (node.getFormattedDisk (), null, true);
+      {
+        FormattedDisk disk = node.getLoadedDisk ();
+        if (disk != null)
+          addDiskPanel (disk, null, true);
+        else
+          selector.diskLoader.open (node, new DiskLoader.DiskLoadListener ()
+          {
+            @Override
+            public void diskLoaded (FileNode node, FormattedDisk disk)
+            {
+              if (disk != null)
+                addDiskPanel (disk, null, true);
+            }
+          });
+      }
     }
   }
 
@@ -1,23 +1,84 @@
 package com.bytezone.diskbrowser.gui;
 
 import java.awt.event.ActionEvent;
+import java.io.File;
 
 import javax.swing.JOptionPane;
+import javax.swing.SwingWorker;
 
 import com.bytezone.common.DefaultAction;
 
+/*
+ * Brings the catalog index up to date with every disk in the root folder. Only the
+ * disks that are new or have changed since the last time are read.
+ */
 class CreateDatabaseAction extends DefaultAction
 {
+  private File rootFolder;
+  private DirectoryScanner scanner;
+  private CatalogIndex catalogIndex;
+
   public CreateDatabaseAction ()
   {
-    super ("Create Database", "Not working yet", null);
+    super ("Create Database", "Index every disk in the root folder", null);
     //		putValue (Action.ACCELERATOR_KEY, KeyStroke.getKeyStroke ("alt A"));
     //		putValue (Action.MNEMONIC_KEY, KeyEvent.VK_A);
+    setEnabled (false);
+  }
+
+  public void setLibrary (File rootFolder, DirectoryScanner scanner,
+        CatalogIndex catalogIndex)
+  {
+    this.rootFolder = rootFolder;
+    this.scanner = scanner;
+    this.catalogIndex = catalogIndex;
+    setEnabled (true);
   }
 
   public void actionPerformed (ActionEvent e)
   {
-    JOptionPane.showMessageDialog (null, "Coming soon...", "Database",
-          JOptionPane.INFORMATION_MESSAGE);
+    setEnabled (false);       // until this update has finished
+    new IndexWorker (rootFolder, scanner, catalogIndex).execute ();
+  }
+
+  class IndexWorker extends SwingWorker<Integer, Void>
+  {
+    File rootFolder;
+    DirectoryScanner scanner;
+    CatalogIndex catalogIndex;
+    long start = System.currentTimeMillis ();
+
+    public IndexWorker (File rootFolder, DirectoryScanner scanner, CatalogIndex catalogIndex)
+    {
+      this.rootFolder = rootFolder;
+      this.scanner = scanner;
+      this.catalogIndex = catalogIndex;
+    }
+
+    @Override
+    protected Integer doInBackground () throws Exception
+    {
+      int totalRead = catalogIndex.update (rootFolder, scanner);
+      catalogIndex.save ();
+      return totalRead;
+    }
+
+    @Override
+    protected void done ()
+    {
+      setEnabled (true);
+      try
+      {
+        long duration = System.currentTimeMillis () - start;
+        String message = String.format ("%,d disks in the index, %,d read in %,d milliseconds",
+                                        catalogIndex.size (), get (), duration);
+        JOptionPane.showMessageDialog (null, message, "Database",
+              JOptionPane.INFORMATION_MESSAGE);
+      }
+      catch (Exception e)
+      {
+        e.printStackTrace ();
+      }
+    }
   }
 }
\ No newline at end of file
@@ -6,6 +6,7 @@ import java.awt.Font;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.Insets;
+import java.awt.Point;
 import java.awt.RenderingHints;
 import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
@@ -23,6 +24,8 @@ import javax.swing.event.ChangeListener;
 
 import com.bytezone.common.FontAction.FontChangeEvent;
 import com.bytezone.common.FontAction.FontChangeListener;
+import com.bytezone.diskbrowser.applefile.AbstractFile;
+import com.bytezone.diskbrowser.disk.Disk;
 import com.bytezone.diskbrowser.disk.DiskAddress;
 import com.bytezone.diskbrowser.disk.SectorList;
 
@@ -32,8 +35,11 @@ class DataPanel extends JTabbedPane
     FileNodeSelectionListener, FontChangeListener
 {
   private static final int TEXT_WIDTH = 65;
+  private static final int MAX_HEX_TEXT = 0x4000;     // larger dumps use the HexViewer
 
   JTextArea hexText;
+  HexViewer hexViewer;
+  JScrollPane hexPane;
   JTextArea disassemblyText;
 
   // these two panes are interchangeable
@@ -75,7 +81,9 @@ class DataPanel extends JTabbedPane
         + "\nthe disk. You will then be able to select individual files to view completely.");
 
     hexText = new JTextArea (10, TEXT_WIDTH);
-    setPanel (hexText, "Hex dump");
+    hexPane = setPanel (hexText, "Hex dump");
+    hexViewer = new HexViewer ();
+    hexViewer.setFont (hexText.getFont ());
 
     disassemblyText = new JTextArea (10, TEXT_WIDTH);
     setPanel (disassemblyText, "Disassembly");
@@ -109,10 +117,7 @@ class DataPanel extends JTabbedPane
           case 1:
             if (!hexTextValid)
             {
-              if (currentDataSource == null)
-                hexText.setText ("");
-              else
-                setText (hexText, currentDataSource.getHexDump ());
+              setHexDump (currentDataSource);
               hexTextValid = true;
             }
             break;
@@ -139,6 +144,7 @@ class DataPanel extends JTabbedPane
   {
     formattedText.setFont (font);
     hexText.setFont (font);
+    hexViewer.setFont (font);
     disassemblyText.setFont (font);
     imagePane.getVerticalScrollBar ().setUnitIncrement (font.getSize ());
   }
@@ -146,6 +152,8 @@ class DataPanel extends JTabbedPane
   public String getCurrentText ()
   {
     int index = getSelectedIndex ();
+    if (index == 1 && hexPane.getViewport ().getView () == hexViewer)
+      return hexViewer.getText ();
     return index == 0 ? formattedText.getText ()
         : index == 1 ? hexText.getText () : disassemblyText.getText ();
   }
@@ -169,7 +177,7 @@ class DataPanel extends JTabbedPane
     if (dataSource == null)
     {
       formattedText.setText ("");
-      hexText.setText ("");
+      setHexDump (null);
       disassemblyText.setText ("");
       checkImage ();
       return;
@@ -191,7 +199,7 @@ class DataPanel extends JTabbedPane
         assemblerTextValid = false;
         break;
       case 1:
-        setText (hexText, dataSource.getHexDump ());
+        setHexDump (dataSource);
         formattedTextValid = false;
         assemblerTextValid = false;
         break;
@@ -236,6 +244,50 @@ class DataPanel extends JTabbedPane
     }
   }
 
+  // large dumps are drawn a screenful at a time rather than being formatted as one string
+  private void setHexDump (DataSource dataSource)
+  {
+    hexViewer.clear ();
+
+    if (dataSource instanceof SectorList)
+    {
+      SectorList sectorList = (SectorList) dataSource;
+      List<DiskAddress> sectors = sectorList.getSectors ();
+      Disk disk = sectorList.getFormattedDisk ().getDisk ();
+      if (sectors.size () * disk.getBlockSize () > MAX_HEX_TEXT)
+      {
+        hexViewer.setSectors (disk, sectors);
+        showHexViewer ();
+        return;
+      }
+    }
+    else if (dataSource instanceof AbstractFile)
+    {
+      byte[] buffer = ((AbstractFile) dataSource).getHexDumpBuffer ();
+      if (buffer != null && buffer.length > MAX_HEX_TEXT)
+      {
+        hexViewer.setBuffer (buffer, 0, buffer.length);
+        showHexViewer ();
+        return;
+      }
+    }
+
+    if (hexPane.getViewport ().getView () != hexText)
+      hexPane.setViewportView (hexText);
+    if (dataSource == null)
+      hexText.setText ("");
+    else
+      setText (hexText, dataSource.getHexDump ());
+  }
+
+  private void showHexViewer ()
+  {
+    hexText.setText ("");
+    if (hexPane.getViewport ().getView () != hexViewer)
+      hexPane.setViewportView (hexViewer);
+    hexPane.getViewport ().setViewPosition (new Point (0, 0));
+  }
+
   private void setText (JTextArea textArea, String text)
   {
     textArea.setText (text);
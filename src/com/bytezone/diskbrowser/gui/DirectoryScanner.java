@@ -0,0 +1,194 @@
+package com.bytezone.diskbrowser.gui;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/***********************************************************************************************
+ * Reads the folders in the disk library. Each folder is read once, along with the
+ * attributes of everything in it, and is kept until the folder's modification time
+ * changes. This means that rebuilding the tree only re-reads the folders that have
+ * changed. A whole library can also be read in the background, with the folders spread
+ * across a work-stealing pool.
+ ***********************************************************************************************/
+
+class DirectoryScanner
+{
+  // reading folders is mostly waiting for the file system, so use a few more threads
+  private static final int THREADS =
+      Math.max (4, Runtime.getRuntime ().availableProcessors ());
+  private static final EnumSet<FileVisitOption> FOLLOW_LINKS =
+      EnumSet.of (FileVisitOption.FOLLOW_LINKS);
+
+  private final Map<Path, Folder> folders = new ConcurrentHashMap<Path, Folder> ();
+  private ForkJoinPool pool;
+
+  // Returns the contents of the folder, only reading it if it has changed
+  public Folder getFolder (Path directory)
+  {
+    FileTime modified;
+    try
+    {
+      modified = Files.getLastModifiedTime (directory);
+    }
+    catch (IOException e)
+    {
+      folders.remove (directory);
+      return new Folder (null, new ArrayList<Entry> ());
+    }
+
+    Folder folder = folders.get (directory);
+    if (folder == null || !folder.modified.equals (modified))
+    {
+      folder = readFolder (directory, modified);
+      folders.put (directory, folder);
+    }
+    return folder;
+  }
+
+  private Folder readFolder (Path directory, FileTime modified)
+  {
+    final List<Entry> entries = new ArrayList<Entry> ();
+    try
+    {
+      Files.walkFileTree (directory, FOLLOW_LINKS, 1, new SimpleFileVisitor<Path> ()
+      {
+        @Override
+        public FileVisitResult visitFile (Path file, BasicFileAttributes attrs)
+        {
+          entries.add (new Entry (file, attrs));
+          return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFileFailed (Path file, IOException e)
+        {
+          return FileVisitResult.CONTINUE;      // eg a broken link
+        }
+      });
+    }
+    catch (IOException e)
+    {
+      e.printStackTrace ();
+    }
+
+    Collections.sort (entries, Entry.comparator);
+    return new Folder (modified, entries);
+  }
+
+  /*
+   * Reads every folder below (and including) the root folder in the background. The
+   * listener is called from a pool thread as each folder is read, and a folder is always
+   * reported before any of its subfolders. Links are followed, but each folder is only
+   * read once.
+   */
+  public void scan (Path root, FolderListener listener)
+  {
+    synchronized (this)
+    {
+      if (pool == null)
+        pool = new ForkJoinPool (THREADS);
+    }
+    Set<Object> visited =
+        Collections.newSetFromMap (new ConcurrentHashMap<Object, Boolean> ());
+    pool.execute (new ScanTask (root, listener, visited));
+  }
+
+  interface FolderListener
+  {
+    // return false to stop the scan
+    boolean folderRead (Path directory, Folder folder);
+  }
+
+  private class ScanTask extends RecursiveAction
+  {
+    private final Path directory;
+    private final FolderListener listener;
+    private final Set<Object> visited;
+
+    ScanTask (Path directory, FolderListener listener, Set<Object> visited)
+    {
+      this.directory = directory;
+      this.listener = listener;
+      this.visited = visited;
+    }
+
+    @Override
+    protected void compute ()
+    {
+      Folder folder = getFolder (directory);
+      if (!listener.folderRead (directory, folder))
+        return;
+
+      List<ScanTask> tasks = new ArrayList<ScanTask> ();
+      for (Entry entry : folder.entries)
+        if (entry.isDirectory && (entry.fileKey == null || visited.add (entry.fileKey)))
+          tasks.add (new ScanTask (entry.path, listener, visited));
+      invokeAll (tasks);
+    }
+  }
+
+  /*
+   * The contents of a folder when it was read, directories first and then by name.
+   */
+  static class Folder
+  {
+    final FileTime modified;
+    final List<Entry> entries;
+
+    Folder (FileTime modified, List<Entry> entries)
+    {
+      this.modified = modified;
+      this.entries = Collections.unmodifiableList (entries);
+    }
+  }
+
+  static class Entry
+  {
+    static final Comparator<Entry> comparator = new Comparator<Entry> ()
+    {
+      @Override
+      public int compare (Entry entrya, Entry entryb)
+      {
+        if (entrya.isDirectory && !entryb.isDirectory)
+          return -1;
+        if (!entrya.isDirectory && entryb.isDirectory)
+          return 1;
+        return entrya.name.compareToIgnoreCase (entryb.name);
+      }
+    };
+
+    final Path path;
+    final File file;
+    final String name;
+    final boolean isDirectory;
+    final long size;
+    final Object fileKey;         // identifies the file even when reached through a link
+
+    Entry (Path path, BasicFileAttributes attrs)
+    {
+      this.path = path;
+      this.file = path.toFile ();
+      this.name = file.getName ();
+      this.isDirectory = attrs.isDirectory ();
+      this.size = attrs.size ();
+      this.fileKey = attrs.fileKey ();
+    }
+  }
+}
\ No newline at end of file
@@ -10,6 +10,7 @@ import com.bytezone.diskbrowser.gui.TreeBuilder.FileNode;
 class DiskAndFileSelector
 {
   EventListenerList listenerList = new EventListenerList ();
+  final DiskLoader diskLoader = new DiskLoader ();
   FormattedDisk currentDisk;
   boolean redo;
 
@@ -63,18 +64,45 @@ class DiskAndFileSelector
   {
     if (node.file.isDirectory ())
     {
+      diskLoader.cancel ();
       fireFileNodeSelectionEvent (node);
       currentDisk = null;
+      return;
     }
-    else
+
+    FormattedDisk fd = node.getLoadedDisk ();
+    if (fd != null)
     {
-      FormattedDisk fd = node.getFormattedDisk ();
-      if (fd == null)
-        JOptionPane.showMessageDialog (null, "Incorrect file format", "Format error",
-                                       JOptionPane.ERROR_MESSAGE);
-      else
-        fireDiskSelectionEvent (fd);
+      diskLoader.cancel ();
+      fireDiskSelectionEvent (fd);
+      return;
     }
+
+    // show the node until the disk has been read, but don't add it to the history
+    final boolean redoRequest = redo;
+    redo = true;
+    fireFileNodeSelectionEvent (node);
+    redo = redoRequest;
+    currentDisk = null;
+
+    diskLoader.load (node, new DiskLoader.DiskLoadListener ()
+    {
+      @Override
+      public void diskLoaded (FileNode node, FormattedDisk disk)
+      {
+        if (disk == null)
+        {
+          JOptionPane.showMessageDialog (null, "Incorrect file format", "Format error",
+                                         JOptionPane.ERROR_MESSAGE);
+          return;
+        }
+
+        boolean savedRedo = redo;
+        redo = redoRequest;
+        fireDiskSelectionEvent (disk);
+        redo = savedRedo;
+      }
+    });
   }
 
   public void fireFileNodeSelectionEvent (FileNode node)
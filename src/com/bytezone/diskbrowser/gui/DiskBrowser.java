@@ -60,6 +60,7 @@ public class DiskBrowser extends JFrame implements DiskSelectionListener, QuitLi
     ShowFreeSectorsAction showFreeAction =
           new ShowFreeSectorsAction (menuHandler, diskLayoutPanel);
     DuplicateAction duplicateAction = new DuplicateAction ();
+    SearchAction searchAction = new SearchAction (catalogPanel);
     CloseTabAction closeTabAction = new CloseTabAction (catalogPanel);
 
     // add action buttons to toolbar
@@ -106,6 +107,7 @@ public class DiskBrowser extends JFrame implements DiskSelectionListener, QuitLi
     menuHandler.showLayoutItem.setAction (hideLayoutAction);
     menuHandler.showFreeSectorsItem.setAction (showFreeAction);
     menuHandler.duplicateItem.setAction (duplicateAction);
+    menuHandler.searchItem.setAction (searchAction);
     menuHandler.closeTabItem.setAction (closeTabAction);
 
     final QuitAction quitAction = Platform.setQuit (this, prefs, menuHandler.fileMenu);
@@ -116,6 +118,7 @@ public class DiskBrowser extends JFrame implements DiskSelectionListener, QuitLi
     quitAction.addQuitListener (this);
 
     catalogPanel.setDuplicateAction (duplicateAction);
+    catalogPanel.setSearchAction (searchAction);
     catalogPanel.setCloseTabAction (closeTabAction);
 
     pack ();
@@ -0,0 +1,190 @@
+package com.bytezone.diskbrowser.gui;
+
+import java.io.File;
+import java.lang.ref.SoftReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.bytezone.diskbrowser.disk.AppleDisk;
+import com.bytezone.diskbrowser.disk.Disk;
+import com.bytezone.diskbrowser.disk.FormattedDisk;
+
+/***********************************************************************************************
+ * Keeps the disks that have been opened from the Disk Tree, so that selecting a disk again
+ * doesn't read it again. The disks are held strongly up to a budget of (estimated) bytes
+ * of heap, in which a large image that is mapped from its file only counts its overhead,
+ * and the least recently used ones beyond that are only held by soft references, which
+ * the garbage collector clears when it needs the space. The budget is a quarter of the
+ * maximum heap unless the diskbrowser.cache property gives a size in megabytes.
+ * A disk is forgotten when its file is changed.
+ ***********************************************************************************************/
+
+class DiskCache
+{
+  private static final int OVERHEAD = 16 * 1024;    // catalog, file objects etc per disk
+  private static final int WEIGHT_FACTOR = 2;       // the image plus what's parsed from it
+  private static final int BLOCK_OVERHEAD = 64;     // address, sector type etc per block
+  private static final double MIN_FREE_MEMORY = 0.25;      // fraction of the maximum heap
+
+  private final long budget;
+  private final Map<String, CacheEntry> entries =
+      new LinkedHashMap<String, CacheEntry> (64, 0.75f, true);   // least recent first
+  private long weight;                    // of the disks that are held strongly
+
+  public DiskCache ()
+  {
+    this (getDefaultBudget ());
+  }
+
+  public DiskCache (long budget)
+  {
+    this.budget = budget;
+  }
+
+  private static long getDefaultBudget ()
+  {
+    long megabytes = Long.getLong ("diskbrowser.cache", 0);
+    return megabytes > 0 ? megabytes * 1024 * 1024 : Runtime.getRuntime ().maxMemory () / 4;
+  }
+
+  // returns the disk if it is still in the cache, or null
+  public synchronized FormattedDisk get (File file)
+  {
+    String path = file.getAbsolutePath ();
+    CacheEntry entry = entries.get (path);
+    if (entry == null)
+      return null;
+
+    if (!entry.isCurrent (file))
+    {
+      remove (path, entry);
+      return null;
+    }
+
+    if (entry.disk != null)
+      return entry.disk;
+
+    FormattedDisk disk = entry.softDisk.get ();
+    if (disk == null)
+    {
+      entries.remove (path);
+      return null;
+    }
+
+    entry.disk = disk;                    // it's in use again
+    weight += entry.weight;
+    trim ();
+    return disk;
+  }
+
+  public synchronized boolean contains (File file)
+  {
+    CacheEntry entry = entries.get (file.getAbsolutePath ());
+    return entry != null && (entry.disk != null || entry.softDisk.get () != null);
+  }
+
+  // adds a disk that has just been read (or created)
+  public synchronized void put (File file, FormattedDisk disk)
+  {
+    add (file, disk);
+  }
+
+  // replaces a disk only if it is already in the cache
+  public synchronized boolean replace (File file, FormattedDisk disk)
+  {
+    if (!entries.containsKey (file.getAbsolutePath ()))
+      return false;
+    add (file, disk);
+    return true;
+  }
+
+  private void add (File file, FormattedDisk disk)
+  {
+    String path = file.getAbsolutePath ();
+    CacheEntry entry = entries.get (path);
+    if (entry != null)
+      remove (path, entry);
+
+    entry = new CacheEntry (file, disk);
+    entries.put (path, entry);
+    weight += entry.weight;
+    trim ();
+  }
+
+  private void remove (String path, CacheEntry entry)
+  {
+    if (entry.disk != null)
+      weight -= entry.weight;
+    entries.remove (path);
+  }
+
+  // demotes the least recently used disks until the rest fit the budget
+  private void trim ()
+  {
+    long limit = isMemoryShort () ? budget / 2 : budget;
+    Iterator<CacheEntry> iterator = entries.values ().iterator ();
+    while (weight > limit && iterator.hasNext ())
+    {
+      CacheEntry entry = iterator.next ();
+      if (!iterator.hasNext ())
+        break;                            // always keep the latest disk
+      if (entry.disk == null)
+        continue;
+      entry.disk = null;
+      weight -= entry.weight;
+    }
+
+    // forget the disks that have already been collected
+    iterator = entries.values ().iterator ();
+    while (iterator.hasNext ())
+    {
+      CacheEntry entry = iterator.next ();
+      if (entry.disk == null && entry.softDisk.get () == null)
+        iterator.remove ();
+    }
+  }
+
+  public synchronized void clear ()
+  {
+    entries.clear ();
+    weight = 0;
+  }
+
+  static boolean isMemoryShort ()
+  {
+    Runtime runtime = Runtime.getRuntime ();
+    long used = runtime.totalMemory () - runtime.freeMemory ();
+    return runtime.maxMemory () - used < runtime.maxMemory () * MIN_FREE_MEMORY;
+  }
+
+  private static class CacheEntry
+  {
+    final long modified;
+    final long length;
+    final long weight;
+    final SoftReference<FormattedDisk> softDisk;
+    FormattedDisk disk;                   // null once the entry has been evicted
+
+    CacheEntry (File file, FormattedDisk disk)
+    {
+      this.modified = file.lastModified ();
+      this.length = file.length ();
+      this.disk = disk;
+      this.softDisk = new SoftReference<FormattedDisk> (disk);
+
+      // a mapped image isn't on the heap, so only what is parsed from it counts
+      Disk image = disk.getDisk ();
+      if (image instanceof AppleDisk && ((AppleDisk) image).isMapped ())
+        weight = (long) image.getTotalBlocks () * BLOCK_OVERHEAD + OVERHEAD;
+      else
+        weight = (long) image.getTotalBlocks () * image.getBlockSize () * WEIGHT_FACTOR
+            + OVERHEAD;
+    }
+
+    boolean isCurrent (File file)
+    {
+      return file.lastModified () == modified && file.length () == length;
+    }
+  }
+}
\ No newline at end of file
@@ -2,17 +2,19 @@ package com.bytezone.diskbrowser.gui;
 
 import java.io.File;
 
-import com.bytezone.common.ComputeCRC32;
+import com.bytezone.diskbrowser.gui.CatalogIndex.DigestRecord;
 
 class DiskDetails
 {
   private final File file;
-  private long checksum = -1;
+  private final DigestRecord digests;
   boolean duplicate;
+  boolean sameFile;         // the file is identical, not just the image inside it
 
-  public DiskDetails (File file)
+  public DiskDetails (File file, DigestRecord digests)
   {
     this.file = file;
+    this.digests = digests;
     duplicate = false;
   }
 
@@ -21,11 +23,10 @@ class DiskDetails
     return file.getAbsolutePath ();
   }
 
-  public long getChecksum ()
+  // enough of the image digest to tell groups apart
+  public String getChecksum ()
   {
-    if (checksum < 0)
-      checksum = ComputeCRC32.getChecksumValue (file);
-    return checksum;
+    return digests.imageDigest.substring (0, 16);
   }
 
   public boolean delete ()
@@ -5,33 +5,66 @@ import java.awt.Cursor;
 import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
-import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.event.InputEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.swing.JPanel;
 import javax.swing.Scrollable;
 import javax.swing.SwingConstants;
 
-import com.bytezone.diskbrowser.disk.Disk;
 import com.bytezone.diskbrowser.disk.DiskAddress;
 import com.bytezone.diskbrowser.disk.FormattedDisk;
 import com.bytezone.diskbrowser.disk.SectorType;
 import com.bytezone.diskbrowser.gui.DiskLayoutPanel.LayoutDetails;
 import com.bytezone.diskbrowser.gui.RedoHandler.RedoEvent;
 
+/***********************************************************************************************
+ * Draws the disk's sectors as a grid of coloured blocks. The grid is drawn in bands of
+ * TILE_ROWS rows, and each band is kept as an image so that scrolling and repainting
+ * only copy the images. A band is drawn again only when the disk, the free sector
+ * display or the selection within it changes.
+ * In an overview each cell is coloured by the most common sector type of its blocks. The
+ * type of each block is read once per disk, and each zoom level is summarised from it
+ * the first time it is shown.
+ ***********************************************************************************************/
+
 class DiskLayoutImage extends JPanel implements Scrollable
 {
   static final Cursor crosshairCursor = new Cursor (Cursor.CROSSHAIR_CURSOR);
+  private static final int TILE_ROWS = 32;
+  private static final int MAX_TILES = 16;         // enough to fill a large screen
+
   FormattedDisk disk;
   LayoutDetails layoutDetails;
   private boolean showFreeSectors;
   DiskLayoutSelection selectionHandler = new DiskLayoutSelection ();
+  private BitSet selectedBlocks = new BitSet ();
   boolean redo;
 
+  // the bands that have been drawn, least recently used first
+  private final Map<Integer, BufferedImage> tiles =
+      new LinkedHashMap<Integer, BufferedImage> (MAX_TILES, 0.75f, true)
+      {
+        @Override
+        protected boolean removeEldestEntry (Map.Entry<Integer, BufferedImage> eldest)
+        {
+          return size () > MAX_TILES;
+        }
+      };
+  private double tileScale = 1;                   // for high resolution screens
+
+  private byte[] blockTypes;                      // index into the disk's sector types
+  private final Map<Integer, byte[]> overviews = new HashMap<Integer, byte[]> ();
+
   // set defaults (used until a real disk is set)
   int bw = 30;
   int bh = 15;
@@ -49,6 +82,16 @@ class DiskLayoutImage extends JPanel implements Scrollable
   public void setDisk (FormattedDisk disk, LayoutDetails details)
   {
     this.disk = disk;
+    blockTypes = null;
+    overviews.clear ();
+    selectionHandler.setSelection (null);
+    selectedBlocks.clear ();
+    setLayout (details);
+  }
+
+  // changes the zoom level without losing the selection
+  void setLayout (LayoutDetails details)
+  {
     layoutDetails = details;
 
     //    System.out.println (details);
@@ -60,20 +103,23 @@ class DiskLayoutImage extends JPanel implements Scrollable
     gh = layoutDetails.grid.height;
 
     setPreferredSize (new Dimension (gw * bw + 1, gh * bh + 1));
-    selectionHandler.setSelection (null);
+    tiles.clear ();
 
+    revalidate ();
     repaint ();
   }
 
   public void setShowFreeSectors (boolean showFree)
   {
     showFreeSectors = showFree;
+    tiles.clear ();
     repaint ();
   }
 
   void setSelection (List<DiskAddress> sectors)
   {
     selectionHandler.setSelection (sectors);
+    selectionChanged ();
     if (sectors != null && sectors.size () > 0)
     {
       DiskAddress da = sectors.size () == 1 ? sectors.get (0) : sectors.get (1);
@@ -82,6 +128,28 @@ class DiskLayoutImage extends JPanel implements Scrollable
     repaint ();
   }
 
+  // only the bands with blocks that have been selected or deselected are drawn again
+  private void selectionChanged ()
+  {
+    BitSet newBlocks = new BitSet ();
+    for (DiskAddress da : selectionHandler)
+      if (da != null)
+        newBlocks.set (da.getBlock ());
+
+    BitSet changedBlocks = (BitSet) newBlocks.clone ();
+    changedBlocks.xor (selectedBlocks);
+    selectedBlocks = newBlocks;
+
+    int blocksPerTile = gw * TILE_ROWS * layoutDetails.blocksPerCell;
+    int block = changedBlocks.nextSetBit (0);
+    while (block >= 0)
+    {
+      int tileNo = block / blocksPerTile;
+      tiles.remove (tileNo);
+      block = changedBlocks.nextSetBit ((tileNo + 1) * blocksPerTile);   // next band
+    }
+  }
+
   @Override
   protected void paintComponent (Graphics g)
   {
@@ -95,54 +163,150 @@ class DiskLayoutImage extends JPanel implements Scrollable
       return;
 
     Rectangle clipRect = g.getClipBounds ();
+    double scale = ((Graphics2D) g).getTransform ().getScaleX ();
+    if (scale != tileScale)
+    {
+      tileScale = scale;
+      tiles.clear ();
+    }
 
-    Point p1 = new Point (clipRect.x / bw * bw, clipRect.y / bh * bh);
-    Point p2 =
-        new Point ((clipRect.x + clipRect.width - 1) / bw * bw, (clipRect.y
-            + clipRect.height - 1)
-            / bh * bh);
+    int tileHeight = TILE_ROWS * bh;
+    int firstTile = clipRect.y / tileHeight;
+    int lastTile = Math.min ((clipRect.y + clipRect.height - 1) / tileHeight,
+                             (gh - 1) / TILE_ROWS);
 
-    //    System.out.printf ("gw=%d, gh=%d, bw=%d, bh=%d%n", gw, gh, bw, bh);
-    // int totalBlocks = 0;
-    int maxBlock = gw * gh;
-    //    System.out.printf ("Max blocks: %d%n", maxBlock);
-    Disk d = disk.getDisk ();
-    List<DiskAddress> selectedBlocks = selectionHandler.getHighlights ();
+    // each band overlaps the next by one line, which belongs to the upper band
+    for (int tileNo = lastTile; tileNo >= firstTile; tileNo--)
+    {
+      BufferedImage tile = tiles.get (tileNo);
+      if (tile == null)
+      {
+        tile = drawTile (tileNo);
+        tiles.put (tileNo, tile);
+      }
+      g.drawImage (tile, 0, tileNo * tileHeight, gw * bw + 1, tileHeight + 1, null);
+    }
+  }
+
+  private BufferedImage drawTile (int tileNo)
+  {
+    int width = gw * bw + 1;
+    int height = TILE_ROWS * bh + 1;
+    BufferedImage tile = new BufferedImage ((int) Math.ceil (width * tileScale),
+        (int) Math.ceil (height * tileScale), BufferedImage.TYPE_INT_RGB);
 
+    Graphics2D g = tile.createGraphics ();
+    g.scale (tileScale, tileScale);
+    g.setColor (getBackground ());
+    g.fillRect (0, 0, width, height);
+
+    if (layoutDetails.isOverview ())
+    {
+      drawOverview (g, tileNo);
+      g.dispose ();
+      return tile;
+    }
+
+    int maxBlock = gw * gh;
     // this stops an index error when using alt-5 to switch to 512-byte blocks
-    if (maxBlock > d.getTotalBlocks ())
-      maxBlock = d.getTotalBlocks ();
+    if (maxBlock > disk.getDisk ().getTotalBlocks ())
+      maxBlock = disk.getDisk ().getTotalBlocks ();
+
+    int firstRow = tileNo * TILE_ROWS;
+    for (int row = 0; row < TILE_ROWS; row++)
+      for (int column = 0; column < gw; column++)
+      {
+        int blockNo = (firstRow + row) * gw + column;
+        if (blockNo >= maxBlock)
+          break;
+        boolean flag = showFreeSectors && disk.isSectorFree (blockNo);
+        drawBlock (g, blockNo, column * bw, row * bh, flag, selectedBlocks.get (blockNo));
+      }
+
+    g.dispose ();
+    return tile;
+  }
 
-    for (int y = p1.y; y <= p2.y; y += bh)
-      for (int x = p1.x; x <= p2.x; x += bw)
+  private void drawOverview (Graphics2D g, int tileNo)
+  {
+    int blocksPerCell = layoutDetails.blocksPerCell;
+    byte[] cellTypes = getOverview (blocksPerCell);
+    List<SectorType> types = disk.getSectorTypeList ();
+
+    int firstRow = tileNo * TILE_ROWS;
+    for (int row = 0; row < TILE_ROWS; row++)
+      for (int column = 0; column < gw; column++)
       {
-        int blockNo = y / bh * gw + x / bw;
-        if (blockNo < maxBlock)
+        int cell = (firstRow + row) * gw + column;
+        if (cell >= cellTypes.length)
+          break;
+
+        SectorType type = types.get (cellTypes[cell]);
+        int x = column * bw;
+        int y = row * bh;
+        if (type.colour != Color.WHITE)
         {
-          DiskAddress da = d.getDiskAddress (blockNo);
-          boolean flag = showFreeSectors && disk.isSectorFree (da);
-          boolean selected = selectedBlocks.contains (da);
-          drawBlock ((Graphics2D) g, blockNo, x, y, flag, selected);
-          // totalBlocks++;
+          g.setColor (type.colour);
+          g.fillRect (x, y, bw, bh);
+        }
+
+        // mark the cells that hold any selected blocks
+        int firstBlock = cell * blocksPerCell;
+        int selected = selectedBlocks.nextSetBit (firstBlock);
+        if (selected >= 0 && selected < firstBlock + blocksPerCell)
+        {
+          g.setColor (getContrastColor (type));
+          g.fillRect (x + 1, y + 1, bw - 2, bh - 2);
         }
       }
   }
 
+  // the most common sector type in each group of blocks
+  private byte[] getOverview (int blocksPerCell)
+  {
+    byte[] cellTypes = overviews.get (blocksPerCell);
+    if (cellTypes != null)
+      return cellTypes;
+
+    List<SectorType> types = disk.getSectorTypeList ();
+    int totalBlocks = disk.getDisk ().getTotalBlocks ();
+    if (blockTypes == null)
+    {
+      blockTypes = new byte[totalBlocks];
+      for (int block = 0; block < totalBlocks; block++)
+        blockTypes[block] = (byte) Math.max (0, types.indexOf (disk.getSectorType (block)));
+    }
+
+    cellTypes = new byte[(totalBlocks - 1) / blocksPerCell + 1];
+    int[] counts = new int[types.size ()];
+    for (int cell = 0; cell < cellTypes.length; cell++)
+    {
+      Arrays.fill (counts, 0);
+      int first = cell * blocksPerCell;
+      int last = Math.min (first + blocksPerCell, totalBlocks);
+      int best = blockTypes[first];
+      for (int block = first; block < last; block++)
+        if (++counts[blockTypes[block]] > counts[best])
+          best = blockTypes[block];
+      cellTypes[cell] = (byte) best;
+    }
+
+    overviews.put (blocksPerCell, cellTypes);
+    return cellTypes;
+  }
+
   private void drawBlock (Graphics2D g, int blockNo, int x, int y, boolean flagFree,
       boolean selected)
   {
     SectorType type = disk.getSectorType (blockNo);
     int offset = (bw - 4) / 2 + 1;
 
-    Rectangle rect = new Rectangle (x, y, bw, bh);
-    //    System.out.printf ("Rect: %4d %4d %4d %4d%n", x, y, bw, bh);
-
     // draw frame
     if (true) // this needs to draw the outside rectangle, and show less white space
     // between blocks
     {
       g.setColor (Color.GRAY);
-      g.drawRect (rect.x, rect.y, rect.width, rect.height);
+      g.drawRect (x, y, bw, bh);
     }
 
     // draw coloured block
@@ -152,23 +316,23 @@ class DiskLayoutImage extends JPanel implements Scrollable
       // this is weird, the retina OSX screen needs the second fillRect
       // see also DiskLegendPanel.paint()
       if (false)
-        g.fillRect (rect.x + 2, rect.y + 2, rect.width - 3, rect.height - 3);
+        g.fillRect (x + 2, y + 2, bw - 3, bh - 3);
       else
-        g.fillRect (rect.x + 1, rect.y + 1, rect.width - 2, rect.height - 2);
+        g.fillRect (x + 1, y + 1, bw - 2, bh - 2);
     }
 
     // draw an indicator in free blocks
     if (flagFree)
     {
       g.setColor (getContrastColor (type));
-      g.drawOval (rect.x + offset - 2, rect.y + 4, 7, 7);
+      g.drawOval (x + offset - 2, y + 4, 7, 7);
     }
 
     // draw an indicator in selected blocks
     if (selected)
     {
       g.setColor (getContrastColor (type));
-      g.fillOval (rect.x + offset, rect.y + 6, 3, 3);
+      g.fillOval (x + offset, y + 6, 3, 3);
     }
   }
 
@@ -255,6 +419,9 @@ class DiskLayoutImage extends JPanel implements Scrollable
     @Override
     public void mouseClicked (MouseEvent e)
     {
+      if (layoutDetails.isOverview ())
+        return;                     // DiskLayoutPanel zooms in instead
+
       int x = e.getX () / bw;
       int y = e.getY () / bh;
       int blockNo = y * gw + x;
@@ -264,6 +431,7 @@ class DiskLayoutImage extends JPanel implements Scrollable
       boolean append = ((e.getModifiersEx () & InputEvent.CTRL_DOWN_MASK) > 0);
 
       selectionHandler.doClick (disk.getDisk (), da, extend, append);
+      selectionChanged ();
       fireSectorSelectionEvent ();
       repaint ();
     }
@@ -6,12 +6,15 @@ import static javax.swing.ScrollPaneConstants.VERTICAL_SCROLLBAR_ALWAYS;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.InputEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
 
 import javax.swing.JComponent;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
+import javax.swing.SwingUtilities;
 
 import com.bytezone.common.FontAction.FontChangeEvent;
 import com.bytezone.common.FontAction.FontChangeListener;
@@ -26,6 +29,10 @@ class DiskLayoutPanel extends JPanel implements DiskSelectionListener, FileSelec
       RedoListener, FontChangeListener
 {
   private static final int SIZE = 15; // basic unit of a display block
+  private static final int OVERVIEW_CELL = 4;       // pixels in each overview cell
+  private static final int OVERVIEW_BLOCKS = 4096;  // smaller disks don't need an overview
+  private static final int LARGE_DISK = 16384;      // start in the overview
+  private static final int OVERVIEW_HEIGHT = 256;   // the most zoomed out overview
 
   private final DiskLayoutImage image;
   private final ScrollRuler verticalRuler;
@@ -33,6 +40,7 @@ class DiskLayoutPanel extends JPanel implements DiskSelectionListener, FileSelec
   private final DiskLegendPanel legendPanel;
   private final JScrollPane sp;
   private LayoutDetails layout;
+  private int zoom;       // 0 is the block view, otherwise an overview (see LayoutDetails)
 
   public DiskLayoutPanel ()
   {
@@ -60,6 +68,28 @@ class DiskLayoutPanel extends JPanel implements DiskSelectionListener, FileSelec
     // this is just so the pack is correct
     add (sp, BorderLayout.CENTER);
     add (legendPanel, BorderLayout.SOUTH);
+
+    // ctrl-wheel zooms in and out of the overview, and a click in the overview zooms in
+    MouseAdapter zoomListener = new MouseAdapter ()
+    {
+      @Override
+      public void mouseWheelMoved (MouseWheelEvent e)
+      {
+        if ((e.getModifiersEx () & InputEvent.CTRL_DOWN_MASK) != 0 && image.disk != null)
+          setZoom (zoom + (e.getWheelRotation () > 0 ? 1 : -1), e.getPoint ());
+        else
+          sp.dispatchEvent (SwingUtilities.convertMouseEvent (image, e, sp));
+      }
+
+      @Override
+      public void mouseClicked (MouseEvent e)
+      {
+        if (zoom > 0)
+          setZoom (0, e.getPoint ());
+      }
+    };
+    image.addMouseWheelListener (zoomListener);
+    image.addMouseListener (zoomListener);
   }
 
   public DiskLayoutPanel (FormattedDisk disk)
@@ -70,11 +100,12 @@ class DiskLayoutPanel extends JPanel implements DiskSelectionListener, FileSelec
 
   public void setDisk (final FormattedDisk disk)
   {
-    layout = new LayoutDetails (disk);
+    zoom = disk.getDisk ().getTotalBlocks () > LARGE_DISK ? 1 : 0;
+    layout = new LayoutDetails (disk, zoom);
     image.setDisk (disk, layout);
     verticalRuler.setLayout (layout);
     horizontalRuler.setLayout (layout);
-    legendPanel.setDisk (disk, layout);
+    legendPanel.setDisk (disk, new LayoutDetails (disk));
     sp.setViewportView (image); // this is the only way I know of to force a refresh
 
     setLayout (new BorderLayout ());
@@ -95,10 +126,11 @@ class DiskLayoutPanel extends JPanel implements DiskSelectionListener, FileSelec
       @Override
       public void actionPerformed (ActionEvent e)
       {
-        LayoutDetails layout = new LayoutDetails (disk);
+        zoom = Math.min (zoom, getMaxZoom (disk));
+        layout = new LayoutDetails (disk, zoom);
         image.setDisk (disk, layout);
 
-        legendPanel.layoutDetails = layout;
+        legendPanel.layoutDetails = new LayoutDetails (disk);
         legendPanel.repaint ();
 
         verticalRuler.setLayout (layout);
@@ -109,6 +141,43 @@ class DiskLayoutPanel extends JPanel implements DiskSelectionListener, FileSelec
     repaint ();
   }
 
+  /*
+   * Changes the zoom level while keeping the block under the point in the same place in
+   * the viewport.
+   */
+  private void setZoom (int newZoom, Point point)
+  {
+    newZoom = Math.max (0, Math.min (newZoom, getMaxZoom (image.disk)));
+    if (newZoom == zoom)
+      return;
+
+    int block = layout.getBlock (point);
+    Rectangle view = sp.getViewport ().getViewRect ();
+
+    zoom = newZoom;
+    layout = new LayoutDetails (image.disk, zoom);
+    image.setLayout (layout);
+    verticalRuler.setLayout (layout);
+    horizontalRuler.setLayout (layout);
+    sp.validate ();
+
+    Rectangle location = layout.getLocation (block);
+    image.scrollRectToVisible (new Rectangle (location.x - (point.x - view.x),
+        location.y - (point.y - view.y), view.width, view.height));
+  }
+
+  // each level halves the size of the overview, until it fits in a small window
+  private int getMaxZoom (FormattedDisk disk)
+  {
+    if (disk.getDisk ().getTotalBlocks () <= OVERVIEW_BLOCKS)
+      return 0;
+
+    int maxZoom = 1;
+    while (new LayoutDetails (disk, maxZoom).grid.height * OVERVIEW_CELL > OVERVIEW_HEIGHT)
+      ++maxZoom;
+    return maxZoom;
+  }
+
   public void setHex (boolean hex)
   {
     verticalRuler.setHex (hex);
@@ -152,10 +221,16 @@ class DiskLayoutPanel extends JPanel implements DiskSelectionListener, FileSelec
     image.setSelection (event.file.getSectors ());
   }
 
+  /*
+   * The size of each cell in the layout, and the number of rows and columns. In the
+   * block view each cell is one block. In an overview each cell is a few pixels square,
+   * the grid is as wide as the block view, and each cell holds 2^(zoom-1) blocks.
+   */
   class LayoutDetails
   {
     Dimension block;
     Dimension grid;
+    int blocksPerCell = 1;
 
     public LayoutDetails (FormattedDisk formattedDisk)
     {
@@ -164,15 +239,46 @@ class DiskLayoutPanel extends JPanel implements DiskSelectionListener, FileSelec
       grid = formattedDisk.getGridLayout ();
     }
 
+    public LayoutDetails (FormattedDisk formattedDisk, int zoom)
+    {
+      this (formattedDisk);
+      if (zoom == 0)
+        return;
+
+      int columns = block.width * grid.width / OVERVIEW_CELL;
+      blocksPerCell = 1 << (zoom - 1);
+      int cells = (formattedDisk.getDisk ().getTotalBlocks () - 1) / blocksPerCell + 1;
+      block = new Dimension (OVERVIEW_CELL, OVERVIEW_CELL);
+      grid = new Dimension (columns, (cells - 1) / columns + 1);
+    }
+
+    public boolean isOverview ()
+    {
+      return block.width == OVERVIEW_CELL;
+    }
+
     public Rectangle getLocation (DiskAddress da)
     {
-      int y = da.getBlock () / grid.width;
-      int x = da.getBlock () % grid.width;
+      return getLocation (da.getBlock ());
+    }
+
+    public Rectangle getLocation (int blockNo)
+    {
+      int cell = blockNo / blocksPerCell;
+      int y = cell / grid.width;
+      int x = cell % grid.width;
       Rectangle r =
             new Rectangle (x * block.width, y * block.height, block.width, block.height);
       return r;
     }
 
+    // the first block in the cell at the point
+    public int getBlock (Point point)
+    {
+      int x = Math.min (point.x / block.width, grid.width - 1);
+      return (point.y / block.height * grid.width + x) * blocksPerCell;
+    }
+
     @Override
     public String toString ()
     {
@@ -0,0 +1,187 @@
+package com.bytezone.diskbrowser.gui;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.SwingUtilities;
+
+import com.bytezone.diskbrowser.disk.DiskFactory;
+import com.bytezone.diskbrowser.disk.FormattedDisk;
+import com.bytezone.diskbrowser.gui.TreeBuilder.FileNode;
+
+/***********************************************************************************************
+ * Opens disks in the background so that the event thread is never waiting for a large
+ * image to be read and parsed. Only the most recent load () is reported to its listener.
+ * Any earlier load that hasn't started yet is cancelled, and one that has already
+ * started is allowed to finish (so that its FileNode keeps the disk) but is then ignored.
+ * A disk that is opened in its own tab is requested with open (), which is always
+ * reported and never replaces the current load. All the methods are called on the event
+ * thread, and so are the listeners.
+ ***********************************************************************************************/
+
+class DiskLoader
+{
+  private static final int THREADS = 2;
+
+  private final ThreadPoolExecutor executor;
+  private LoadRequest currentRequest;
+
+  public DiskLoader ()
+  {
+    executor = new ThreadPoolExecutor (THREADS, THREADS, 30, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<Runnable> (), new ThreadFactory ()
+        {
+          private int threadNo;
+
+          @Override
+          public Thread newThread (Runnable runnable)
+          {
+            Thread thread = new Thread (runnable, "DiskLoader-" + ++threadNo);
+            thread.setDaemon (true);
+            return thread;
+          }
+        });
+    executor.allowCoreThreadTimeOut (true);
+  }
+
+  /*
+   * Opens the node's disk in the background, and calls the listener when it is ready
+   * unless another request has been made in the meantime.
+   */
+  public Future<FormattedDisk> load (FileNode node, DiskLoadListener listener)
+  {
+    cancel ();
+    currentRequest = new LoadRequest (node, listener);
+    executor.execute (currentRequest);
+    return currentRequest;
+  }
+
+  /*
+   * Opens the node's disk in the background, and always calls the listener when it is
+   * ready. If the node is already being loaded the listener waits for that request.
+   */
+  public void open (FileNode node, DiskLoadListener listener)
+  {
+    if (currentRequest != null && currentRequest.node == node)
+    {
+      currentRequest.openListeners.add (listener);
+      return;
+    }
+
+    LoadRequest request = new LoadRequest (node, null);
+    request.openListeners.add (listener);
+    executor.execute (request);
+  }
+
+  // opens a disk that isn't in the tree, and passes a null node to the listener
+  public void open (String path, DiskLoadListener listener)
+  {
+    LoadRequest request = new LoadRequest (path);
+    request.openListeners.add (listener);
+    executor.execute (request);
+  }
+
+  // the current request's listener will not be called
+  public void cancel ()
+  {
+    if (currentRequest != null)
+    {
+      if (currentRequest.openListeners.isEmpty ())
+      {
+        currentRequest.cancel (false);
+        executor.purge ();
+      }
+      currentRequest = null;
+    }
+  }
+
+  public boolean isLoading ()
+  {
+    return currentRequest != null;
+  }
+
+  private class LoadRequest extends FutureTask<FormattedDisk>
+  {
+    final FileNode node;
+    final DiskLoadListener listener;          // only called if this is still current
+    final List<DiskLoadListener> openListeners = new ArrayList<DiskLoadListener> ();
+
+    LoadRequest (final FileNode node, DiskLoadListener listener)
+    {
+      super (new Callable<FormattedDisk> ()
+      {
+        @Override
+        public FormattedDisk call () throws Exception
+        {
+          return node.getFormattedDisk ();
+        }
+      });
+      this.node = node;
+      this.listener = listener;
+    }
+
+    LoadRequest (final String path)
+    {
+      super (new Callable<FormattedDisk> ()
+      {
+        @Override
+        public FormattedDisk call () throws Exception
+        {
+          return DiskFactory.createDisk (path);
+        }
+      });
+      this.node = null;
+      this.listener = null;
+    }
+
+    // called on the pool thread when the disk has been read
+    @Override
+    protected void done ()
+    {
+      if (isCancelled ())
+        return;
+
+      SwingUtilities.invokeLater (new Runnable ()
+      {
+        @Override
+        public void run ()
+        {
+          boolean current = LoadRequest.this == currentRequest;
+          if (!current && openListeners.isEmpty ())   // something else has been asked for
+            return;
+          if (current)
+            currentRequest = null;
+
+          FormattedDisk disk = null;
+          try
+          {
+            disk = get ();
+          }
+          catch (Exception e)
+          {
+            e.printStackTrace ();
+          }
+
+          for (DiskLoadListener openListener : openListeners)
+            openListener.diskLoaded (node, disk);
+          if (current)
+            listener.diskLoaded (node, disk);
+        }
+      });
+    }
+  }
+
+  interface DiskLoadListener
+  {
+    // the disk is null if the file could not be read, and the node is null if the disk
+    // was opened from its path
+    public void diskLoaded (FileNode node, FormattedDisk disk);
+  }
+}
\ No newline at end of file
@@ -0,0 +1,103 @@
+package com.bytezone.diskbrowser.gui;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.tree.DefaultMutableTreeNode;
+
+import com.bytezone.diskbrowser.gui.TreeBuilder.FileNode;
+
+/***********************************************************************************************
+ * Opens the disks either side of the selected disk in the Disk Tree, so that stepping
+ * through a folder one disk at a time doesn't wait for each disk to be read. The disks
+ * are read on a single low priority thread, and are kept in the tree's DiskCache.
+ * Prefetching stops when the user jumps around the tree, and when memory is short.
+ ***********************************************************************************************/
+
+class DiskPrefetcher
+{
+  private static final int NEXT_DISKS = 3;
+  private static final int PREVIOUS_DISKS = 1;
+
+  private final ThreadPoolExecutor executor;
+  private DefaultMutableTreeNode lastNode;
+  private volatile int generation;        // prefetches from an older selection are ignored
+
+  public DiskPrefetcher ()
+  {
+    executor = new ThreadPoolExecutor (1, 1, 30, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<Runnable> (), new ThreadFactory ()
+        {
+          @Override
+          public Thread newThread (Runnable runnable)
+          {
+            Thread thread = new Thread (runnable, "DiskPrefetcher");
+            thread.setDaemon (true);
+            thread.setPriority (Thread.MIN_PRIORITY);
+            return thread;
+          }
+        });
+    executor.allowCoreThreadTimeOut (true);
+  }
+
+  // called on the event thread whenever a node in the Disk Tree is selected
+  public void selected (DefaultMutableTreeNode treeNode)
+  {
+    final int thisGeneration = ++generation;
+    executor.getQueue ().clear ();
+
+    // only prefetch while the user is stepping through a folder
+    boolean stepping = lastNode != null && (treeNode.getNextSibling () == lastNode
+        || treeNode.getPreviousSibling () == lastNode);
+    lastNode = treeNode;
+    if (!stepping || DiskCache.isMemoryShort ())
+      return;
+
+    final List<FileNode> nodes = new ArrayList<FileNode> ();
+    addSiblings (treeNode, true, NEXT_DISKS, nodes);
+    addSiblings (treeNode, false, PREVIOUS_DISKS, nodes);
+
+    for (final FileNode node : nodes)
+      executor.execute (new Runnable ()
+      {
+        @Override
+        public void run ()
+        {
+          if (thisGeneration != generation || DiskCache.isMemoryShort ())
+            return;
+          if (!node.isDiskLoaded ())
+            node.getFormattedDisk ();
+        }
+      });
+  }
+
+  private void addSiblings (DefaultMutableTreeNode treeNode, boolean forward, int total,
+      List<FileNode> nodes)
+  {
+    DefaultMutableTreeNode sibling = treeNode;
+    while (total > 0)
+    {
+      sibling = forward ? sibling.getNextSibling () : sibling.getPreviousSibling ();
+      if (sibling == null)
+        break;
+      FileNode node = (FileNode) sibling.getUserObject ();
+      if (node.file.isDirectory ())
+        continue;
+      if (!node.isDiskLoaded ())
+        nodes.add (node);
+      --total;
+    }
+  }
+
+  // drop any prefetches that haven't started, eg when the tree is rebuilt
+  public void clear ()
+  {
+    ++generation;
+    executor.getQueue ().clear ();
+    lastNode = null;
+  }
+}
\ No newline at end of file
@@ -2,7 +2,6 @@ package com.bytezone.diskbrowser.gui;
 
 import java.util.EventObject;
 
-import com.bytezone.diskbrowser.disk.DiskFactory;
 import com.bytezone.diskbrowser.disk.FormattedDisk;
 
 public class DiskSelectedEvent extends EventObject
@@ -31,10 +30,4 @@ public class DiskSelectedEvent extends EventObject
   {
     return owner.getAbsolutePath ();
   }
-
-  public static DiskSelectedEvent create (Object source, String path)
-  {
-    FormattedDisk formattedDisk = DiskFactory.createDisk (path);
-    return formattedDisk == null ? null : new DiskSelectedEvent (source, formattedDisk);
-  }
 }
\ No newline at end of file
@@ -10,7 +10,6 @@ import java.awt.event.ActionListener;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 
 import javax.swing.*;
 
@@ -19,9 +18,11 @@ import com.bytezone.input.SpringUtilities;
 
 public class DuplicateAction extends DefaultAction
 {
-  Map<String, List<DiskDetails>> duplicateDisks;
+  List<List<DiskDetails>> duplicateDisks;
   int rootFolderLength;
   File rootFolder;
+  DirectoryScanner scanner;
+  CatalogIndex catalogIndex;
   DuplicateWindow window;
 
   public DuplicateAction ()
@@ -33,31 +34,50 @@ public class DuplicateAction extends DefaultAction
     setIcon (Action.LARGE_ICON_KEY, "save_delete_32.png");
   }
 
-  public void setDuplicates (File rootFolder, Map<String, List<DiskDetails>> duplicateDisks)
+  public void setDuplicates (File rootFolder, DirectoryScanner scanner,
+        CatalogIndex catalogIndex)
   {
-    this.duplicateDisks = duplicateDisks;
     this.rootFolderLength = rootFolder.getAbsolutePath ().length ();
     this.rootFolder = rootFolder;
-    setEnabled (duplicateDisks.size () > 0);
+    this.scanner = scanner;
+    this.catalogIndex = catalogIndex;
+
+    duplicateDisks = null;
+    if (window != null)
+    {
+      window.dispose ();
+      window = null;
+    }
+    setEnabled (true);
   }
 
   @Override
   public void actionPerformed (ActionEvent arg0)
   {
-    if (duplicateDisks == null)
+    if (window != null)
     {
-      System.out.println ("No duplicate disks found");
+      window.setVisible (true);
       return;
     }
 
-    if (window != null)
+    setEnabled (false);       // until the search has finished
+    new DuplicateWorker (rootFolder, scanner, catalogIndex).execute ();
+  }
+
+  void showDuplicates (List<List<DiskDetails>> duplicateDisks)
+  {
+    setEnabled (true);
+    if (duplicateDisks.size () == 0)
     {
-      window.setVisible (true);
+      JOptionPane.showMessageDialog (null, "No duplicate disks found", "Duplicates",
+            JOptionPane.INFORMATION_MESSAGE);
       return;
     }
+
+    this.duplicateDisks = duplicateDisks;
     window = new DuplicateWindow ();
-    for (List<DiskDetails> diskList : duplicateDisks.values ())
-      new DuplicateWorker (diskList, window).execute ();
+    for (List<DiskDetails> diskList : duplicateDisks)
+      window.addResult (diskList);
   }
 
   class DuplicateWindow extends JFrame
@@ -232,11 +252,10 @@ public class DuplicateAction extends DefaultAction
           add (new JLabel ("Source disk"));
         else
         {
-          String text = dd.duplicate ? "Duplicate" : "OK";
+          String text = dd.sameFile ? "Duplicate" : "Same image";
           add (new JLabel (text));
         }
-        String checksum =
-              dd.duplicate || count == 1 ? "" : " (checksum = " + dd.getChecksum () + ")";
+        String checksum = count == 1 ? " (checksum = " + dd.getChecksum () + ")" : "";
         add (new JLabel (dd.getAbsolutePath ().substring (folderNameLength) + checksum));
       }
       SpringUtilities.makeCompactGrid (this, duplicateDisks.size (), 3, //rows, cols
@@ -273,15 +292,19 @@ public class DuplicateAction extends DefaultAction
     }
   }
 
-  class DuplicateWorker extends SwingWorker<List<DiskDetails>, Void>
+  // searches the whole library, and then shows every group of duplicates in one window
+  class DuplicateWorker extends SwingWorker<List<List<DiskDetails>>, Void>
   {
-    List<DiskDetails> duplicateDisks;
-    DuplicateWindow owner;
+    File rootFolder;
+    DirectoryScanner scanner;
+    CatalogIndex catalogIndex;
 
-    public DuplicateWorker (List<DiskDetails> duplicateDisks, DuplicateWindow owner)
+    public DuplicateWorker (File rootFolder, DirectoryScanner scanner,
+          CatalogIndex catalogIndex)
     {
-      this.duplicateDisks = duplicateDisks;
-      this.owner = owner;
+      this.rootFolder = rootFolder;
+      this.scanner = scanner;
+      this.catalogIndex = catalogIndex;
     }
 
     @Override
@@ -289,26 +312,23 @@ public class DuplicateAction extends DefaultAction
     {
       try
       {
-        owner.addResult (get ());
+        if (rootFolder == DuplicateAction.this.rootFolder)    // still the same library
+          showDuplicates (get ());
       }
       catch (Exception e)
       {
         e.printStackTrace ();
+        setEnabled (true);
       }
     }
 
     @Override
-    protected List<DiskDetails> doInBackground () throws Exception
+    protected List<List<DiskDetails>> doInBackground () throws Exception
     {
-      long firstChecksum = -1;
-      for (DiskDetails dd : duplicateDisks)
-      {
-        if (firstChecksum < 0)
-          firstChecksum = dd.getChecksum ();
-        else
-          dd.duplicate = (dd.getChecksum () == firstChecksum);
-      }
-      return duplicateDisks;
+      List<List<DiskDetails>> duplicates =
+            new DuplicateFinder (scanner, catalogIndex).findDuplicates (rootFolder);
+      catalogIndex.save ();       // keep the digests for next time
+      return duplicates;
     }
   }
 }
\ No newline at end of file
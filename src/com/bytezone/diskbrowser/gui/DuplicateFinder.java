@@ -0,0 +1,271 @@
+package com.bytezone.diskbrowser.gui;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.bytezone.diskbrowser.disk.DiskFactory;
+import com.bytezone.diskbrowser.gui.CatalogIndex.DigestRecord;
+import com.bytezone.diskbrowser.gui.DirectoryScanner.Entry;
+import com.bytezone.diskbrowser.gui.LibraryIndex.FileProcessor;
+
+/***********************************************************************************************
+ * Finds the disks in the library that hold the same image. The disks are grouped by the
+ * length of their image, and only the groups with more than one disk are read. Each disk
+ * that is read gets a digest of its file and a digest of its image, and the digests are
+ * kept in the catalog index so that a disk is only read again when it changes.
+ * The image digest of a 16 sector floppy is the same whether the image is in DOS or
+ * Prodos order, so a .dsk and a .po copy of the same disk have the same digest, as do
+ * copies that have been compressed into a .gz or .sdk file.
+ ***********************************************************************************************/
+
+class DuplicateFinder
+{
+  private static final int FILES_PER_TASK = 8;
+  private static final char[] HEX = "0123456789abcdef".toCharArray ();
+  private static final List<String> containers = Arrays.asList ("sdk", "gz", "2mg");
+  private static final int FLOPPY_LENGTH = 143360;
+  private static final int TRACKS = 35;
+  private static final int SECTORS = 16;
+  // the Prodos order position of each DOS order sector, which also works the other way
+  private static final int[] prodosSector =
+      { 0, 14, 13, 12, 11, 10, 9, 8, 7, 6, 5, 4, 3, 2, 1, 15 };
+
+  private final DirectoryScanner scanner;
+  private final CatalogIndex catalogIndex;
+  private final Map<File, DigestRecord> digests = new ConcurrentHashMap<File, DigestRecord> ();
+
+  public DuplicateFinder (DirectoryScanner scanner, CatalogIndex catalogIndex)
+  {
+    this.scanner = scanner;
+    this.catalogIndex = catalogIndex;
+  }
+
+  /*
+   * Returns each group of disks that hold the same image. The first disk in each group
+   * is the one that the others are compared with.
+   */
+  public List<List<DiskDetails>> findDuplicates (File rootFolder)
+  {
+    List<Entry> disks = new ArrayList<Entry> ();
+    findDisks (rootFolder.toPath (), disks, new HashSet<Object> ());
+
+    // the length of a container's image isn't known until the container has been read
+    Map<Long, List<File>> lengths = new HashMap<Long, List<File>> ();
+    List<File> containerFiles = new ArrayList<File> ();
+    for (Entry entry : disks)
+      if (isContainer (entry.name))
+        containerFiles.add (entry.file);
+      else
+        add (lengths, entry.size, entry.file);
+
+    readDigests (containerFiles);
+    for (File file : containerFiles)
+    {
+      DigestRecord record = digests.get (file);
+      if (record != null && record.imageLength >= 0)
+        add (lengths, record.imageLength, file);
+    }
+
+    List<File> candidates = new ArrayList<File> ();
+    for (List<File> files : lengths.values ())
+      if (files.size () > 1)
+        candidates.addAll (files);
+    readDigests (candidates);
+
+    // group the candidates by image
+    Map<String, List<DigestRecord>> images = new HashMap<String, List<DigestRecord>> ();
+    for (File file : candidates)
+    {
+      DigestRecord record = digests.get (file);
+      if (record == null || record.imageLength < 0)
+        continue;
+      List<DigestRecord> list = images.get (record.imageDigest);
+      if (list == null)
+      {
+        list = new ArrayList<DigestRecord> ();
+        images.put (record.imageDigest, list);
+      }
+      list.add (record);
+    }
+
+    List<List<DiskDetails>> duplicates = new ArrayList<List<DiskDetails>> ();
+    for (List<DigestRecord> list : images.values ())
+      if (list.size () > 1)
+        duplicates.add (getDetails (list));
+
+    Collections.sort (duplicates, new Comparator<List<DiskDetails>> ()
+    {
+      @Override
+      public int compare (List<DiskDetails> list1, List<DiskDetails> list2)
+      {
+        return list1.get (0).getAbsolutePath ().compareTo (list2.get (0).getAbsolutePath ());
+      }
+    });
+    return duplicates;
+  }
+
+  private List<DiskDetails> getDetails (List<DigestRecord> list)
+  {
+    Collections.sort (list, new Comparator<DigestRecord> ()
+    {
+      @Override
+      public int compare (DigestRecord record1, DigestRecord record2)
+      {
+        return record1.path.compareTo (record2.path);
+      }
+    });
+
+    List<DiskDetails> details = new ArrayList<DiskDetails> ();
+    String firstDigest = list.get (0).fileDigest;
+    for (DigestRecord record : list)
+    {
+      DiskDetails dd = new DiskDetails (new File (record.path), record);
+      if (details.size () > 0)
+      {
+        dd.duplicate = true;
+        dd.sameFile = record.fileDigest.equals (firstDigest);
+      }
+      details.add (dd);
+    }
+    return details;
+  }
+
+  // each file is only added once, even if it can be reached through a link
+  private void findDisks (Path directory, List<Entry> disks, Set<Object> visited)
+  {
+    for (Entry entry : scanner.getFolder (directory).entries)
+    {
+      Object key = entry.fileKey == null ? entry.path : entry.fileKey;
+      if (entry.isDirectory)
+      {
+        if (visited.add (key))
+          findDisks (entry.path, disks, visited);
+      }
+      else if (TreeBuilder.isDiskFile (entry.name, entry.size) && visited.add (key))
+        disks.add (entry);
+    }
+  }
+
+  private boolean isContainer (String name)
+  {
+    return containers.contains (name.substring (name.lastIndexOf ('.') + 1).toLowerCase ());
+  }
+
+  private void add (Map<Long, List<File>> lengths, long length, File file)
+  {
+    List<File> files = lengths.get (length);
+    if (files == null)
+    {
+      files = new ArrayList<File> ();
+      lengths.put (length, files);
+    }
+    files.add (file);
+  }
+
+  private void readDigests (List<File> files)
+  {
+    LibraryIndex.readAll (files, FILES_PER_TASK, new FileProcessor ()
+    {
+      @Override
+      public void process (File file)
+      {
+        if (!digests.containsKey (file))
+          digests.put (file, getDigests (file));
+      }
+    });
+  }
+
+  private DigestRecord getDigests (File file)
+  {
+    DigestRecord record = catalogIndex.getDigests (file);
+    if (record != null)
+      return record;
+
+    int imageLength = -1;
+    String fileDigest = "";
+    String imageDigest = "";
+    try
+    {
+      byte[] contents = Files.readAllBytes (file.toPath ());
+      fileDigest = getDigest (contents);
+      byte[] image = DiskFactory.getImage (file, contents);
+      if (image != null)
+      {
+        imageLength = image.length;
+        imageDigest = getImageDigest (image);
+      }
+    }
+    catch (Exception e)
+    {
+      System.out.println ("Unable to read " + file + " : " + e.getMessage ());
+    }
+
+    record = new DigestRecord (file, imageLength, fileDigest, imageDigest);
+    catalogIndex.putDigests (record);
+    return record;
+  }
+
+  static String getDigest (byte[] buffer)
+  {
+    MessageDigest md = getMessageDigest ();
+    md.update (buffer);
+    return toHex (md.digest ());
+  }
+
+  /*
+   * A 16 sector floppy image is digested in the order it is stored and again with the
+   * sectors of each track swapped between DOS and Prodos order, and the lower of the two
+   * digests is kept. A copy in the other order gives the same pair of digests, but a disk
+   * with its sectors in any other order doesn't. Every other image is digested as it is.
+   */
+  private static String getImageDigest (byte[] image)
+  {
+    if (image.length != FLOPPY_LENGTH)
+      return getDigest (image);
+
+    MessageDigest md = getMessageDigest ();
+    for (int track = 0; track < TRACKS; track++)
+      for (int sector = 0; sector < SECTORS; sector++)
+        md.update (image, (track * SECTORS + prodosSector[sector]) * 256, 256);
+
+    String digest = getDigest (image);
+    String swappedDigest = toHex (md.digest ());
+    return swappedDigest.compareTo (digest) < 0 ? swappedDigest : digest;
+  }
+
+  private static MessageDigest getMessageDigest ()
+  {
+    try
+    {
+      return MessageDigest.getInstance ("SHA-256");
+    }
+    catch (NoSuchAlgorithmException e)
+    {
+      throw new RuntimeException (e);       // every Java platform has SHA-256
+    }
+  }
+
+  private static String toHex (byte[] bytes)
+  {
+    char[] text = new char[bytes.length * 2];
+    for (int i = 0; i < bytes.length; i++)
+    {
+      text[i * 2] = HEX[(bytes[i] >>> 4) & 0x0F];
+      text[i * 2 + 1] = HEX[bytes[i] & 0x0F];
+    }
+    return new String (text);
+  }
+}
\ No newline at end of file
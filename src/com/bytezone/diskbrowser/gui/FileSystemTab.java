@@ -10,8 +10,6 @@ package com.bytezone.diskbrowser.gui;
 import java.awt.Font;
 import java.io.File;
 import java.util.Enumeration;
-import java.util.List;
-import java.util.Map;
 
 import javax.swing.JTree;
 import javax.swing.event.TreeExpansionEvent;
@@ -22,7 +20,6 @@ import javax.swing.tree.DefaultMutableTreeNode;
 import javax.swing.tree.ExpandVetoException;
 import javax.swing.tree.TreePath;
 
-import com.bytezone.diskbrowser.disk.DiskFactory;
 import com.bytezone.diskbrowser.disk.FormattedDisk;
 import com.bytezone.diskbrowser.gui.RedoHandler.RedoEvent;
 import com.bytezone.diskbrowser.gui.TreeBuilder.FileNode;
@@ -30,34 +27,36 @@ import com.bytezone.diskbrowser.gui.TreeBuilder.FileNode;
 class FileSystemTab extends AbstractTab
 {
   File rootFolder;
-  Map<String, List<DiskDetails>> duplicateDisks;
+  final DirectoryScanner scanner = new DirectoryScanner ();
+  final CatalogIndex catalogIndex = new CatalogIndex ();
+  final DiskCache diskCache = new DiskCache ();
+  private final DiskPrefetcher prefetcher = new DiskPrefetcher ();
+  private TreeBuilder treeBuilder;
 
   public FileSystemTab (File folder, DiskAndFileSelector selector, RedoHandler navMan,
-        Font font, DiskSelectedEvent diskEvent) // throws NoDisksFoundException
+        Font font, String lastDiskUsed) // throws NoDisksFoundException
   {
     super (navMan, selector, font);
     this.rootFolder = folder;
 
-    TreeBuilder tb = new TreeBuilder (folder);
+    TreeBuilder tb = new TreeBuilder (folder, scanner, catalogIndex, diskCache);
+    treeBuilder = tb;
     //    if (tb.totalDisks == 0)
     //      throw new NoDisksFoundException ();
 
-    duplicateDisks = tb.duplicateDisks;
     setTree (tb.tree);
     setSelectionListener (tree);
 
-    if (diskEvent == null)
-    {
-      DefaultMutableTreeNode node = findFirstLeafNode ();
-      if (node != null)
-      {
-        FileNode fn = (FileNode) node.getUserObject ();
-        diskEvent = new DiskSelectedEvent (this, DiskFactory.createDisk (fn.file));
-      }
-    }
+    // the disk is read in the background when its node is shown
+    DefaultMutableTreeNode node = null;
+    if (!lastDiskUsed.isEmpty ())
+      node = findNode (lastDiskUsed);
+    if (node == null)
+      node = findFirstLeafNode ();
 
-    if (diskEvent != null)
-      navMan.diskSelected (diskEvent);
+    if (node != null)
+      navMan.fileNodeSelected (
+          new FileNodeSelectedEvent (this, (FileNode) node.getUserObject ()));
     else
       System.out.println ("No disk event");
 
@@ -85,7 +84,7 @@ class FileSystemTab extends AbstractTab
         Font font)
   // throws NoDisksFoundException
   {
-    this (folder, selector, navMan, font, null); // default to first available disk
+    this (folder, selector, navMan, font, ""); // default to first available disk
   }
 
   @Override
@@ -100,7 +99,11 @@ class FileSystemTab extends AbstractTab
   public void refresh ()
   {
     String currentDiskName = ((FileNode) getSelectedObject ()).file.getAbsolutePath ();
-    TreeBuilder tb = new TreeBuilder (rootFolder);
+    treeBuilder.cancel ();
+    prefetcher.clear ();
+    // only reads the folders that have changed
+    TreeBuilder tb = new TreeBuilder (rootFolder, scanner, catalogIndex, diskCache);
+    treeBuilder = tb;
     setTree (tb.tree);
     if (currentDiskName != null)
       showNode (findNode (currentDiskName));
@@ -128,6 +131,13 @@ class FileSystemTab extends AbstractTab
       System.out.println ("Disk node not found");
   }
 
+  // returns null if the disk isn't below the root folder
+  FileNode findFileNode (String absolutePath)
+  {
+    DefaultMutableTreeNode node = findNode (absolutePath);
+    return node == null ? null : (FileNode) node.getUserObject ();
+  }
+
   private DefaultMutableTreeNode findNode (String absolutePath)
   {
     DefaultMutableTreeNode rootNode = getRootNode ();
@@ -207,16 +217,20 @@ class FileSystemTab extends AbstractTab
     }
   }
 
-  private void setSelectionListener (JTree tree)
+  private void setSelectionListener (final JTree tree)
   {
     tree.addTreeSelectionListener (new TreeSelectionListener ()
     {
       @Override
       public void valueChanged (TreeSelectionEvent e)
       {
-        FileNode fn = (FileNode) getSelectedObject ();
-        if (fn != null)
-          eventHandler.fireDiskSelectionEvent (fn);
+        DefaultMutableTreeNode node =
+              (DefaultMutableTreeNode) tree.getLastSelectedPathComponent ();
+        if (node != null)
+        {
+          eventHandler.fireDiskSelectionEvent ((FileNode) node.getUserObject ());
+          prefetcher.selected (node);
+        }
       }
     });
 
@@ -0,0 +1,231 @@
+package com.bytezone.diskbrowser.gui;
+
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.swing.JPanel;
+import javax.swing.JViewport;
+import javax.swing.Scrollable;
+import javax.swing.SwingConstants;
+import javax.swing.UIManager;
+
+import com.bytezone.diskbrowser.HexFormatter;
+import com.bytezone.diskbrowser.disk.Disk;
+import com.bytezone.diskbrowser.disk.DiskAddress;
+
+/***********************************************************************************************
+ * Shows a hex dump in the same layout as HexFormatter.format (), but only formats the rows
+ * that are being painted. The bytes are read from the buffer as each row is drawn, or
+ * from the disk a sector at a time, so a whole disk can be scrolled without ever holding
+ * more than one row of text.
+ ***********************************************************************************************/
+
+class HexViewer extends JPanel implements Scrollable
+{
+  private static final int BYTES_PER_ROW = HexFormatter.BYTES_PER_LINE;
+  private static final int MARGIN = 5;              // same as the text areas
+  private static final int VISIBLE_ROWS = 10;
+  private static final int MAX_TEXT_ROWS = 65536;   // for printing
+
+  // buffer
+  private byte[] buffer;
+  private int offset;
+  private int length;
+
+  // disk
+  private Disk disk;
+  private List<DiskAddress> sectors;
+  private byte[] sectorBuffer;
+  private int currentSector = -1;
+
+  private int offsetDigits = 5;
+  private final char[] line = new char[HexFormatter.MAX_LINE_LENGTH];
+
+  private int lineHeight;
+  private int ascent;
+  private int charWidth;
+
+  public HexViewer ()
+  {
+    setBackground (UIManager.getColor ("TextArea.background"));
+    setForeground (UIManager.getColor ("TextArea.foreground"));
+    setFont (UIManager.getFont ("TextArea.font"));
+  }
+
+  public void setBuffer (byte[] buffer, int offset, int length)
+  {
+    clear ();
+    this.buffer = buffer;
+    this.offset = offset;
+    this.length = length;
+    updateSize ();
+  }
+
+  // the sectors are shown one after the other, as if they had been read into a buffer
+  public void setSectors (Disk disk, List<DiskAddress> sectors)
+  {
+    clear ();
+    this.disk = disk;
+    this.sectors = sectors;
+    sectorBuffer = new byte[disk.getBlockSize ()];
+    length = sectors.size () * disk.getBlockSize ();
+    updateSize ();
+  }
+
+  public void clear ()
+  {
+    buffer = null;
+    offset = 0;
+    length = 0;
+    disk = null;
+    sectors = null;
+    sectorBuffer = null;
+    currentSector = -1;
+  }
+
+  @Override
+  public void setFont (Font font)
+  {
+    super.setFont (font);
+    if (font == null)
+      return;
+
+    FontMetrics fm = getFontMetrics (font);
+    lineHeight = fm.getHeight ();
+    ascent = fm.getAscent ();
+    charWidth = fm.charWidth ('0');
+    updateSize ();
+  }
+
+  private void updateSize ()
+  {
+    offsetDigits = HexFormatter.getAddressDigits (offset + Math.max (length - 1, 0));
+
+    setPreferredSize (new Dimension (getColumns () * charWidth + MARGIN * 2,
+        getTotalRows () * lineHeight + MARGIN * 2));
+    revalidate ();
+    repaint ();
+  }
+
+  private int getColumns ()
+  {
+    return offsetDigits + 3 + BYTES_PER_ROW * 3 + 2 + BYTES_PER_ROW;
+  }
+
+  // the header plus one row for every 16 bytes
+  private int getTotalRows ()
+  {
+    return length == 0 ? 0 : (length - 1) / BYTES_PER_ROW + 2;
+  }
+
+  @Override
+  protected void paintComponent (Graphics g)
+  {
+    super.paintComponent (g);
+
+    int totalRows = getTotalRows ();
+    if (totalRows == 0)
+      return;
+
+    Rectangle clip = g.getClipBounds ();
+    int firstRow = Math.max ((clip.y - MARGIN) / lineHeight, 0);
+    int lastRow = Math.min ((clip.y + clip.height - MARGIN) / lineHeight, totalRows - 1);
+
+    g.setColor (getForeground ());
+    for (int row = firstRow; row <= lastRow; row++)
+    {
+      int lineLength = formatRow (row);
+      g.drawChars (line, 0, lineLength, MARGIN, MARGIN + row * lineHeight + ascent);
+    }
+  }
+
+  // formats a row into the line buffer, and returns its length
+  private int formatRow (int row)
+  {
+    if (row == 0)
+      return HexFormatter.formatHeader (line, offsetDigits);
+
+    int start = (row - 1) * BYTES_PER_ROW;
+    int count = Math.min (BYTES_PER_ROW, length - start);
+    if (sectors == null)
+      return HexFormatter.formatLine (line, buffer, offset + start, count, offset + start,
+                                      offsetDigits);
+
+    // a row never crosses a sector boundary
+    int blockSize = sectorBuffer.length;
+    int sector = start / blockSize;
+    if (sector != currentSector)
+    {
+      DiskAddress da = sectors.get (sector);
+      if (da == null)
+        Arrays.fill (sectorBuffer, (byte) 0);
+      else
+        disk.readSector (da, sectorBuffer, 0);
+      currentSector = sector;
+    }
+    return HexFormatter.formatLine (line, sectorBuffer, start % blockSize, count, start,
+                                    offsetDigits);
+  }
+
+  // the rows from the top of the view, for printing
+  public String getText ()
+  {
+    int totalRows = getTotalRows ();
+    if (totalRows == 0)
+      return "";
+
+    int firstRow = Math.max ((getVisibleRect ().y - MARGIN) / lineHeight, 1);
+    int lastRow = Math.min (firstRow + MAX_TEXT_ROWS, totalRows);
+
+    StringBuilder text = new StringBuilder ();
+    text.append (line, 0, formatRow (0));
+    for (int row = firstRow; row < lastRow; row++)
+    {
+      text.append ('\n');
+      text.append (line, 0, formatRow (row));
+    }
+    return text.toString ();
+  }
+
+  @Override
+  public Dimension getPreferredScrollableViewportSize ()
+  {
+    return new Dimension (getColumns () * charWidth + MARGIN * 2,
+        VISIBLE_ROWS * lineHeight + MARGIN * 2);
+  }
+
+  @Override
+  public int getScrollableUnitIncrement (Rectangle visibleRect, int orientation,
+      int direction)
+  {
+    return orientation == SwingConstants.HORIZONTAL ? charWidth : lineHeight;
+  }
+
+  @Override
+  public int getScrollableBlockIncrement (Rectangle visibleRect, int orientation,
+      int direction)
+  {
+    return orientation == SwingConstants.HORIZONTAL ? visibleRect.width
+        : Math.max (visibleRect.height - lineHeight, lineHeight);
+  }
+
+  // fill the viewport when the dump is smaller than it
+  @Override
+  public boolean getScrollableTracksViewportHeight ()
+  {
+    return getParent () instanceof JViewport
+        && getParent ().getHeight () > getPreferredSize ().height;
+  }
+
+  @Override
+  public boolean getScrollableTracksViewportWidth ()
+  {
+    return getParent () instanceof JViewport
+        && getParent ().getWidth () > getPreferredSize ().width;
+  }
+}
\ No newline at end of file
@@ -0,0 +1,185 @@
+package com.bytezone.diskbrowser.gui;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/***********************************************************************************************
+ * The parts of an index of the library that don't depend on what is indexed. The index
+ * is kept in a compressed file that starts with a magic number and a version, and an
+ * index with the wrong version is ignored and rebuilt. Saving writes a new copy of the
+ * file before replacing the old one, so a failed save never loses the index. The disks
+ * that have to be read are read in parallel by readAll ().
+ ***********************************************************************************************/
+
+abstract class LibraryIndex
+{
+  // reading disks is a mixture of waiting for the file system and parsing, so use a few
+  // more threads than there are processors
+  static final int THREADS = Math.max (4, Runtime.getRuntime ().availableProcessors ());
+
+  private final File indexFile;
+  private final int magic;
+  private final int version;
+  private final String description;
+  private boolean loaded;
+  protected volatile boolean changed;
+
+  LibraryIndex (File indexFile, int magic, int version, String description)
+  {
+    this.indexFile = indexFile;
+    this.magic = magic;
+    this.version = version;
+    this.description = description;
+  }
+
+  // reads everything after the magic number and version
+  abstract void readIndex (DataInputStream in) throws IOException;
+
+  abstract void writeIndex (DataOutputStream out) throws IOException;
+
+  // discards whatever was read before the index turned out to be damaged
+  abstract void clearIndex ();
+
+  protected synchronized void load ()
+  {
+    if (loaded)
+      return;
+    loaded = true;
+
+    DataInputStream in = null;
+    try
+    {
+      in = new DataInputStream (new BufferedInputStream (
+          new GZIPInputStream (new FileInputStream (indexFile))));
+      if (in.readInt () != magic || in.readInt () != version)
+      {
+        System.out.println ("Ignoring old " + description + " : " + indexFile);
+        return;
+      }
+      readIndex (in);
+    }
+    catch (FileNotFoundException e)
+    {
+      // no index yet
+    }
+    catch (IOException e)
+    {
+      System.out.println ("Unable to read " + description + " : " + e.getMessage ());
+      clearIndex ();
+    }
+    finally
+    {
+      close (in);
+    }
+  }
+
+  // writes a new copy of the index and then replaces the old one
+  public synchronized void save ()
+  {
+    if (!changed)
+      return;
+    changed = false;
+
+    File tempFile = new File (indexFile.getPath () + ".tmp");
+    DataOutputStream out = null;
+    try
+    {
+      out = new DataOutputStream (new BufferedOutputStream (
+          new GZIPOutputStream (new FileOutputStream (tempFile))));
+      out.writeInt (magic);
+      out.writeInt (version);
+      writeIndex (out);
+      out.close ();
+      out = null;
+
+      Files.move (tempFile.toPath (), indexFile.toPath (),
+                  StandardCopyOption.REPLACE_EXISTING);
+    }
+    catch (IOException e)
+    {
+      System.out.println ("Unable to save " + description + " : " + e.getMessage ());
+      changed = true;
+    }
+    finally
+    {
+      close (out);
+    }
+  }
+
+  static void close (Closeable stream)
+  {
+    if (stream != null)
+      try
+      {
+        stream.close ();
+      }
+      catch (IOException e)
+      {
+        e.printStackTrace ();
+      }
+  }
+
+  // passes every file to the processor, and returns when they have all been processed
+  static void readAll (List<File> files, int filesPerTask, FileProcessor processor)
+  {
+    ForkJoinPool pool = new ForkJoinPool (THREADS);
+    pool.invoke (new ReadTask (files, 0, files.size (), filesPerTask, processor));
+    pool.shutdown ();
+  }
+
+  interface FileProcessor
+  {
+    // called on several threads at once
+    public void process (File file);
+  }
+
+  // processes the files from first to last, splitting the work until each task is small
+  private static class ReadTask extends RecursiveAction
+  {
+    private final List<File> files;
+    private final int first;
+    private final int last;
+    private final int filesPerTask;
+    private final FileProcessor processor;
+
+    ReadTask (List<File> files, int first, int last, int filesPerTask,
+        FileProcessor processor)
+    {
+      this.files = files;
+      this.first = first;
+      this.last = last;
+      this.filesPerTask = filesPerTask;
+      this.processor = processor;
+    }
+
+    @Override
+    protected void compute ()
+    {
+      if (last - first <= filesPerTask)
+      {
+        for (int i = first; i < last; i++)
+          processor.process (files.get (i));
+        return;
+      }
+
+      int middle = (first + last) >>> 1;
+      invokeAll (new ReadTask (files, first, middle, filesPerTask, processor),
+                 new ReadTask (files, middle, last, filesPerTask, processor));
+    }
+  }
+}
\ No newline at end of file
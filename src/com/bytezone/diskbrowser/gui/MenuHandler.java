@@ -34,9 +34,13 @@ public class MenuHandler implements DiskSelectionListener, FileSelectionListener
   JMenuItem printItem = new JMenuItem ("Print output panel...");
   public final JMenuItem createCatalogFileItem = new JMenuItem ("Create catalog file...");
   public final JMenuItem createDiskFileItem = new JMenuItem ("Create disk file...");
-  JMenuItem dbItem = new JMenuItem (new CreateDatabaseAction ());
+  CreateDatabaseAction databaseAction = new CreateDatabaseAction ();
+  JMenuItem dbItem = new JMenuItem (databaseAction);
+  SharedFilesAction sharedFilesAction = new SharedFilesAction ();
+  JMenuItem sharedFilesItem = new JMenuItem (sharedFilesAction);
   JMenuItem closeTabItem = new JMenuItem ();
   JMenuItem duplicateItem = new JMenuItem ();
+  JMenuItem searchItem = new JMenuItem ();
   FontAction fontAction;
 
   // Format menu items
@@ -81,9 +85,11 @@ public class MenuHandler implements DiskSelectionListener, FileSelectionListener
     {
       fileMenu.add (createCatalogFileItem);
       fileMenu.add (createDiskFileItem);
-      fileMenu.add (dbItem);
     }
+    fileMenu.add (dbItem);
+    fileMenu.add (sharedFilesItem);
     fileMenu.add (duplicateItem);
+    fileMenu.add (searchItem);
 
     formatMenu.add (lineWrapItem);
     formatMenu.add (showCatalogItem);
@@ -119,8 +125,6 @@ public class MenuHandler implements DiskSelectionListener, FileSelectionListener
     interleaveGroup.add (interleave2Item);
     interleaveGroup.add (interleave3Item);
 
-    dbItem.setEnabled (false);
-
     // preferences
     lineWrapItem.setSelected (prefs.getBoolean (PREFS_LINE_WRAP, true));
     showLayoutItem.setSelected (prefs.getBoolean (PREFS_SHOW_LAYOUT, true));
@@ -204,6 +208,7 @@ public class MenuHandler implements DiskSelectionListener, FileSelectionListener
 
   private void adjustMenus (final FormattedDisk disk)
   {
+    sharedFilesAction.setDisk (disk);
     if (disk != null)
     {
       sector256Item.setSelected (disk.getDisk ().getBlockSize () == 256);
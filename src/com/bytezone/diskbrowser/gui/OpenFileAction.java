@@ -10,7 +10,6 @@ import javax.swing.KeyStroke;
 import javax.swing.filechooser.FileNameExtensionFilter;
 
 import com.bytezone.common.DefaultAction;
-import com.bytezone.diskbrowser.disk.DiskFactory;
 
 // I don't think this is needed anymore
 class OpenFileAction extends DefaultAction
@@ -42,7 +41,7 @@ class OpenFileAction extends DefaultAction
     {
       File file = chooser.getSelectedFile ();
       if (file != null)
-        catalogPanel.addDiskPanel (DiskFactory.createDisk (file.getAbsolutePath ()), null, true);
+        catalogPanel.openDiskPanel (file.getAbsolutePath (), null);
     }
   }
 }
\ No newline at end of file
@@ -17,6 +17,7 @@ class ScrollRuler extends JComponent
 
   public static final int HORIZONTAL = 0;
   public static final int VERTICAL = 1;
+  private static final int OVERVIEW_LABEL = 16;       // pixels between overview labels
   Font font = Platform.getFont (FontType.SANS_SERIF, FontSize.BASE);
 
   int orientation;
@@ -90,6 +91,9 @@ class ScrollRuler extends JComponent
 
   private void drawHorizontal (Graphics g, Rectangle clipRect, int width)
   {
+    if (layoutDetails.isOverview ())
+      return;                       // the columns are too narrow to number
+
     int start = (clipRect.x / width);
     int end = start + clipRect.width / width;
     end = Math.min (end, image.getWidth () / width - 1);
@@ -120,6 +124,16 @@ class ScrollRuler extends JComponent
 
     String format = isHex ? "%04X" : "%04d";
 
+    // an overview is labelled with the first block of every few rows
+    if (layoutDetails.isOverview ())
+    {
+      int step = OVERVIEW_LABEL / height;
+      int blocksPerRow = layoutDetails.grid.width * layoutDetails.blocksPerCell;
+      for (int i = start / step * step; i <= end; i += step)
+        g.drawString (String.format (format, i * blocksPerRow), 4, i * height + 13);
+      return;
+    }
+
     for (int i = start; i <= end; i++)
     {
       int value = isTrackMode ? i : i * layoutDetails.grid.width;
@@ -0,0 +1,192 @@
+package com.bytezone.diskbrowser.gui;
+
+import java.awt.BorderLayout;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.*;
+
+import com.bytezone.common.DefaultAction;
+import com.bytezone.diskbrowser.gui.SearchIndex.SearchHit;
+
+public class SearchAction extends DefaultAction
+{
+  private static final int MAX_HITS = 500;
+
+  private final CatalogPanel owner;
+  private final SearchIndex searchIndex = new SearchIndex ();
+  File rootFolder;
+  DirectoryScanner scanner;
+  boolean indexed;          // the index is up to date with the library (EDT only)
+  SearchWindow window;
+
+  public SearchAction (CatalogPanel owner)
+  {
+    super ("Search disks...", "Search the text of every file on every disk",
+          "/com/bytezone/diskbrowser/icons/");
+    this.owner = owner;
+    setEnabled (false);
+  }
+
+  public void setLibrary (File rootFolder, DirectoryScanner scanner)
+  {
+    this.rootFolder = rootFolder;
+    this.scanner = scanner;
+    indexed = false;
+
+    if (window != null)
+    {
+      window.dispose ();
+      window = null;
+    }
+    setEnabled (true);
+  }
+
+  @Override
+  public void actionPerformed (ActionEvent e)
+  {
+    indexed = false;        // pick up any disks that have changed since the last search
+    if (window == null)
+      window = new SearchWindow ();
+    window.setVisible (true);
+  }
+
+  void openDisk (SearchHit hit)
+  {
+    owner.openDiskPanel (hit.diskPath, hit.fileName);
+  }
+
+  class SearchWindow extends JFrame
+  {
+    JTextField queryField = new JTextField (30);
+    JButton buttonSearch = new JButton ("Search");
+    JLabel statusLabel = new JLabel (" ");
+    DefaultListModel<String> listModel = new DefaultListModel<String> ();
+    JList<String> resultList = new JList<String> (listModel);
+    List<SearchHit> hits = new ArrayList<SearchHit> ();
+    int folderNameLength;
+
+    public SearchWindow ()
+    {
+      super ("Search Disks - " + rootFolder.getAbsolutePath ());
+      folderNameLength = rootFolder.getAbsolutePath ().length ();
+
+      JPanel panel = new JPanel ();
+      panel.add (new JLabel ("Words :"));
+      panel.add (queryField);
+      panel.add (buttonSearch);
+      add (panel, BorderLayout.NORTH);
+
+      resultList.setSelectionMode (ListSelectionModel.SINGLE_SELECTION);
+      add (new JScrollPane (resultList), BorderLayout.CENTER);
+      add (statusLabel, BorderLayout.SOUTH);
+
+      ActionListener search = new ActionListener ()
+      {
+        @Override
+        public void actionPerformed (ActionEvent e)
+        {
+          String query = queryField.getText ().trim ();
+          if (query.isEmpty () || !buttonSearch.isEnabled ())
+            return;
+          buttonSearch.setEnabled (false);      // until the search has finished
+          new SearchWorker (query).execute ();
+        }
+      };
+      buttonSearch.addActionListener (search);
+      queryField.addActionListener (search);
+
+      resultList.addMouseListener (new MouseAdapter ()
+      {
+        @Override
+        public void mouseClicked (MouseEvent e)
+        {
+          int index = resultList.locationToIndex (e.getPoint ());
+          if (e.getClickCount () == 2 && index >= 0 && index < hits.size ())
+            openDisk (hits.get (index));
+        }
+      });
+
+      setSize (700, 500);
+      setLocationRelativeTo (null);
+      setDefaultCloseOperation (HIDE_ON_CLOSE);
+    }
+
+    void showHits (String query, List<SearchHit> hits, int totalRead)
+    {
+      this.hits = hits;
+      listModel.clear ();
+      for (SearchHit hit : hits)
+        listModel.addElement (hit.toString ().substring (folderNameLength));
+
+      statusLabel.setText (String.format ("%s%,d file%s found for : %s",
+            hits.size () == MAX_HITS ? "First " : "", hits.size (),
+            hits.size () == 1 ? "" : "s", query));
+      if (totalRead > 0)
+        statusLabel.setText (String.format ("%s  (%,d disk%s indexed)",
+              statusLabel.getText (), totalRead, totalRead == 1 ? "" : "s"));
+      buttonSearch.setEnabled (true);
+    }
+  }
+
+  // brings the index up to date if necessary, and then searches it
+  class SearchWorker extends SwingWorker<List<SearchHit>, String>
+  {
+    String query;
+    File rootFolder;
+    boolean indexing;       // copied on the EDT, the worker doesn't touch the field
+    int totalRead;
+
+    public SearchWorker (String query)
+    {
+      this.query = query;
+      this.rootFolder = SearchAction.this.rootFolder;
+      this.indexing = !indexed;
+    }
+
+    @Override
+    protected List<SearchHit> doInBackground () throws Exception
+    {
+      if (indexing)
+      {
+        publish ("Indexing " + rootFolder.getAbsolutePath () + " ...");
+        totalRead = searchIndex.update (rootFolder, scanner);
+        searchIndex.save ();
+      }
+      return searchIndex.search (query, rootFolder, MAX_HITS);
+    }
+
+    @Override
+    protected void process (List<String> messages)
+    {
+      if (window != null)
+        window.statusLabel.setText (messages.get (messages.size () - 1));
+    }
+
+    @Override
+    protected void done ()
+    {
+      try
+      {
+        List<SearchHit> hits = get ();
+        if (rootFolder != SearchAction.this.rootFolder)
+          return;
+        if (indexing)
+          indexed = true;
+        if (window != null)
+          window.showHits (query, hits, totalRead);
+      }
+      catch (Exception e)
+      {
+        e.printStackTrace ();
+        if (window != null)
+          window.buttonSearch.setEnabled (true);
+      }
+    }
+  }
+}
\ No newline at end of file
@@ -0,0 +1,661 @@
+package com.bytezone.diskbrowser.gui;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import com.bytezone.diskbrowser.applefile.AppleFileSource;
+import com.bytezone.diskbrowser.disk.DiskFactory;
+import com.bytezone.diskbrowser.disk.FormattedDisk;
+import com.bytezone.diskbrowser.gui.DirectoryScanner.Entry;
+
+/***********************************************************************************************
+ * An inverted index of the words in every file on every disk in the library. The text of
+ * a file is the text that the output panel shows for it, so BASIC listings, text files,
+ * word processor documents, Infocom strings and so on can all be searched. Each word
+ * points to the files that contain it, and to the lines that it appears on.
+ * Only the disks that are new or have changed since the last update are read, and they
+ * are read in parallel. The index is kept in a hidden file in the user's home folder.
+ ***********************************************************************************************/
+
+public class SearchIndex extends LibraryIndex
+{
+  private static final String INDEX_NAME = ".diskbrowser.search";
+  private static final int MAGIC = 0x44425358;          // DBSX
+  private static final int VERSION = 1;
+  private static final int DISKS_PER_TASK = 4;
+  private static final int MIN_WORD = 2;
+  private static final int MAX_WORD = 32;
+  private static final int MAX_TEXT = 0x100000;         // the rest of a huge file is ignored
+
+  private final List<Document> documents = new ArrayList<Document> ();   // null if removed
+  private final Map<String, DiskEntry> disks = new HashMap<String, DiskEntry> ();
+  private final TreeMap<String, Postings> words = new TreeMap<String, Postings> ();
+  private int totalRemoved;
+
+  public SearchIndex ()
+  {
+    this (new File (System.getProperty ("user.home"), INDEX_NAME));
+  }
+
+  public SearchIndex (File indexFile)
+  {
+    super (indexFile, MAGIC, VERSION, "search index");
+  }
+
+  /*
+   * Indexes every disk below the folder that is new or has changed, and removes the
+   * disks that are no longer there. Returns the number of disks that had to be read.
+   */
+  public int update (File folder, DirectoryScanner scanner)
+  {
+    List<File> changedFiles = new ArrayList<File> ();
+    synchronized (this)
+    {
+      load ();
+      Set<String> found = new HashSet<String> ();
+      findChanges (folder.toPath (), scanner, found, changedFiles, new HashSet<Object> ());
+
+      String prefix = folder.getAbsolutePath () + File.separator;
+      Iterator<DiskEntry> iterator = disks.values ().iterator ();
+      while (iterator.hasNext ())
+      {
+        DiskEntry disk = iterator.next ();
+        if (disk.path.startsWith (prefix) && !found.contains (disk.path))
+        {
+          removeDocuments (disk);
+          iterator.remove ();
+        }
+      }
+    }
+
+    readAll (changedFiles, DISKS_PER_TASK, new FileProcessor ()
+    {
+      @Override
+      public void process (File file)
+      {
+        DiskText diskText = readDisk (file);
+        if (diskText != null)
+          addDisk (diskText);
+      }
+    });
+
+    return changedFiles.size ();
+  }
+
+  // each folder is only read once, even if it can be reached through a link
+  private void findChanges (Path directory, DirectoryScanner scanner, Set<String> found,
+      List<File> changedFiles, Set<Object> visited)
+  {
+    for (Entry entry : scanner.getFolder (directory).entries)
+      if (entry.isDirectory)
+      {
+        if (visited.add (entry.fileKey == null ? entry.path : entry.fileKey))
+          findChanges (entry.path, scanner, found, changedFiles, visited);
+      }
+      else if (TreeBuilder.isDiskFile (entry.name, entry.size))
+      {
+        String path = entry.file.getAbsolutePath ();
+        if (!found.add (path))
+          continue;
+        DiskEntry disk = disks.get (path);
+        if (disk == null || disk.size != entry.size
+            || disk.modified != entry.file.lastModified ())
+          changedFiles.add (entry.file);
+      }
+  }
+
+  // reads the text of every file on the disk, without holding the lock, or returns null
+  // if the file can't be read
+  private DiskText readDisk (File file)
+  {
+    DiskText diskText = new DiskText (file);
+    try
+    {
+      FormattedDisk disk = DiskFactory.createDisk (file);
+      if (disk != null)
+        for (AppleFileSource afs : disk.getCatalogList ())
+        {
+          Map<String, LineList> fileWords = new HashMap<String, LineList> ();
+          DataSource dataSource = afs.getDataSource ();
+          if (dataSource != null)
+            addWords (dataSource.getText (), fileWords);
+          diskText.fileNames.add (afs.getUniqueName ());
+          diskText.fileWords.add (fileWords);
+        }
+    }
+    catch (Exception e)
+    {
+      System.out.println ("Unable to search " + file + " : " + e.getMessage ());
+      if (!file.canRead ())
+        return null;
+    }
+    return diskText;
+  }
+
+  private synchronized void addDisk (DiskText diskText)
+  {
+    DiskEntry old = disks.get (diskText.path);
+    if (old != null)
+      removeDocuments (old);
+
+    int[] ids = new int[diskText.fileNames.size ()];
+    for (int i = 0; i < ids.length; i++)
+    {
+      ids[i] = documents.size ();
+      documents.add (new Document (diskText.path, diskText.fileNames.get (i)));
+
+      for (Map.Entry<String, LineList> entry : diskText.fileWords.get (i).entrySet ())
+      {
+        Postings postings = words.get (entry.getKey ());
+        if (postings == null)
+        {
+          postings = new Postings ();
+          words.put (entry.getKey (), postings);
+        }
+        postings.add (ids[i], entry.getValue ());
+      }
+    }
+
+    disks.put (diskText.path,
+               new DiskEntry (diskText.path, diskText.size, diskText.modified, ids));
+    changed = true;
+  }
+
+  // the postings still refer to the documents until the index is compacted
+  private void removeDocuments (DiskEntry disk)
+  {
+    for (int id : disk.documents)
+      documents.set (id, null);
+    totalRemoved += disk.documents.length;
+    changed = true;
+  }
+
+  /*
+   * Returns the files below the folder that contain every word in the query, best
+   * matches first. A word that ends with * matches every word that starts with it. Files
+   * score higher when the words appear often in them, and when the words are rare in the
+   * rest of the library.
+   */
+  public synchronized List<SearchHit> search (String query, File folder, int maxHits)
+  {
+    load ();
+    String prefix = folder.getAbsolutePath () + File.separator;
+    List<Map<Integer, LineList>> matches = new ArrayList<Map<Integer, LineList>> ();
+    for (String token : query.trim ().split ("\\s+"))
+    {
+      boolean wildcard = token.endsWith ("*");
+      String word = getWord (token);
+      if (word.length () < MIN_WORD)
+        continue;
+
+      Collection<Postings> postingsList = new ArrayList<Postings> ();
+      if (wildcard)
+        postingsList = words.subMap (word, word + Character.MAX_VALUE).values ();
+      else if (words.containsKey (word))
+        postingsList.add (words.get (word));
+
+      Map<Integer, LineList> found = new HashMap<Integer, LineList> ();
+      for (Postings postings : postingsList)
+        postings.addTo (found, documents);
+
+      if (found.isEmpty ())
+        return new ArrayList<SearchHit> ();       // every word must match
+      matches.add (found);
+    }
+
+    List<SearchHit> hits = new ArrayList<SearchHit> ();
+    if (matches.isEmpty ())
+      return hits;
+
+    // start with the rarest word, since every document must contain it
+    Collections.sort (matches, new Comparator<Map<Integer, LineList>> ()
+    {
+      @Override
+      public int compare (Map<Integer, LineList> map1, Map<Integer, LineList> map2)
+      {
+        return Integer.compare (map1.size (), map2.size ());
+      }
+    });
+
+    double totalDocuments = documents.size () - totalRemoved;
+    nextDocument: for (Integer id : matches.get (0).keySet ())
+    {
+      Document document = documents.get (id);
+      if (!document.diskPath.startsWith (prefix))
+        continue;             // the index may also hold other libraries
+
+      double score = 0;
+      LineList lines = new LineList ();
+      for (Map<Integer, LineList> found : matches)
+      {
+        LineList wordLines = found.get (id);
+        if (wordLines == null)
+          continue nextDocument;
+        score += (1 + Math.log (wordLines.size))
+            * Math.log (1 + totalDocuments / found.size ());
+        lines.addAll (wordLines);
+      }
+      hits.add (new SearchHit (document.diskPath, document.fileName, lines.toArray (),
+          score));
+    }
+
+    Collections.sort (hits);
+    return new ArrayList<SearchHit> (hits.subList (0, Math.min (maxHits, hits.size ())));
+  }
+
+  // the same characters that addWords () keeps
+  private static String getWord (String token)
+  {
+    StringBuilder text = new StringBuilder ();
+    for (int i = 0; i < token.length (); i++)
+      if (isWordChar (token.charAt (i)))
+        text.append (Character.toLowerCase (token.charAt (i)));
+    return text.toString ();
+  }
+
+  private static boolean isWordChar (char c)
+  {
+    return Character.isLetterOrDigit (c) || c == '_';
+  }
+
+  // adds each word in the text to the map, along with the lines it appears on
+  private static void addWords (String text, Map<String, LineList> fileWords)
+  {
+    if (text == null)
+      return;
+
+    int length = Math.min (text.length (), MAX_TEXT);
+    int line = 1;
+    int start = -1;
+    for (int i = 0; i <= length; i++)
+    {
+      char c = i < length ? text.charAt (i) : '\n';
+      if (isWordChar (c))
+      {
+        if (start < 0)
+          start = i;
+        continue;
+      }
+
+      if (start >= 0)
+      {
+        int wordLength = i - start;
+        if (wordLength >= MIN_WORD && wordLength <= MAX_WORD)
+        {
+          String word = text.substring (start, i).toLowerCase ();
+          LineList lines = fileWords.get (word);
+          if (lines == null)
+          {
+            lines = new LineList ();
+            fileWords.put (word, lines);
+          }
+          lines.add (line);
+        }
+        start = -1;
+      }
+
+      if (c == '\n')
+        line++;
+    }
+  }
+
+  // renumbers the documents so that the removed ones are no longer in the postings
+  private void compact ()
+  {
+    int[] newIds = new int[documents.size ()];
+    List<Document> liveDocuments = new ArrayList<Document> ();
+    for (int i = 0; i < newIds.length; i++)
+    {
+      Document document = documents.get (i);
+      newIds[i] = document == null ? -1 : liveDocuments.size ();
+      if (document != null)
+        liveDocuments.add (document);
+    }
+
+    Iterator<Postings> iterator = words.values ().iterator ();
+    while (iterator.hasNext ())
+    {
+      Postings postings = iterator.next ();
+      postings.renumber (newIds);
+      if (postings.totalDocuments == 0)
+        iterator.remove ();
+    }
+
+    for (DiskEntry disk : disks.values ())
+      for (int i = 0; i < disk.documents.length; i++)
+        disk.documents[i] = newIds[disk.documents[i]];
+
+    documents.clear ();
+    documents.addAll (liveDocuments);
+    totalRemoved = 0;
+  }
+
+  @Override
+  void readIndex (DataInputStream in) throws IOException
+  {
+    Document[] list = new Document[in.readInt ()];
+    int totalDisks = in.readInt ();
+    for (int i = 0; i < totalDisks; i++)
+    {
+      String path = in.readUTF ();
+      long size = in.readLong ();
+      long modified = in.readLong ();
+      int[] ids = new int[in.readInt ()];
+      for (int j = 0; j < ids.length; j++)
+      {
+        ids[j] = in.readInt ();
+        list[ids[j]] = new Document (path, in.readUTF ());
+      }
+      disks.put (path, new DiskEntry (path, size, modified, ids));
+    }
+    documents.addAll (Arrays.asList (list));
+
+    int totalWords = in.readInt ();
+    for (int i = 0; i < totalWords; i++)
+      words.put (in.readUTF (), new Postings (in));
+  }
+
+  @Override
+  void writeIndex (DataOutputStream out) throws IOException
+  {
+    if (totalRemoved > 0)
+      compact ();
+
+    out.writeInt (documents.size ());
+    out.writeInt (disks.size ());
+    for (DiskEntry disk : disks.values ())
+    {
+      out.writeUTF (disk.path);
+      out.writeLong (disk.size);
+      out.writeLong (disk.modified);
+      out.writeInt (disk.documents.length);
+      for (int id : disk.documents)
+      {
+        out.writeInt (id);
+        out.writeUTF (documents.get (id).fileName);
+      }
+    }
+
+    out.writeInt (words.size ());
+    for (Map.Entry<String, Postings> entry : words.entrySet ())
+    {
+      out.writeUTF (entry.getKey ());
+      entry.getValue ().write (out);
+    }
+  }
+
+  @Override
+  void clearIndex ()
+  {
+    documents.clear ();
+    disks.clear ();
+    words.clear ();
+  }
+
+  /*
+   * The documents that contain one word. For each document there is the difference
+   * from the previous document's id, the number of lines, and the difference of each
+   * line from the one before. Every number is stored in as few bytes as possible.
+   */
+  private static class Postings
+  {
+    private byte[] data = new byte[8];
+    private int length;
+    private int lastDocument;
+    private int totalDocuments;
+
+    Postings ()
+    {
+    }
+
+    Postings (DataInputStream in) throws IOException
+    {
+      lastDocument = in.readInt ();
+      totalDocuments = in.readInt ();
+      length = in.readInt ();
+      data = new byte[Math.max (8, length)];
+      in.readFully (data, 0, length);
+    }
+
+    void write (DataOutputStream out) throws IOException
+    {
+      out.writeInt (lastDocument);
+      out.writeInt (totalDocuments);
+      out.writeInt (length);
+      out.write (data, 0, length);
+    }
+
+    void add (int document, LineList lines)
+    {
+      writeNumber (document - lastDocument);
+      lastDocument = document;
+      totalDocuments++;
+
+      writeNumber (lines.size);
+      int lastLine = 0;
+      for (int i = 0; i < lines.size; i++)
+      {
+        writeNumber (lines.lines[i] - lastLine);
+        lastLine = lines.lines[i];
+      }
+    }
+
+    // adds the lines of each document that hasn't been removed
+    void addTo (Map<Integer, LineList> found, List<Document> documents)
+    {
+      int[] ptr = new int[1];
+      int document = 0;
+      while (ptr[0] < length)
+      {
+        document += readNumber (ptr);
+        int totalLines = readNumber (ptr);
+        LineList lines = null;
+        if (documents.get (document) != null)
+        {
+          lines = found.get (document);
+          if (lines == null)
+          {
+            lines = new LineList ();
+            found.put (document, lines);
+          }
+        }
+
+        int line = 0;
+        for (int i = 0; i < totalLines; i++)
+        {
+          line += readNumber (ptr);
+          if (lines != null)
+            lines.add (line);
+        }
+      }
+    }
+
+    void renumber (int[] newIds)
+    {
+      byte[] oldData = data;
+      int oldLength = length;
+      data = new byte[8];
+      length = 0;
+      lastDocument = 0;
+      totalDocuments = 0;
+
+      int[] ptr = new int[1];
+      int document = 0;
+      while (ptr[0] < oldLength)
+      {
+        document += readNumber (oldData, ptr);
+        LineList lines = new LineList ();
+        int totalLines = readNumber (oldData, ptr);
+        int line = 0;
+        for (int i = 0; i < totalLines; i++)
+        {
+          line += readNumber (oldData, ptr);
+          lines.add (line);
+        }
+        if (newIds[document] >= 0)
+          add (newIds[document], lines);
+      }
+    }
+
+    private void writeNumber (int value)
+    {
+      if (length + 5 > data.length)
+        data = Arrays.copyOf (data, data.length * 2);
+      while (value >= 0x80)
+      {
+        data[length++] = (byte) (value | 0x80);
+        value >>>= 7;
+      }
+      data[length++] = (byte) value;
+    }
+
+    private int readNumber (int[] ptr)
+    {
+      return readNumber (data, ptr);
+    }
+
+    private static int readNumber (byte[] data, int[] ptr)
+    {
+      int value = 0;
+      int shift = 0;
+      byte b;
+      do
+      {
+        b = data[ptr[0]++];
+        value |= (b & 0x7F) << shift;
+        shift += 7;
+      } while (b < 0);
+      return value;
+    }
+  }
+
+  // line numbers in ascending order, without repeats
+  private static class LineList
+  {
+    int[] lines = new int[4];
+    int size;
+
+    void add (int line)
+    {
+      if (size > 0 && lines[size - 1] == line)
+        return;
+      if (size == lines.length)
+        lines = Arrays.copyOf (lines, size * 2);
+      lines[size++] = line;
+    }
+
+    void addAll (LineList other)
+    {
+      for (int i = 0; i < other.size; i++)
+        add (other.lines[i]);
+    }
+
+    int[] toArray ()
+    {
+      int[] sorted = Arrays.copyOf (lines, size);
+      Arrays.sort (sorted);
+      int total = 0;
+      for (int i = 0; i < sorted.length; i++)
+        if (i == 0 || sorted[i] != sorted[i - 1])
+          sorted[total++] = sorted[i];
+      return Arrays.copyOf (sorted, total);
+    }
+  }
+
+  private static class Document
+  {
+    final String diskPath;
+    final String fileName;
+
+    Document (String diskPath, String fileName)
+    {
+      this.diskPath = diskPath;
+      this.fileName = fileName;
+    }
+  }
+
+  private static class DiskEntry
+  {
+    final String path;
+    final long size;
+    final long modified;
+    final int[] documents;
+
+    DiskEntry (String path, long size, long modified, int[] documents)
+    {
+      this.path = path;
+      this.size = size;
+      this.modified = modified;
+      this.documents = documents;
+    }
+  }
+
+  // the words in each file on a disk, before they are added to the index
+  private static class DiskText
+  {
+    final String path;
+    final long size;
+    final long modified;
+    final List<String> fileNames = new ArrayList<String> ();
+    final List<Map<String, LineList>> fileWords = new ArrayList<Map<String, LineList>> ();
+
+    DiskText (File file)
+    {
+      path = file.getAbsolutePath ();
+      size = file.length ();
+      modified = file.lastModified ();
+    }
+  }
+
+  public static class SearchHit implements Comparable<SearchHit>
+  {
+    public final String diskPath;
+    public final String fileName;
+    public final int[] lines;
+    public final double score;
+
+    SearchHit (String diskPath, String fileName, int[] lines, double score)
+    {
+      this.diskPath = diskPath;
+      this.fileName = fileName;
+      this.lines = lines;
+      this.score = score;
+    }
+
+    @Override
+    public int compareTo (SearchHit other)
+    {
+      if (score != other.score)
+        return score > other.score ? -1 : 1;
+      int result = diskPath.compareTo (other.diskPath);
+      return result != 0 ? result : fileName.compareTo (other.fileName);
+    }
+
+    @Override
+    public String toString ()
+    {
+      StringBuilder text = new StringBuilder ();
+      for (int i = 0; i < lines.length && i < 10; i++)
+        text.append (i == 0 ? "" : ", ").append (lines[i]);
+      if (lines.length > 10)
+        text.append (", ...");
+      return String.format ("%s : %s (line%s %s)", diskPath, fileName,
+                            lines.length == 1 ? "" : "s", text);
+    }
+  }
+}
\ No newline at end of file
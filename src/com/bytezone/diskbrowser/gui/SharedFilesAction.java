@@ -0,0 +1,132 @@
+package com.bytezone.diskbrowser.gui;
+
+import java.awt.Font;
+import java.awt.event.ActionEvent;
+import java.io.File;
+import java.util.List;
+
+import javax.swing.*;
+
+import com.bytezone.common.DefaultAction;
+import com.bytezone.diskbrowser.disk.FormattedDisk;
+import com.bytezone.diskbrowser.gui.CatalogIndex.DiskRecord;
+import com.bytezone.diskbrowser.gui.CatalogIndex.FileRecord;
+
+/*
+ * Lists the other disks in the library that hold a copy of each file on the current
+ * disk, followed by the files that aren't on any other disk.
+ */
+class SharedFilesAction extends DefaultAction
+{
+  private File rootFolder;
+  private DirectoryScanner scanner;
+  private CatalogIndex catalogIndex;
+  private FormattedDisk currentDisk;
+
+  public SharedFilesAction ()
+  {
+    super ("Shared files...", "Show which other disks have copies of these files", null);
+    setEnabled (false);
+  }
+
+  public void setLibrary (File rootFolder, DirectoryScanner scanner,
+        CatalogIndex catalogIndex)
+  {
+    this.rootFolder = rootFolder;
+    this.scanner = scanner;
+    this.catalogIndex = catalogIndex;
+    setEnabled (currentDisk != null);
+  }
+
+  public void setDisk (FormattedDisk disk)
+  {
+    currentDisk = disk;
+    setEnabled (catalogIndex != null && disk != null);
+  }
+
+  public void actionPerformed (ActionEvent e)
+  {
+    setEnabled (false);       // until the report has been built
+    new SharedFilesWorker (currentDisk.getDisk ().getFile ()).execute ();
+  }
+
+  class SharedFilesWorker extends SwingWorker<String, Void>
+  {
+    File diskFile;
+    File rootFolder;
+    DirectoryScanner scanner;
+    CatalogIndex catalogIndex;
+
+    public SharedFilesWorker (File diskFile)
+    {
+      this.diskFile = diskFile;
+      this.rootFolder = SharedFilesAction.this.rootFolder;
+      this.scanner = SharedFilesAction.this.scanner;
+      this.catalogIndex = SharedFilesAction.this.catalogIndex;
+    }
+
+    @Override
+    protected String doInBackground () throws Exception
+    {
+      // every disk must be in the index before the copies can be found
+      catalogIndex.update (rootFolder, scanner);
+      DiskRecord disk = catalogIndex.update (diskFile);
+      catalogIndex.save ();
+
+      if (disk == null)
+        return "Unable to read " + diskFile.getAbsolutePath ();
+
+      StringBuilder text = new StringBuilder ();
+      text.append (String.format ("Disk : %s%n%n", disk.path));
+      text.append (String.format ("Files that are also on other disks%n"));
+
+      int totalShared = 0;
+      for (FileRecord file : disk.files)
+      {
+        List<DiskRecord> disks = catalogIndex.getDisksContaining (file);
+        if (disks.size () < 2)
+          continue;
+        text.append (String.format ("%n%s%n", file));
+        for (DiskRecord other : disks)
+          if (!other.path.equals (disk.path))
+            text.append (String.format ("    %s%n", other.path));
+        ++totalShared;
+      }
+      if (totalShared == 0)
+        text.append (String.format ("%nNone%n"));
+
+      List<FileRecord> uniqueFiles = catalogIndex.getUniqueFiles (disk);
+      text.append (String.format ("%n%nFiles that aren't on any other disk%n%n"));
+      for (FileRecord file : uniqueFiles)
+        text.append (String.format ("%s%n", file));
+      if (uniqueFiles.size () == 0)
+        text.append (String.format ("None%n"));
+
+      return text.toString ();
+    }
+
+    @Override
+    protected void done ()
+    {
+      setEnabled (currentDisk != null);
+      try
+      {
+        JTextArea textArea = new JTextArea (get ());
+        textArea.setEditable (false);
+        textArea.setFont (new Font ("Monospaced", Font.PLAIN, 12));
+        textArea.setCaretPosition (0);
+
+        JFrame window = new JFrame ("Shared Files - " + diskFile.getName ());
+        window.add (new JScrollPane (textArea));
+        window.setSize (800, 500);
+        window.setLocationRelativeTo (null);
+        window.setDefaultCloseOperation (WindowConstants.DISPOSE_ON_CLOSE);
+        window.setVisible (true);
+      }
+      catch (Exception e)
+      {
+        e.printStackTrace ();
+      }
+    }
+  }
+}
\ No newline at end of file
@@ -3,10 +3,11 @@ package com.bytezone.diskbrowser.gui;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.net.URL;
+import java.nio.file.Path;
+import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
@@ -18,6 +19,7 @@ import java.util.zip.Checksum;
 import javax.swing.ImageIcon;
 import javax.swing.JComponent;
 import javax.swing.JTree;
+import javax.swing.SwingUtilities;
 import javax.swing.tree.DefaultMutableTreeNode;
 import javax.swing.tree.DefaultTreeCellRenderer;
 import javax.swing.tree.DefaultTreeModel;
@@ -27,38 +29,73 @@ import com.bytezone.diskbrowser.disk.AppleDisk;
 import com.bytezone.diskbrowser.disk.Disk;
 import com.bytezone.diskbrowser.disk.DiskFactory;
 import com.bytezone.diskbrowser.disk.FormattedDisk;
+import com.bytezone.diskbrowser.gui.CatalogIndex.DiskRecord;
+import com.bytezone.diskbrowser.gui.DirectoryScanner.Entry;
+import com.bytezone.diskbrowser.gui.DirectoryScanner.Folder;
+import com.bytezone.diskbrowser.gui.DirectoryScanner.FolderListener;
 
 public class TreeBuilder
 {
-  private static SimpleDateFormat sdf = new SimpleDateFormat ("dd MMM yyyy");
+  // date formats aren't thread safe, and folders are read in the background
+  private static final ThreadLocal<DateFormat> sdf = new ThreadLocal<DateFormat> ()
+  {
+    @Override
+    protected DateFormat initialValue ()
+    {
+      return new SimpleDateFormat ("dd MMM yyyy");
+    }
+  };
   private static final boolean FULL_TREE = false;
   private static final List<String> suffixes =
       Arrays.asList ("po", "dsk", "do", "hdv", "2mg", "d13", "sdk", "gz");
 
-  FileComparator fc = new FileComparator ();
+  private final DirectoryScanner scanner;
+  private final CatalogIndex catalogIndex;
+  private final DiskCache diskCache;
+  private final Map<Path, DefaultMutableTreeNode> folderNodes =
+      new HashMap<Path, DefaultMutableTreeNode> ();
+  private DefaultTreeModel treeModel;
+  private volatile boolean cancelled;
+
   JTree tree;
   int totalDisks;
   int totalFolders;
 
   Map<String, Integer> totalFiles = new TreeMap<String, Integer> ();
 
-  Map<String, List<DiskDetails>> duplicateDisks =
-      new TreeMap<String, List<DiskDetails>> ();
-  Map<String, File> diskNames = new HashMap<String, File> ();
   Map<Long, List<File>> dosMap = new TreeMap<Long, List<File>> ();
 
   public TreeBuilder (File folder)
+  {
+    this (folder, new DirectoryScanner (), new CatalogIndex (), new DiskCache ());
+  }
+
+  /*
+   * The root folder is read straight away, and the rest of the library is read in the
+   * background and added to the tree as each folder arrives. Folders that are opened
+   * before the background scan reaches them are read immediately. Passing the scanner
+   * from an earlier tree means that only the folders that have changed are read again,
+   * and passing its cache means that the disks it opened are still available. The scan
+   * also looks up each disk in the catalog index, so that a disk that is already indexed
+   * can show its catalog while it is being opened.
+   */
+  public TreeBuilder (File folder, DirectoryScanner scanner, CatalogIndex catalogIndex,
+      DiskCache diskCache)
   {
     assert(folder.exists ());
     assert(folder.isDirectory ());
 
+    this.scanner = scanner;
+    this.catalogIndex = catalogIndex;
+    this.diskCache = diskCache;
     long start = System.currentTimeMillis ();
 
     FileNode fn = new FileNode (folder);
     DefaultMutableTreeNode root = new DefaultMutableTreeNode (fn);
     fn.setTreeNode (root);
+    treeModel = new DefaultTreeModel (root);
+    folderNodes.put (folder.toPath (), root);
     addFiles (root, folder);
-    DefaultTreeModel treeModel = new DefaultTreeModel (root);
     tree = new JTree (treeModel);
 
     long duration = System.currentTimeMillis () - start;
@@ -85,28 +122,95 @@ public class TreeBuilder
       }
       System.out.printf ("%nTotal ...... %,6d%n%n", tf);
     }
+
+    scanner.scan (folder.toPath (), new FolderListener ()
+    {
+      @Override
+      public boolean folderRead (final Path directory, final Folder contents)
+      {
+        if (cancelled)
+          return false;
+
+        final Map<File, DiskRecord> records = getRecords (contents);
+        SwingUtilities.invokeLater (new Runnable ()
+        {
+          @Override
+          public void run ()
+          {
+            DefaultMutableTreeNode node = folderNodes.get (directory);
+            if (node != null && !cancelled)
+            {
+              addFiles (node, contents);
+              setRecords (node, records);
+            }
+          }
+        });
+        return true;
+      }
+    });
+  }
+
+  // called on the scanning thread, so that the index is never read on the event thread
+  private Map<File, DiskRecord> getRecords (Folder folder)
+  {
+    Map<File, DiskRecord> records = new HashMap<File, DiskRecord> ();
+    for (Entry entry : folder.entries)
+      if (!entry.isDirectory && isDiskFile (entry.name, entry.size))
+      {
+        DiskRecord record = catalogIndex.getRecord (entry.file);
+        if (record != null && record.isRecognised ())
+          records.put (entry.file, record);
+      }
+    return records;
+  }
+
+  private void setRecords (DefaultMutableTreeNode node, Map<File, DiskRecord> records)
+  {
+    for (int i = 0; i < node.getChildCount (); i++)
+    {
+      DefaultMutableTreeNode childNode = (DefaultMutableTreeNode) node.getChildAt (i);
+      FileNode fn = (FileNode) childNode.getUserObject ();
+      if (!fn.file.isDirectory ())
+        fn.record = records.get (fn.file);
+    }
+  }
+
+  // stop adding folders from the background scan, eg when the tree is being replaced
+  public void cancel ()
+  {
+    cancelled = true;
   }
 
   private void addFiles (DefaultMutableTreeNode node, File directory)
   {
-    File[] files = directory.listFiles ();
-    if (files == null || files.length == 0)
+    addFiles (node, scanner.getFolder (directory.toPath ()));
+  }
+
+  private void addFiles (DefaultMutableTreeNode node, Folder folder)
+  {
+    FileNode parentNode = (FileNode) node.getUserObject ();
+    if (parentNode.filesRead)
+      return;
+    parentNode.filesRead = true;
+
+    if (folder.entries.size () == 0)
     {
-      System.out.println ("Empty folder : " + directory.getAbsolutePath ());
+      System.out.println ("Empty folder : " + parentNode.file.getAbsolutePath ());
       return;
     }
 
-    FileNode parentNode = (FileNode) node.getUserObject ();
-    Arrays.sort (files, fc);
-    for (File file : files)
+    int firstChild = node.getChildCount ();
+    for (Entry entry : folder.entries)
     {
-      if (file.isDirectory ())
+      File file = entry.file;
+      if (entry.isDirectory)
       {
         FileNode fn = new FileNode (file);
         DefaultMutableTreeNode newNode = new DefaultMutableTreeNode (fn);
         fn.setTreeNode (newNode);
         newNode.setAllowsChildren (true);
         node.add (newNode);
+        folderNodes.put (entry.path, newNode);
         totalFolders++;
 
         if (FULL_TREE)
@@ -130,17 +234,11 @@ public class TreeBuilder
         }
       }
 
-      if (file.length () != 143360 && file.length () != 116480 && file.length () != 819264
-          && file.length () < 200000)
-      {
-        String name = file.getName ().toLowerCase ();
-        if (!name.endsWith (".sdk") && !name.endsWith (".dsk.gz"))
-          continue;
-      }
+      if (!isPossibleDisk (entry.name, entry.size))
+        continue;
 
       parentNode.disks++;
-      String filename = file.getAbsolutePath ();
-      if (validFileType (filename))
+      if (validFileType (entry.name))
       {
         FileNode fn = new FileNode (file);
         DefaultMutableTreeNode newNode = new DefaultMutableTreeNode (fn);
@@ -148,14 +246,21 @@ public class TreeBuilder
         newNode.setAllowsChildren (false);
         node.add (newNode);
 
-        if (false)
-          checkDuplicates (file);
         totalDisks++;
 
         if (false)
           checksumDos (file);
       }
     }
+
+    int totalChildren = node.getChildCount () - firstChild;
+    if (totalChildren > 0)
+    {
+      int[] childIndices = new int[totalChildren];
+      for (int i = 0; i < totalChildren; i++)
+        childIndices[i] = firstChild + i;
+      treeModel.nodesWereInserted (node, childIndices);
+    }
   }
 
   private void checksumDos (File file)
@@ -178,24 +283,21 @@ public class TreeBuilder
     files.add (file);
   }
 
-  private void checkDuplicates (File file)
+  // the file is a disk image that can be displayed
+  static boolean isDiskFile (String filename, long length)
   {
-    if (diskNames.containsKey (file.getName ()))
-    {
-      List<DiskDetails> diskList = duplicateDisks.get (file.getName ());
-      if (diskList == null)
-      {
-        diskList = new ArrayList<DiskDetails> ();
-        duplicateDisks.put (file.getName (), diskList);
-        diskList.add (new DiskDetails (diskNames.get (file.getName ())));// add the original
-      }
-      diskList.add (new DiskDetails (file));// add the duplicate
-    }
-    else
-      diskNames.put (file.getName (), file);
+    return isPossibleDisk (filename, length) && validFileType (filename);
   }
 
-  private boolean validFileType (String filename)
+  private static boolean isPossibleDisk (String filename, long length)
+  {
+    if (length == 143360 || length == 116480 || length == 819264 || length >= 200000)
+      return true;
+    String name = filename.toLowerCase ();
+    return name.endsWith (".sdk") || name.endsWith (".dsk.gz");
+  }
+
+  private static boolean validFileType (String filename)
   {
     int dotPos = filename.lastIndexOf ('.');
     if (dotPos < 0)
@@ -231,9 +333,10 @@ public class TreeBuilder
     private static final int MAX_NAME_LENGTH = 36;
     private static final int SUFFIX_LENGTH = 12;
     private static final int PREFIX_LENGTH = MAX_NAME_LENGTH - SUFFIX_LENGTH - 3;
-    private FormattedDisk formattedDisk;
     int disks;
     boolean showDisks;
+    boolean filesRead;
+    DiskRecord record;          // from the catalog index, if the disk hasn't changed
 
     public FileNode (File file)
     {
@@ -250,9 +353,28 @@ public class TreeBuilder
       addFiles (parentNode, file);
     }
 
-    public FormattedDisk getFormattedDisk ()
+    public CatalogIndex getCatalogIndex ()
+    {
+      return catalogIndex;
+    }
+
+    // returns the disk only if it is already in the cache
+    public FormattedDisk getLoadedDisk ()
     {
+      return diskCache.get (file);
+    }
+
+    public boolean isDiskLoaded ()
+    {
+      return diskCache.contains (file);
+    }
+
+    // only one thread reads the disk, and any others wait for it
+    public synchronized FormattedDisk getFormattedDisk ()
+    {
+      FormattedDisk formattedDisk = diskCache.get (file);
       if (formattedDisk == null)
+      {
         try
         {
           formattedDisk = DiskFactory.createDisk (file);
@@ -263,18 +385,16 @@ public class TreeBuilder
           System.out.println (e.getMessage ());
           return null;
         }
+        if (formattedDisk != null)
+          diskCache.put (file, formattedDisk);
+      }
       return formattedDisk;
     }
 
     public boolean replaceDisk (FormattedDisk disk)
     {
       String path = disk.getDisk ().getFile ().getAbsolutePath ();
-      if (formattedDisk != null && path.equals (file.getAbsolutePath ()))
-      {
-        formattedDisk = disk;
-        return true;
-      }
-      return false;
+      return path.equals (file.getAbsolutePath ()) && diskCache.replace (file, disk);
     }
 
     @Override
@@ -292,6 +412,10 @@ public class TreeBuilder
     @Override
     public String getText ()
     {
+      if (!file.isDirectory ())                       // while a DiskLoader works
+        return record == null || record.catalogText.isEmpty ()
+            ? "Reading disk : " + file.getAbsolutePath () : record.catalogText;
+
       StringBuilder text = new StringBuilder ();
 
       text.append ("Directory : " + file.getAbsolutePath () + "\n\n");
@@ -310,8 +434,8 @@ public class TreeBuilder
         String type = pos > 0 && !f.isDirectory () ? name.substring (pos) : "";
         String size = f.isDirectory () ? "" : String.format ("%,14d", f.length ());
         text.append (String.format ("%s  %-40.40s  %s  %-14s  %s%n",
-                                    f.isDirectory () ? "D" : " ", name, sdf.format (d),
-                                    size, type));
+                                    f.isDirectory () ? "D" : " ", name,
+                                    sdf.get ().format (d), size, type));
       }
       if (text.length () > 0)
         text.deleteCharAt (text.length () - 1);
@@ -342,20 +466,4 @@ public class TreeBuilder
       return null;
     }
   }
-
-  private class FileComparator implements Comparator<File>
-  {
-    @Override
-    public int compare (File filea, File fileb)
-    {
-      boolean fileaIsDirectory = filea.isDirectory ();
-      boolean filebIsDirectory = fileb.isDirectory ();
-
-      if (fileaIsDirectory && !filebIsDirectory)
-        return -1;
-      if (!fileaIsDirectory && filebIsDirectory)
-        return 1;
-      return filea.getName ().compareToIgnoreCase (fileb.getName ());
-    }
-  }
 }
\ No newline at end of file
@@ -158,6 +158,12 @@ class CodeManager extends AbstractFile
 		return routines.get (address);
 	}
 
+	@Override
+	public byte[] getHexDumpBuffer ()
+	{
+		return null;
+	}
+
 	@Override
 	public String getHexDump ()
 	{
@@ -119,6 +119,12 @@ class Dictionary extends AbstractFile
 		return words;
 	}
 
+	@Override
+	public byte[] getHexDumpBuffer ()
+	{
+		return null;
+	}
+
 	@Override
 	public String getHexDump ()
 	{
@@ -61,6 +61,12 @@ class StringManager extends AbstractFile
     return text.toString ();
   }
 
+  @Override
+  public byte[] getHexDumpBuffer ()
+  {
+    return null;
+  }
+
   @Override
   public String getHexDump ()
   {
@@ -87,6 +87,12 @@ class ZObject extends AbstractFile
 		return text.toString ();
 	}
 
+	@Override
+	public byte[] getHexDumpBuffer ()
+	{
+		return null;
+	}
+
 	@Override
 	public String getHexDump ()
 	{
@@ -9,7 +9,15 @@ import com.bytezone.diskbrowser.disk.Disk;
 
 class PascalCatalogSector extends AbstractSector
 {
-  private static DateFormat df = DateFormat.getDateInstance (DateFormat.SHORT);
+  // date formats aren't thread safe, and disks are read on several threads at once
+  private static final ThreadLocal<DateFormat> df = new ThreadLocal<DateFormat> ()
+  {
+    @Override
+    protected DateFormat initialValue ()
+    {
+      return DateFormat.getDateInstance (DateFormat.SHORT);
+    }
+  };
   private static String[] fileTypes = { "Volume", "Bad", "Code", "Text", "Info", "Data", "Graf",
                                        "Foto", "SecureDir" };
 
@@ -36,7 +44,7 @@ class PascalCatalogSector extends AbstractSector
     addTextAndDecimal (text, buffer, 18, 2, "First block of volume");
 
     GregorianCalendar calendar = HexFormatter.getPascalDate (buffer, 20);
-    String date = calendar == null ? "--" : df.format (calendar.getTime ());
+    String date = calendar == null ? "--" : df.get ().format (calendar.getTime ());
     addText (text, buffer, 20, 2, "Most recent date setting : " + date);
     addTextAndDecimal (text, buffer, 22, 4, "Reserved");
 
@@ -63,7 +71,7 @@ class PascalCatalogSector extends AbstractSector
       addTextAndDecimal (text, buffer, ptr + 22, 2, "Bytes in file's last block");
 
       calendar = HexFormatter.getPascalDate (buffer, ptr + 24);
-      date = calendar == null ? "--" : df.format (calendar.getTime ());
+      date = calendar == null ? "--" : df.get ().format (calendar.getTime ());
       addText (text, buffer, ptr + 24, 2, "Date : " + date);
 
       ptr += PascalDisk.CATALOG_ENTRY_SIZE;
@@ -16,7 +16,15 @@ import com.bytezone.diskbrowser.gui.DataSource;
 public class PascalDisk extends AbstractFormattedDisk
 {
   static final int CATALOG_ENTRY_SIZE = 26;
-  private static DateFormat df = DateFormat.getDateInstance (DateFormat.SHORT);
+  // date formats aren't thread safe, and disks are read on several threads at once
+  private static final ThreadLocal<DateFormat> df = new ThreadLocal<DateFormat> ()
+  {
+    @Override
+    protected DateFormat initialValue ()
+    {
+      return DateFormat.getDateInstance (DateFormat.SHORT);
+    }
+  };
   private final VolumeEntry volume;
   private final PascalCatalogSector diskCatalogSector;
 
@@ -81,12 +89,7 @@ public class PascalDisk extends AbstractFormattedDisk
     DefaultMutableTreeNode volumeNode = new DefaultMutableTreeNode (volume);
     root.add (volumeNode);
 
-    // read the catalog
-    List<DiskAddress> addresses = new ArrayList<DiskAddress> ();
-    for (int i = 2; i < volume.lastBlock; i++)
-      addresses.add (disk.getDiskAddress (i));
-    buffer = disk.readSectors (addresses);
-
+    // the catalog blocks have already been read into buffer
     // loop through each catalog entry (what if there are deleted files?)
     for (int i = 1; i <= volume.totalFiles; i++)
     {
@@ -95,6 +98,7 @@ public class PascalDisk extends AbstractFormattedDisk
       System.arraycopy (buffer, ptr, data, 0, CATALOG_ENTRY_SIZE);
       FileEntry fe = new FileEntry (data);
       fileEntries.add (fe);
+      setBlockOwner (fileEntries.size () - 1, fe.extents);
       DefaultMutableTreeNode node = new DefaultMutableTreeNode (fe);
       if (fe.fileType == 2) // PascalCode
       {
@@ -203,10 +207,8 @@ public class PascalDisk extends AbstractFormattedDisk
   @Override
   public String getSectorFilename (DiskAddress da)
   {
-    for (AppleFileSource ce : fileEntries)
-      if (((CatalogEntry) ce).contains (da))
-        return ((CatalogEntry) ce).name;
-    return null;
+    int fileNo = getBlockOwner (da);
+    return fileNo < 0 ? null : ((CatalogEntry) fileEntries.get (fileNo)).name;
   }
 
   @Override
@@ -230,7 +232,7 @@ public class PascalDisk extends AbstractFormattedDisk
     String newLine = String.format ("%n");
     String newLine2 = newLine + newLine;
     String line = "----   ---------------   ----   --------  -------   ----   ----" + newLine;
-    String date = volume.date == null ? "--" : df.format (volume.date.getTime ());
+    String date = volume.date == null ? "--" : df.get ().format (volume.date.getTime ());
     StringBuilder text = new StringBuilder ();
     text.append ("Disk : " + disk.getFile ().getAbsolutePath () + newLine2);
     text.append ("Volume : " + volume.name + newLine);
@@ -244,7 +246,7 @@ public class PascalDisk extends AbstractFormattedDisk
       FileEntry ce = (FileEntry) fe;
       int size = ce.lastBlock - ce.firstBlock;
       usedBlocks += size;
-      date = ce.date == null ? "--" : df.format (ce.date.getTime ());
+      date = ce.date == null ? "--" : df.get ().format (ce.date.getTime ());
       int bytes = (size - 1) * 512 + ce.bytesUsedInLastBlock;
       text.append (String.format (" %3d   %-15s   %s   %8s %,8d   $%03X   $%03X%n", size,
                                   ce.name, fileTypes[ce.fileType], date, bytes, ce.firstBlock,
@@ -257,7 +259,7 @@ public class PascalDisk extends AbstractFormattedDisk
     return new DefaultAppleFileSource (volume.name, text.toString (), this);
   }
 
-  private abstract class CatalogEntry implements AppleFileSource
+  private abstract class CatalogEntry implements AppleFileSource, FileDetails
   {
     String name;
     int firstBlock;
@@ -265,6 +267,7 @@ public class PascalDisk extends AbstractFormattedDisk
     int fileType;
     GregorianCalendar date;
     List<DiskAddress> blocks = new ArrayList<DiskAddress> ();
+    ExtentList extents;
     AbstractFile file;
 
     public CatalogEntry (byte[] buffer)
@@ -277,15 +280,9 @@ public class PascalDisk extends AbstractFormattedDisk
 
       for (int i = firstBlock; i < lastBlock; i++)
         blocks.add (disk.getDiskAddress (i));
+      extents = new ExtentList (blocks);
     }
 
-    private boolean contains (DiskAddress da)
-    {
-      for (DiskAddress sector : blocks)
-        if (sector.compareTo (da) == 0)
-          return true;
-      return false;
-    }
 
     @Override
     public String toString ()
@@ -312,6 +309,30 @@ public class PascalDisk extends AbstractFormattedDisk
     {
       return name;
     }
+
+    @Override
+    public String getFileTypeText ()
+    {
+      return fileTypes[fileType];
+    }
+
+    @Override
+    public int getAuxType ()
+    {
+      return 0;
+    }
+
+    @Override
+    public int getFileLength ()
+    {
+      return (lastBlock - firstBlock) * 512;
+    }
+
+    @Override
+    public int getBlocksUsed ()
+    {
+      return lastBlock - firstBlock;
+    }
   }
 
   private class VolumeEntry extends CatalogEntry
@@ -382,6 +403,12 @@ public class PascalDisk extends AbstractFormattedDisk
         }
     }
 
+    @Override
+    public int getFileLength ()
+    {
+      return (lastBlock - firstBlock - 1) * 512 + bytesUsedInLastBlock;
+    }
+
     @Override
     public AbstractFile getDataSource ()
     {
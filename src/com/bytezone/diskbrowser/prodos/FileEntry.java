@@ -1,5 +1,6 @@
 package com.bytezone.diskbrowser.prodos;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.GregorianCalendar;
 import java.util.List;
@@ -10,13 +11,14 @@ import com.bytezone.diskbrowser.appleworks.AppleworksADBFile;
 import com.bytezone.diskbrowser.appleworks.AppleworksSSFile;
 import com.bytezone.diskbrowser.appleworks.AppleworksWPFile;
 import com.bytezone.diskbrowser.disk.DiskAddress;
+import com.bytezone.diskbrowser.disk.ExtentList;
 import com.bytezone.diskbrowser.gui.DataSource;
 
 // - Set sector types for each used sector
 // - Populate dataBlocks, indexBlocks, catalogBlock and masterIndexBlock
 // - Provide getDataSource ()
 
-class FileEntry extends CatalogEntry implements ProdosConstants
+class FileEntry extends CatalogEntry implements ProdosConstants, FileDetails
 {
   private final int fileType;
   final int keyPtr;
@@ -29,6 +31,7 @@ class FileEntry extends CatalogEntry implements ProdosConstants
   private final DiskAddress catalogBlock;
   private DiskAddress masterIndexBlock;
   private final List<DiskAddress> indexBlocks = new ArrayList<DiskAddress> ();
+  private ExtentList extents;     // index and data blocks, built when first needed
   private boolean invalid;
 
   public FileEntry (ProdosDisk fDisk, byte[] entryBuffer, DirectoryHeader parent,
@@ -77,12 +80,12 @@ class FileEntry extends CatalogEntry implements ProdosConstants
       case TYPE_GSOS_EXTENDED_FILE:
         parentDisk.setSectorType (keyPtr, fDisk.extendedKeySector);
         indexBlocks.add (disk.getDiskAddress (keyPtr));
-        byte[] buffer2 = disk.readSector (keyPtr);
+        ByteBuffer buffer2 = disk.getSectorBuffer (keyPtr);
         // data fork and resource fork
         for (int i = 0; i < 512; i += 256)
         {
-          int storageType = buffer2[i] & 0x0F;
-          int keyBlock = HexFormatter.intValue (buffer2[i + 1], buffer2[i + 2]);
+          int storageType = buffer2.get (i) & 0x0F;
+          int keyBlock = HexFormatter.intValue (buffer2.get (i + 1), buffer2.get (i + 2));
           switch (storageType)
           {
             case ProdosConstants.TYPE_SEEDLING:
@@ -103,8 +106,8 @@ class FileEntry extends CatalogEntry implements ProdosConstants
         do
         {
           dataBlocks.add (disk.getDiskAddress (block));
-          byte[] buffer = disk.readSector (block);
-          block = HexFormatter.intValue (buffer[2], buffer[3]);
+          ByteBuffer buffer = disk.getSectorBuffer (block);
+          block = HexFormatter.intValue (buffer.get (2), buffer.get (3));
         } while (block > 0);
         break;
 
@@ -132,14 +135,14 @@ class FileEntry extends CatalogEntry implements ProdosConstants
 
   private void traverseMasterIndex (int keyPtr)
   {
-    byte[] buffer = disk.readSector (keyPtr); // master index
+    ByteBuffer buffer = disk.getSectorBuffer (keyPtr); // master index
     // find the last used index block
     // get the file size from the catalog and only check those blocks
     int highestBlock = 0;
     // A master index block can never be more than half full
     for (int i = 127; i >= 0; i--)
     {
-      int block = HexFormatter.intValue (buffer[i], buffer[i + 256]);
+      int block = HexFormatter.intValue (buffer.get (i), buffer.get (i + 256));
       if (block > 0)
       {
         highestBlock = i;
@@ -148,7 +151,7 @@ class FileEntry extends CatalogEntry implements ProdosConstants
     }
     for (int i = 0; i <= highestBlock; i++)
     {
-      int block = HexFormatter.intValue (buffer[i], buffer[i + 256]); // index
+      int block = HexFormatter.intValue (buffer.get (i), buffer.get (i + 256)); // index
       if (block != 0)
         traverseIndex (block);
       else
@@ -166,10 +169,10 @@ class FileEntry extends CatalogEntry implements ProdosConstants
   {
     parentDisk.setSectorType (keyBlock, ((ProdosDisk) parentDisk).indexSector);
     indexBlocks.add (disk.getDiskAddress (keyBlock));
-    byte[] buffer = disk.readSector (keyBlock);
+    ByteBuffer buffer = disk.getSectorBuffer (keyBlock);
     for (int i = 0; i < 256; i++)
     {
-      int block = HexFormatter.intValue (buffer[i], buffer[i + 256]);
+      int block = HexFormatter.intValue (buffer.get (i), buffer.get (i + 256));
       if (!disk.isValidAddress (block))
       {
         System.out.println ("Invalid block in " + name + " : " + block);
@@ -191,11 +194,11 @@ class FileEntry extends CatalogEntry implements ProdosConstants
 
   private void traverseGEOSMasterIndex (int keyPtr)
   {
-    byte[] buffer = disk.readSector (keyPtr); // master index
+    ByteBuffer buffer = disk.getSectorBuffer (keyPtr); // master index
     // int length = HexFormatter.intValue (buffer[0xFF], buffer[0x1FF]);
     for (int i = 0; i < 0x80; i++)
     {
-      int block = HexFormatter.intValue (buffer[i], buffer[i + 256]);
+      int block = HexFormatter.intValue (buffer.get (i), buffer.get (i + 256));
       if (block == 0)
         break;
       if (block == 0xFFFF)
@@ -208,11 +211,11 @@ class FileEntry extends CatalogEntry implements ProdosConstants
   {
     parentDisk.setSectorType (keyPtr, ((ProdosDisk) parentDisk).indexSector);
     indexBlocks.add (disk.getDiskAddress (keyPtr));
-    byte[] buffer = disk.readSector (keyPtr);
+    ByteBuffer buffer = disk.getSectorBuffer (keyPtr);
     // int length = HexFormatter.intValue (buffer[0xFF], buffer[0x1FF]);
     for (int i = 0; i < 0x80; i++)
     {
-      int block = HexFormatter.intValue (buffer[i], buffer[i + 256]);
+      int block = HexFormatter.intValue (buffer.get (i), buffer.get (i + 256));
       if (block == 0)
         break;
       if (block == 0xFFFF)
@@ -271,7 +274,11 @@ class FileEntry extends CatalogEntry implements ProdosConstants
           else if (endOfFile == 38400 && name.startsWith ("LVL."))
             file = new LodeRunner (name, exactBuffer);
           else
-            file = new AssemblerProgram (name, exactBuffer, auxType);
+          {
+            AssemblerProgram program = new AssemblerProgram (name, exactBuffer, auxType);
+            program.setTraceCode (true);
+            file = program;
+          }
           break;
         case FILE_TYPE_TEXT:
           assert auxType == 0; // auxType > 0 handled above
@@ -367,10 +374,11 @@ class FileEntry extends CatalogEntry implements ProdosConstants
     List<DiskAddress> addresses = new ArrayList<DiskAddress> ();
     int logicalBlock = 0;
 
-    byte[] mainIndexBuffer = disk.readSector (keyPtr);
+    ByteBuffer mainIndexBuffer = disk.getSectorBuffer (keyPtr);
     for (int i = 0; i < 256; i++)
     {
-      int indexBlock = HexFormatter.intValue (mainIndexBuffer[i], mainIndexBuffer[i + 256]);
+      int indexBlock =
+            HexFormatter.intValue (mainIndexBuffer.get (i), mainIndexBuffer.get (i + 256));
       if (indexBlock > 0)
         logicalBlock = readIndexBlock (indexBlock, addresses, buffers, logicalBlock);
       else
@@ -429,8 +437,9 @@ class FileEntry extends CatalogEntry implements ProdosConstants
         int offset = 0;
         for (DiskAddress da : dataBlocks)
         {
-          byte[] buffer = disk.readSector (da);
-          System.arraycopy (buffer, 4, fullBuffer, offset, BLOCK_ENTRY_SIZE);
+          ByteBuffer buffer = disk.getSectorBuffer (da);
+          buffer.position (4);
+          buffer.get (fullBuffer, offset, BLOCK_ENTRY_SIZE);
           offset += BLOCK_ENTRY_SIZE;
         }
         return fullBuffer;
@@ -459,13 +468,13 @@ class FileEntry extends CatalogEntry implements ProdosConstants
 
   private byte[] getMasterIndexFile (int keyPtr)
   {
-    byte[] buffer = disk.readSector (keyPtr);
-    int length = HexFormatter.intValue (buffer[0xFF], buffer[0x1FF]);
+    ByteBuffer buffer = disk.getSectorBuffer (keyPtr);
+    int length = HexFormatter.intValue (buffer.get (0xFF), buffer.get (0x1FF));
     byte[] fileBuffer = new byte[length];
     int ptr = 0;
     for (int i = 0; i < 0x80; i++)
     {
-      int block = HexFormatter.intValue (buffer[i], buffer[i + 256]);
+      int block = HexFormatter.intValue (buffer.get (i), buffer.get (i + 256));
       if (block == 0)
         break;
       if (block == 0xFFFF) // should this insert 131,072 zeroes?
@@ -479,18 +488,18 @@ class FileEntry extends CatalogEntry implements ProdosConstants
 
   private byte[] getIndexFile (int keyPtr)
   {
-    byte[] buffer = disk.readSector (keyPtr);
-    int length = HexFormatter.intValue (buffer[0xFF], buffer[0x1FF]);
+    ByteBuffer buffer = disk.getSectorBuffer (keyPtr);
+    int length = HexFormatter.intValue (buffer.get (0xFF), buffer.get (0x1FF));
     byte[] fileBuffer = new byte[length];
     for (int i = 0; i < 0x80; i++)
     {
-      int block = HexFormatter.intValue (buffer[i], buffer[i + 256]);
+      int block = HexFormatter.intValue (buffer.get (i), buffer.get (i + 256));
       if (block == 0)
         break;
       if (block == 0xFFFF) // should this insert 512 zeroes?
         continue;
-      byte[] temp = disk.readSector (block);
-      System.arraycopy (temp, 0, fileBuffer, i * 512, length > 512 ? 512 : length);
+      ByteBuffer temp = disk.getSectorBuffer (block);
+      temp.get (fileBuffer, i * 512, length > 512 ? 512 : length);
       length -= 512;
     }
     return fileBuffer;
@@ -499,10 +508,10 @@ class FileEntry extends CatalogEntry implements ProdosConstants
   private int readIndexBlock (int indexBlock, List<DiskAddress> addresses,
         List<TextBuffer> buffers, int logicalBlock)
   {
-    byte[] indexBuffer = disk.readSector (indexBlock);
+    ByteBuffer indexBuffer = disk.getSectorBuffer (indexBlock);
     for (int j = 0; j < 256; j++)
     {
-      int block = HexFormatter.intValue (indexBuffer[j], indexBuffer[j + 256]);
+      int block = HexFormatter.intValue (indexBuffer.get (j), indexBuffer.get (j + 256));
       if (block > 0)
         addresses.add (disk.getDiskAddress (block));
       else if (addresses.size () > 0)
@@ -530,15 +539,45 @@ class FileEntry extends CatalogEntry implements ProdosConstants
 
   public boolean contains (DiskAddress da)
   {
-    if (da.equals (masterIndexBlock))
-      return true;
-    for (DiskAddress block : indexBlocks)
-      if (block.compareTo (da) == 0)
-        return true;
-    for (DiskAddress block : dataBlocks)
-      if (block.compareTo (da) == 0)
-        return true;
-    return false;
+    return getExtents ().contains (da);
+  }
+
+  ExtentList getExtents ()
+  {
+    if (extents == null)
+    {
+      List<DiskAddress> blocks = new ArrayList<DiskAddress> ();
+      if (masterIndexBlock != null)
+        blocks.add (masterIndexBlock);
+      blocks.addAll (indexBlocks);
+      blocks.addAll (dataBlocks);
+      extents = new ExtentList (blocks);
+    }
+    return extents;
+  }
+
+  @Override
+  public String getFileTypeText ()
+  {
+    return fileTypes[fileType];
+  }
+
+  @Override
+  public int getAuxType ()
+  {
+    return auxType;
+  }
+
+  @Override
+  public int getFileLength ()
+  {
+    return endOfFile;
+  }
+
+  @Override
+  public int getBlocksUsed ()
+  {
+    return blocksUsed;
   }
 
   @Override
@@ -551,8 +590,10 @@ class FileEntry extends CatalogEntry implements ProdosConstants
     if (true)
       return String.format ("%s  %03d %s", ProdosConstants.fileTypes[fileType], blocksUsed,
                             locked) + name;
-    String timeC = created == null ? "" : ProdosDisk.df.format (created.getTime ());
-    String timeF = modified == null ? "" : ProdosDisk.df.format (modified.getTime ());
+    String timeC =
+          created == null ? "" : ProdosDisk.df.get ().format (created.getTime ());
+    String timeF =
+          modified == null ? "" : ProdosDisk.df.get ().format (modified.getTime ());
     return String.format ("%s %s%-30s %3d %,10d %15s %15s",
                           ProdosConstants.fileTypes[fileType], locked, parentDirectory.name
                                 + "/" + name, blocksUsed, endOfFile, timeC, timeF);
@@ -62,15 +62,15 @@ class ProdosDirectory extends AbstractFile
           int blocks = HexFormatter.intValue (buffer[i + 19], buffer[i + 20]);
 
           GregorianCalendar created = HexFormatter.getAppleDate (buffer, i + 24);
-          String dateC =
-                created == null ? NO_DATE : ProdosDisk.sdf.format (created.getTime ())
-                      .toUpperCase ();
-          String timeC = created == null ? "" : ProdosDisk.stf.format (created.getTime ());
+          String dateC = created == null ? NO_DATE
+                : ProdosDisk.sdf.get ().format (created.getTime ()).toUpperCase ();
+          String timeC = created == null ? ""
+                : ProdosDisk.stf.get ().format (created.getTime ());
           GregorianCalendar modified = HexFormatter.getAppleDate (buffer, i + 33);
-          String dateM =
-                modified == null ? NO_DATE : ProdosDisk.sdf.format (modified.getTime ())
-                      .toUpperCase ();
-          String timeM = modified == null ? "" : ProdosDisk.stf.format (modified.getTime ());
+          String dateM = modified == null ? NO_DATE
+                : ProdosDisk.sdf.get ().format (modified.getTime ()).toUpperCase ();
+          String timeM = modified == null ? ""
+                : ProdosDisk.stf.get ().format (modified.getTime ());
           int eof = HexFormatter.intValue (buffer[i + 21], buffer[i + 22], buffer[i + 23]);
           int fileType = HexFormatter.intValue (buffer[i + 16]);
           locked = (buffer[i + 30] & 0xE0) == 0xE0 ? " " : "*";
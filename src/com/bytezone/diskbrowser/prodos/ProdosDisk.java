@@ -1,6 +1,7 @@
 package com.bytezone.diskbrowser.prodos;
 
 import java.awt.Color;
+import java.nio.ByteBuffer;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
@@ -29,9 +30,31 @@ public class ProdosDisk extends AbstractFormattedDisk
   VolumeDirectoryHeader vdh = null;
   private static final boolean debug = false;
 
-  static final DateFormat df = DateFormat.getInstance ();
-  static final SimpleDateFormat sdf = new SimpleDateFormat ("d-MMM-yy");
-  static final SimpleDateFormat stf = new SimpleDateFormat ("H:mm");
+  // date formats aren't thread safe, and disks are read on several threads at once
+  static final ThreadLocal<DateFormat> df = new ThreadLocal<DateFormat> ()
+  {
+    @Override
+    protected DateFormat initialValue ()
+    {
+      return DateFormat.getInstance ();
+    }
+  };
+  static final ThreadLocal<DateFormat> sdf = new ThreadLocal<DateFormat> ()
+  {
+    @Override
+    protected DateFormat initialValue ()
+    {
+      return new SimpleDateFormat ("d-MMM-yy");
+    }
+  };
+  static final ThreadLocal<DateFormat> stf = new ThreadLocal<DateFormat> ()
+  {
+    @Override
+    protected DateFormat initialValue ()
+    {
+      return new SimpleDateFormat ("H:mm");
+    }
+  };
 
   public ProdosDisk (Disk disk)
   {
@@ -80,18 +103,19 @@ public class ProdosDisk extends AbstractFormattedDisk
 
     do
     {
-      byte[] sectorBuffer = disk.readSector (block);
+      ByteBuffer sectorBuffer = disk.getSectorBuffer (block);
       sectorTypes[block] = currentSectorType;
 
       for (int ptr = 4, max = disk.getBlockSize () - ProdosConstants.ENTRY_SIZE; ptr < max; ptr +=
             ProdosConstants.ENTRY_SIZE)
       {
-        int storageType = (sectorBuffer[ptr] & 0xF0) >> 4;
+        int storageType = (sectorBuffer.get (ptr) & 0xF0) >> 4;
         if (storageType == 0) // deleted or unused
           continue;
 
         byte[] entry = new byte[ProdosConstants.ENTRY_SIZE];
-        System.arraycopy (sectorBuffer, ptr, entry, 0, ProdosConstants.ENTRY_SIZE);
+        sectorBuffer.position (ptr);
+        sectorBuffer.get (entry);
 
         switch (storageType)
         {
@@ -116,6 +140,7 @@ public class ProdosDisk extends AbstractFormattedDisk
           case ProdosConstants.TYPE_SUBDIRECTORY:
             FileEntry ce = new FileEntry (this, entry, localHeader, block);
             fileEntries.add (ce);
+            setBlockOwner (fileEntries.size () - 1, ce.getExtents ());
             DefaultMutableTreeNode directoryNode = new DefaultMutableTreeNode (ce);
             directoryNode.setAllowsChildren (true);
             parentNode.add (directoryNode);
@@ -128,6 +153,7 @@ public class ProdosDisk extends AbstractFormattedDisk
           case ProdosConstants.TYPE_GSOS_EXTENDED_FILE:
             FileEntry fe = new FileEntry (this, entry, localHeader, block);
             fileEntries.add (fe);
+            setBlockOwner (fileEntries.size () - 1, fe.getExtents ());
             DefaultMutableTreeNode node = new DefaultMutableTreeNode (fe);
             node.setAllowsChildren (false);
             parentNode.add (node);
@@ -137,7 +163,7 @@ public class ProdosDisk extends AbstractFormattedDisk
             System.out.println (HexFormatter.format (entry, 0, entry.length));
         }
       }
-      block = HexFormatter.intValue (sectorBuffer[2], sectorBuffer[3]);
+      block = HexFormatter.intValue (sectorBuffer.get (2), sectorBuffer.get (3));
     } while (block > 0);
   }
 
@@ -186,7 +212,7 @@ public class ProdosDisk extends AbstractFormattedDisk
 
     VolumeDirectoryHeader volumeDirectory = (VolumeDirectoryHeader) headerEntries.get (0);
     String timeC =
-          volumeDirectory.created == null ? "" : df
+          volumeDirectory.created == null ? "" : df.get ()
                 .format (volumeDirectory.created.getTime ());
     text.append ("Volume name        : " + volumeDirectory.name + newLine);
     text.append ("Creation date      : " + timeC + newLine);
@@ -231,10 +257,8 @@ public class ProdosDisk extends AbstractFormattedDisk
   @Override
   public String getSectorFilename (DiskAddress da)
   {
-    for (AppleFileSource fe : fileEntries)
-      if (((FileEntry) fe).contains (da))
-        return ((FileEntry) fe).getUniqueName ();
-    return null;
+    int fileNo = getBlockOwner (da);
+    return fileNo < 0 ? null : fileEntries.get (fileNo).getUniqueName ();
   }
 
   @Override
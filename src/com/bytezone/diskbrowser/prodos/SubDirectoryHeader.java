@@ -26,8 +26,8 @@ class SubDirectoryHeader extends DirectoryHeader
 	public String toString ()
 	{
 		String locked = (access == 0x01) ? "*" : " ";
-		return String.format ("   %s%-40s %15s", locked, "/" + name, ProdosDisk.df.format (created
-					.getTime ()));
+		return String.format ("   %s%-40s %15s", locked, "/" + name, ProdosDisk.df.get ()
+					.format (created.getTime ()));
 	}
 
 	public DataSource getDataSource ()
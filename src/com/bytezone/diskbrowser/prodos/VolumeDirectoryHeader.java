@@ -1,5 +1,6 @@
 package com.bytezone.diskbrowser.prodos;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -26,7 +27,7 @@ class VolumeDirectoryHeader extends DirectoryHeader
     bitMapBlock = HexFormatter.intValue (entryBuffer[35], entryBuffer[36]);
     totalBlocks = HexFormatter.intValue (entryBuffer[37], entryBuffer[38]);
     if (totalBlocks == 0xFFFF | totalBlocks == 0x7FFF)
-      totalBlocks = (int) disk.getFile ().length () / 4096 * 8;   // ignore extra bytes
+      totalBlocks = disk.getTotalTracks () * 8;   // ignore extra bytes
       //    totalBitMapBlocks = (totalBlocks * 8 - 1) / 4096 + 1;
     totalBitMapBlocks = (totalBlocks - 1) / 512 + 1;
 
@@ -34,8 +35,8 @@ class VolumeDirectoryHeader extends DirectoryHeader
     do
     {
       dataBlocks.add (disk.getDiskAddress (block));
-      byte[] buffer = disk.readSector (block);
-      block = HexFormatter.intValue (buffer[2], buffer[3]);
+      ByteBuffer buffer = disk.getSectorBuffer (block);
+      block = HexFormatter.intValue (buffer.get (2), buffer.get (3));
     } while (block > 0);
 
     // convert the Free Sector Table
@@ -47,11 +48,11 @@ class VolumeDirectoryHeader extends DirectoryHeader
 
     for (block = bitMapBlock; block <= lastBitMapBlock; block++)
     {
-      byte[] temp = disk.readSector (block);
+      ByteBuffer temp = disk.getSectorBuffer (block);
       int bytesToCopy = buffer.length - ptr;
-      if (bytesToCopy > temp.length)
-        bytesToCopy = temp.length;
-      System.arraycopy (temp, 0, buffer, ptr, bytesToCopy);
+      if (bytesToCopy > temp.capacity ())
+        bytesToCopy = temp.capacity ();
+      temp.get (buffer, ptr, bytesToCopy);
       ptr += bytesToCopy;
     }
 
@@ -116,7 +117,8 @@ class VolumeDirectoryHeader extends DirectoryHeader
     if (false)
     {
       String locked = (access == 0x01) ? "*" : " ";
-      String timeC = created == null ? "" : ProdosDisk.df.format (created.getTime ());
+      String timeC =
+            created == null ? "" : ProdosDisk.df.get ().format (created.getTime ());
       return String.format ("   %s%-42s %15s", locked, "/" + name, timeC);
     }
     return name;